@@ -45,13 +45,17 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.math3.stat.inference.TTest;
 import org.apache.log4j.Logger;
+import org.mitre.quaerite.connectors.ESClient;
+import org.mitre.quaerite.connectors.HedgedSearcher;
 import org.mitre.quaerite.connectors.QueryRequest;
 import org.mitre.quaerite.connectors.SearchClient;
 import org.mitre.quaerite.connectors.SearchClientException;
 import org.mitre.quaerite.connectors.SearchClientFactory;
+import org.mitre.quaerite.core.DocIdDictionary;
 import org.mitre.quaerite.core.Experiment;
 import org.mitre.quaerite.core.ExperimentConfig;
 import org.mitre.quaerite.core.ExperimentSet;
+import org.mitre.quaerite.core.JudgedResults;
 import org.mitre.quaerite.core.JudgmentList;
 import org.mitre.quaerite.core.Judgments;
 import org.mitre.quaerite.core.QueryInfo;
@@ -77,6 +81,8 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
 
     static final int DEFAULT_NUM_THREADS = 8;
     private static final int MAX_MATRIX_COLS = 100;
+    //number of queries to send per _rank_eval request
+    static final int RANK_EVAL_BATCH_SIZE = 100;
     //this caches a judgment list of valid judgments
     //per search server url
     Map<String, JudgmentList> searchServerValidatedMap = new HashMap<>();
@@ -87,6 +93,12 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
 
     public AbstractExperimentRunner(ExperimentConfig experimentConfig) {
         this.experimentConfig = experimentConfig;
+        for (Map.Entry<String, List<String>> e :
+                experimentConfig.getSearchServerReplicas().entrySet()) {
+            LOG.info("spreading requests for " + e.getKey() + " across " + e.getValue());
+            SearchClientFactory.registerReplicas(e.getKey(), e.getValue());
+        }
+        SearchClientFactory.setSolrCloudRouting(experimentConfig.getSolrCloudRouting());
     }
 
 
@@ -117,38 +129,56 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
             searchServerValidatedMap.put(experiment.getSearchServerUrl()
                     + "_" + judgmentListId, validated);
         }
-        ExecutorService executorService = Executors.newFixedThreadPool(
-                experimentConfig.getNumThreads());
-        ExecutorCompletionService<Integer> executorCompletionService =
-                new ExecutorCompletionService<>(executorService);
-        ArrayBlockingQueue<Judgments> queue = new ArrayBlockingQueue<>(
-                validated.getJudgmentsList().size() +
-                        experimentConfig.getNumThreads());
-
-        queue.addAll(validated.getJudgmentsList());
-        for (int i = 0; i < experimentConfig.getNumThreads(); i++) {
-            queue.add(POISON);
+        //make room for the validated queries' scores
+        for (Scorer scorer : scorers) {
+            scorer.reset(validated);
         }
+        if (canUseRankEval(experimentConfig.getUseRankEval(), searchClient, scorers)) {
+            runRankEval((ESClient) searchClient, experiment, scorers, maxRows,
+                    experimentDB, validated);
+        } else {
+            ExecutorService executorService = Executors.newFixedThreadPool(
+                    experimentConfig.getNumThreads());
+            ExecutorCompletionService<Integer> executorCompletionService =
+                    new ExecutorCompletionService<>(executorService);
+            ArrayBlockingQueue<Judgments> queue = new ArrayBlockingQueue<>(
+                    validated.getJudgmentsList().size() +
+                            experimentConfig.getNumThreads());
+
+            queue.addAll(validated.getJudgmentsList());
+            for (int i = 0; i < experimentConfig.getNumThreads(); i++) {
+                queue.add(POISON);
+            }
 
-        for (int i = 0; i < experimentConfig.getNumThreads(); i++) {
-            executorCompletionService.submit(
-                    new QueryRunner(experimentConfig.getIdField(), maxRows,
-                            queue, experiment, experimentDB, scorers));
-        }
+            HedgedSearcher hedgedSearcher = new HedgedSearcher(
+                    experimentConfig.getHedgeRequests(),
+                    experimentConfig.getMaxRetries(),
+                    experimentConfig.getRetryBudget());
+            for (int i = 0; i < experimentConfig.getNumThreads(); i++) {
+                executorCompletionService.submit(
+                        new QueryRunner(experimentConfig.getIdField(), maxRows,
+                                queue, experiment, experimentDB, scorers, hedgedSearcher));
+            }
 
-        int completed = 0;
-        while (completed < experimentConfig.getNumThreads()) {
-            try {
-                Future<Integer> future = executorCompletionService.take();
-                future.get();
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                completed++;
+            int completed = 0;
+            while (completed < experimentConfig.getNumThreads()) {
+                try {
+                    Future<Integer> future = executorCompletionService.take();
+                    future.get();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    completed++;
+                }
+            }
+            executorService.shutdown();
+            executorService.shutdownNow();
+            hedgedSearcher.close();
+            if (hedgedSearcher.getHedged() > 0 || hedgedSearcher.getRetries() > 0
+                    || hedgedSearcher.getRetriesDenied() > 0) {
+                LOG.info(experiment.getName() + ": " + hedgedSearcher);
             }
         }
-        executorService.shutdown();
-        executorService.shutdownNow();
         //insertScores(experimentDB, experimentName, scoreAggregators);
         experimentDB.insertScoresAggregated(experiment.getName(), scorers);
         if (logResults) {
@@ -156,13 +186,91 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
         }
     }
 
+    static boolean canUseRankEval(boolean useRankEval, SearchClient searchClient,
+                                  List<Scorer> scorers) {
+        if (!useRankEval) {
+            return false;
+        }
+        if (!(searchClient instanceof ESClient)) {
+            LOG.warn("useRankEval is only available for elasticsearch; " +
+                    "running queries one at a time");
+            return false;
+        }
+        for (Scorer scorer : scorers) {
+            //_rank_eval does not return timings or total hits,
+            //so only the scorers that rely on judgments can be used
+            if (!(scorer instanceof JudgmentScorer)) {
+                LOG.warn("Can't use _rank_eval with " + scorer.getName() +
+                        "; running queries one at a time");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends the queries to elasticsearch in batches of
+     * {@link #RANK_EVAL_BATCH_SIZE} via <code>_rank_eval</code>
+     * and then scores the ranked hits.  This avoids a round trip
+     * per query.
+     */
+    private void runRankEval(ESClient searchClient, Experiment experiment,
+                             List<Scorer> scorers, int maxRows,
+                             ExperimentDB experimentDB, JudgmentList validated)
+            throws SQLException, IOException, SearchClientException {
+        List<Judgments> judgmentsList = validated.getJudgmentsList();
+        try (QueryRunnerDBClient dbClient = experimentDB.getQueryRunnerDBClient(scorers)) {
+            for (int start = 0; start < judgmentsList.size(); start += RANK_EVAL_BATCH_SIZE) {
+                List<Judgments> batch = judgmentsList.subList(start,
+                        Math.min(judgmentsList.size(), start + RANK_EVAL_BATCH_SIZE));
+                List<QueryRequest> requests = new ArrayList<>();
+                for (Judgments judgments : batch) {
+                    //each request needs its own copy of the query
+                    requests.add(buildQueryRequest(experiment.getQuery(), experiment,
+                            judgments, experimentConfig.getIdField(), maxRows));
+                }
+                List<SearchResultSet> results = searchClient.rankEval(requests, batch, maxRows);
+                for (int i = 0; i < batch.size(); i++) {
+                    Judgments judgments = batch.get(i);
+                    SearchResultSet searchResultSet = results.get(i);
+                    if (searchResultSet == null) {
+                        continue;
+                    }
+                    dbClient.insertSearchResults(judgments.getQueryInfo(),
+                            experiment.getName(), searchResultSet);
+                    JudgedResults judgedResults = new JudgedResults(judgments, searchResultSet);
+                    for (Scorer scorer : scorers) {
+                        ((JudgmentScorer) scorer).score(judgedResults);
+                    }
+                    dbClient.insertScores(judgments.getQueryInfo(), experiment.getName(), scorers);
+                }
+                dbClient.executeBatch();
+            }
+        }
+    }
+
+    static QueryRequest buildQueryRequest(Query query, Experiment experiment,
+                                          Judgments judgments, String idField, int maxRows) {
+        query.setQueryStrings(judgments.getQueryStrings());
+
+        QueryRequest queryRequest = new QueryRequest(query, experiment.getCustomHandler(), idField);
+        queryRequest.addFieldsToRetrieve(idField);
+        if (experiment.getFilterQueries().size() > 0) {
+            queryRequest.addFilterQueries(experiment.getFilterQueries());
+        }
+        queryRequest.setNumResults(maxRows);
+        queryRequest.setDocIdDictionary(judgments.getDocIdDictionary());
+        return queryRequest;
+    }
+
     private void logResults(String experimentName, List<Scorer> scorers) {
         StringBuilder result = new StringBuilder();
         LOG.info("Experiment: " + experimentName);
         for (Scorer scorer : scorers) {
-            for (String querySetName : scorer.getQuerySets()) {
-                Map<String, Double> summaryStats =
-                        scorer.getSummaryStatistics(querySetName);
+            for (Map.Entry<String, Map<String, Double>> e :
+                    scorer.getSummaryStatistics().entrySet()) {
+                String querySetName = e.getKey();
+                Map<String, Double> summaryStats = e.getValue();
                 if (!StringUtils.isBlank(querySetName)) {
                     result.append("Query Set: ").append(querySetName);
                 } else {
@@ -180,6 +288,16 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
                     result.append(", median: ");
                     result.append(
                             getValueString(summaryStats.get(DistributionalScoreAggregator.MEDIAN)));
+                } else {
+                    //e.g. percentiles
+                    int i = 0;
+                    for (String statistic : scorer.getStatistics()) {
+                        if (i++ > 0) {
+                            result.append(", ");
+                        }
+                        result.append(statistic).append(": ");
+                        result.append(getValueString(summaryStats.get(statistic)));
+                    }
                 }
                 LOG.info(result);
                 result.setLength(0);
@@ -280,11 +398,14 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
         int validQueries = 0;
         int invalidQueries = 0;
         JudgmentList retList = new JudgmentList();
+        //the winnowed judgments share a dictionary for this server's valid ids
+        DocIdDictionary dictionary = new DocIdDictionary();
         for (Judgments j : judgmentList.getJudgmentsList()) {
             //defensively copy
             Judgments winnowedJugments = new Judgments(
                     new QueryInfo(j.getQueryInfo().getQueryId(),
-                            j.getQuerySet(), j.getQueryStrings(), j.getQueryCount()));
+                            j.getQuerySet(), j.getQueryStrings(), j.getQueryCount()),
+                    dictionary);
             for (Map.Entry<String, Double> e : j.getSortedJudgments().entrySet()) {
                 if (valid.contains(e.getKey())) {
                     winnowedJugments.addJudgment(e.getKey(), e.getValue());
@@ -293,7 +414,8 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
                 }
             }
             if (winnowedJugments.getSortedJudgments().size() > 0) {
-                retList.addJudgments(winnowedJugments);
+                //the scoring threads only read these, so they don't need to lock
+                retList.addJudgments(winnowedJugments.freeze());
                 validQueries++;
             } else {
                 LOG.warn(
@@ -350,11 +472,13 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
         private final List<Scorer> scorers;
         private final SearchClient searchClient;
         private final QueryRunnerDBClient dbClient;
+        private final HedgedSearcher hedgedSearcher;
         private int batched = 0;
 
         public QueryRunner(String idField, int maxRows, ArrayBlockingQueue<Judgments> judgments,
                            Experiment experiment, ExperimentDB experimentDB,
-                           List<Scorer> scorers) throws SQLException, IOException, SearchClientException {
+                           List<Scorer> scorers, HedgedSearcher hedgedSearcher)
+                throws SQLException, IOException, SearchClientException {
             this.idField = idField;
             this.maxRows = maxRows;
             this.queue = judgments;
@@ -363,6 +487,7 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
             this.searchClient = SearchClientFactory.getClient(experiment.getSearchServerUrl());
             this.scorers = scorers;
             this.dbClient = experimentDB.getQueryRunnerDBClient(scorers);
+            this.hedgedSearcher = hedgedSearcher;
         }
 
         @Override
@@ -397,28 +522,25 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
 
         private void scoreEach(Judgments judgments,
                                List<Scorer> scorers) throws SQLException {
-            query.setQueryStrings(judgments.getQueryStrings());
-
-            QueryRequest queryRequest = new QueryRequest(query, experiment.getCustomHandler(), idField);
-            queryRequest.addFieldsToRetrieve(idField);
-            if (experiment.getFilterQueries().size() > 0) {
-                queryRequest.addFilterQueries(experiment.getFilterQueries());
-            }
-            queryRequest.setNumResults(maxRows);
+            QueryRequest queryRequest = buildQueryRequest(query, experiment,
+                    judgments, idField, maxRows);
 
             SearchResultSet searchResultSet = null;
             try {
-                searchResultSet = searchClient.search(queryRequest);
+                searchResultSet = hedgedSearcher.search(searchClient, queryRequest);
             } catch (SearchClientException | IOException e) {
-                //TODO add exception to searchResultSet and log
-                e.printStackTrace();
+                LOG.warn("Couldn't run query '" + judgments.getQueryInfo().getQueryId() +
+                        "' for experiment " + experiment.getName() + "; skipping it", e);
+                return;
             }
             dbClient.insertSearchResults(judgments.getQueryInfo(),
                     experiment.getName(), searchResultSet);
 
+            //look up the judgments for the results once for all of the scorers
+            JudgedResults judgedResults = new JudgedResults(judgments, searchResultSet);
             for (Scorer scorer : scorers) {
                 if (scorer instanceof JudgmentScorer) {
-                    ((JudgmentScorer) scorer).score(judgments, searchResultSet);
+                    ((JudgmentScorer) scorer).score(judgedResults);
                 } else if (scorer instanceof SearchResultSetScorer) {
                     ((SearchResultSetScorer) scorer).score(judgments.getQueryInfo(),
                             searchResultSet);
@@ -441,24 +563,11 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
         }
         dumpPerQuery(experimentDB, outputDir);
 
-        String orderByPriority1 = null;
-        String orderByPriority2 = null;
-        for (Scorer scorer : experimentSet.getScorers()) {
-            if (isTest && scorer instanceof AbstractJudgmentScorer &&
-                    ((AbstractJudgmentScorer) scorer).getUseForTest()) {
-                orderByPriority1 = scorer.getPrimaryStatisticName();
-                break;
-            }
-            if (scorer instanceof AbstractJudgmentScorer &&
-                    ((AbstractJudgmentScorer) scorer).getUseForTrain()) {
-                orderByPriority2 = scorer.getPrimaryStatisticName();
-            }
-        }
+        Scorer orderByScorer = getOrderByScorer(experimentSet.getScorers(), isTest);
         String orderBy = "";
-        if (orderByPriority1 != null) {
-            orderBy = " order by " + orderByPriority1 + " desc";
-        } else if (orderByPriority1 == null && orderByPriority2 != null) {
-            orderBy = " order by " + orderByPriority2 + " desc";
+        if (orderByScorer != null) {
+            orderBy = " order by " + orderByScorer.getPrimaryStatisticName() +
+                    (orderByScorer.isHigherBetter() ? " desc" : " asc");
         }
         try (BufferedWriter writer = Files.newBufferedWriter(
                 outputDir.resolve("scores_aggregated.csv"), StandardCharsets.UTF_8)) {
@@ -485,6 +594,31 @@ public abstract class AbstractExperimentRunner extends AbstractCLI {
 
     }
 
+    /**
+     * @return the scorer that was set to order by, if any; otherwise, the
+     * judgment scorer that's used for testing (if isTest) or training;
+     * <code>null</code> if there isn't one
+     */
+    static Scorer getOrderByScorer(List<Scorer> scorers, boolean isTest) {
+        //only judgment scorers can be set to be used for testing or training
+        Scorer orderByPriority1 = null;
+        Scorer orderByPriority2 = null;
+        for (Scorer scorer : scorers) {
+            if (scorer.getOrderBy()) {
+                return scorer;
+            }
+            if (isTest && orderByPriority1 == null && scorer instanceof AbstractJudgmentScorer &&
+                    ((AbstractJudgmentScorer) scorer).getUseForTest()) {
+                orderByPriority1 = scorer;
+            }
+            if (scorer instanceof AbstractJudgmentScorer &&
+                    ((AbstractJudgmentScorer) scorer).getUseForTrain()) {
+                orderByPriority2 = scorer;
+            }
+        }
+        return (orderByPriority1 != null) ? orderByPriority1 : orderByPriority2;
+    }
+
     private static void dumpPerQuery(ExperimentDB experimentDB, Path outputDir) throws Exception {
         StringBuilder select = new StringBuilder();
         select.append("select " +
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.apache.log4j.Logger;
+import org.mitre.quaerite.connectors.IdBatch;
+
+/**
+ * Records the progress of a {@link CopyIndex} run in a json state file
+ * so that a failed run can be resumed.
+ * <p>
+ * For each id partition, this records the key of the last id in the
+ * highest batch such that it and every batch before it have been
+ * indexed in the destination.  Batches may be acknowledged out of order;
+ * later batches wait until the gap is filled.  If a batch fails,
+ * the checkpoint stops advancing for that partition, and a resumed
+ * run redoes the work after the checkpoint.  That work may have
+ * already been partly done, but re-indexing a document overwrites it.
+ * <p>
+ * The file is rewritten atomically at most once a second and when the
+ * run is closed.
+ */
+class CopyCheckpoint {
+
+    static Logger LOG = Logger.getLogger(CopyCheckpoint.class);
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final long WRITE_INTERVAL_MILLIS = 1000;
+
+    private final Path path;
+    private final State state;
+    private final boolean resumed;
+    private final Map<Integer, Progress> progress = new HashMap<>();
+    private long lastWrite = 0;
+
+    private CopyCheckpoint(Path path, State state, boolean resumed) {
+        this.path = path;
+        this.state = state;
+        this.resumed = resumed;
+    }
+
+    /**
+     * Starts a new state file, overwriting an existing one.
+     */
+    static CopyCheckpoint create(Path path, String src, String dest) throws IOException {
+        State state = new State();
+        state.src = src;
+        state.dest = dest;
+        CopyCheckpoint checkpoint = new CopyCheckpoint(path, state, false);
+        checkpoint.write();
+        return checkpoint;
+    }
+
+    /**
+     * Loads an existing state file.
+     *
+     * @throws IllegalArgumentException if the file was written for a copy
+     *                                  between different indices
+     */
+    static CopyCheckpoint load(Path path, String src, String dest) throws IOException {
+        State state;
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            state = GSON.fromJson(reader, State.class);
+        }
+        if (state == null || !src.equals(state.src) || !dest.equals(state.dest)) {
+            throw new IllegalArgumentException("State file " + path +
+                    " was not written for copying " + src + " to " + dest);
+        }
+        return new CopyCheckpoint(path, state, true);
+    }
+
+    /**
+     * @return whether this was loaded from an existing state file
+     */
+    boolean isResumed() {
+        return resumed;
+    }
+
+    boolean isComplete() {
+        return state.complete;
+    }
+
+    synchronized int getNumPartitions() {
+        return state.numPartitions;
+    }
+
+    /**
+     * @param numPartitions number of id partitions being copied
+     */
+    synchronized void setNumPartitions(int numPartitions) throws IOException {
+        state.numPartitions = numPartitions;
+        write();
+    }
+
+    /**
+     * @param partition id partition
+     * @return the key to resume after or <code>null</code> to start at the beginning
+     */
+    synchronized String getResumeKey(int partition) {
+        PartitionState partitionState = getPartitionState(partition);
+        return partitionState.lastKey;
+    }
+
+    /**
+     * Records that all of the docs for this batch have been indexed.
+     *
+     * @param batch batch of ids
+     * @param docs  number of docs that were indexed for the batch
+     */
+    synchronized void ack(IdBatch batch, int docs) {
+        Progress p = progress.computeIfAbsent(batch.getPartition(), k -> new Progress());
+        p.pending.put(batch.getSeq(), new Ack(batch.getLastKey(), docs));
+        PartitionState partitionState = getPartitionState(batch.getPartition());
+        while (p.pending.size() > 0 && p.pending.firstKey() == p.nextSeq) {
+            Ack ack = p.pending.remove(p.nextSeq);
+            p.nextSeq++;
+            partitionState.lastKey = ack.lastKey;
+            partitionState.batches++;
+            partitionState.docs += ack.docs;
+        }
+        if (System.currentTimeMillis() - lastWrite > WRITE_INTERVAL_MILLIS) {
+            tryWrite();
+        }
+    }
+
+    /**
+     * @param complete whether every batch was copied successfully
+     */
+    synchronized void close(boolean complete) throws IOException {
+        state.complete = complete;
+        write();
+        long docs = 0;
+        for (PartitionState partitionState : state.partitions) {
+            docs += partitionState.docs;
+        }
+        LOG.info("checkpointed " + docs + " docs; complete=" + complete);
+    }
+
+    private PartitionState getPartitionState(int partition) {
+        for (PartitionState partitionState : state.partitions) {
+            if (partitionState.partition == partition) {
+                return partitionState;
+            }
+        }
+        PartitionState partitionState = new PartitionState();
+        partitionState.partition = partition;
+        state.partitions.add(partitionState);
+        return partitionState;
+    }
+
+    private void tryWrite() {
+        try {
+            write();
+        } catch (IOException e) {
+            LOG.warn("couldn't write state file " + path, e);
+        }
+    }
+
+    private void write() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            GSON.toJson(state, writer);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        lastWrite = System.currentTimeMillis();
+    }
+
+    //serialized to the state file
+    private static class State {
+        private String src;
+        private String dest;
+        private boolean complete = false;
+        private int numPartitions = 1;
+        private List<PartitionState> partitions = new ArrayList<>();
+    }
+
+    private static class PartitionState {
+        private int partition;
+        private String lastKey;
+        private long batches;
+        private long docs;
+    }
+
+    //in memory progress for this run
+    private static class Progress {
+        private long nextSeq = 0;
+        private final TreeMap<Long, Ack> pending = new TreeMap<>();
+    }
+
+    private static class Ack {
+        private final String lastKey;
+        private final int docs;
+
+        Ack(String lastKey, int docs) {
+            this.lastKey = lastKey;
+            this.docs = docs;
+        }
+    }
+}
@@ -16,10 +16,20 @@
  */
 package org.mitre.quaerite.cli;
 
+import static org.mitre.quaerite.core.util.CommandLineUtil.getFloat;
 import static org.mitre.quaerite.core.util.CommandLineUtil.getInt;
+import static org.mitre.quaerite.core.util.CommandLineUtil.getLong;
 import static org.mitre.quaerite.core.util.CommandLineUtil.getString;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -31,8 +41,13 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
@@ -41,9 +56,17 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.mitre.quaerite.connectors.BulkFailureException;
+import org.mitre.quaerite.connectors.ESClient;
+import org.mitre.quaerite.connectors.IdBatch;
+import org.mitre.quaerite.connectors.IdGrabber;
+import org.mitre.quaerite.connectors.IdListGrabber;
+import org.mitre.quaerite.connectors.RawDocument;
+import org.mitre.quaerite.connectors.RawDocumentClient;
 import org.mitre.quaerite.connectors.SearchClient;
 import org.mitre.quaerite.connectors.SearchClientException;
 import org.mitre.quaerite.connectors.SearchClientFactory;
+import org.mitre.quaerite.connectors.SolrClient;
 import org.mitre.quaerite.connectors.StoredDocument;
 import org.mitre.quaerite.core.queries.LuceneQuery;
 import org.mitre.quaerite.core.queries.Query;
@@ -53,7 +76,18 @@ public class CopyIndex extends AbstractCLI {
     static Logger LOG = Logger.getLogger(CopyIndex.class);
 
     private static final int NUM_THREADS = 10;
+    private static final int NUM_INDEX_THREADS = 4;
     private static final int BATCH_SIZE = 100;
+    private static final int NUM_PARTITIONS = 1;
+    private static final long MAX_BATCH_BYTES = 5 * 1024 * 1024;
+    //max number of fetched batches waiting to be indexed
+    private static final int DOC_QUEUE_SIZE = 50;
+    private static final int ID_QUEUE_SIZE = 100;
+    private static final int REPORT_INTERVAL_SECONDS = 10;
+    //retries for a batch that the destination rejects with 429 or 503
+    private static final int MAX_REJECTION_RETRIES = 5;
+    private static final long BASE_REJECTION_BACKOFF_MILLIS = 1000;
+    private static final int TOP_N = 100;
 
     static Options OPTIONS = new Options();
 
@@ -99,19 +133,136 @@ public class CopyIndex extends AbstractCLI {
                         .longOpt("batchSize")
                         .hasArg(true)
                         .required(false)
-                        .desc("batch size; default: " + BATCH_SIZE).build()
+                        .desc("number of ids to fetch per request; default: " + BATCH_SIZE).build()
         );
         OPTIONS.addOption(
                 Option.builder("n")
                         .longOpt("numThreads")
                         .hasArg(true)
                         .required(false)
-                        .desc("num copier threads; default: " + NUM_THREADS).build()
+                        .desc("num threads fetching docs from the source; default: "
+                                + NUM_THREADS).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("partitions")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("num threads enumerating ids, each over a disjoint " +
+                                "partition of the ids; default: " + NUM_PARTITIONS).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("indexThreads")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("num threads sending docs to the destination; default: "
+                                + NUM_INDEX_THREADS).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("maxBatchBytes")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("send docs to the destination when a batch reaches " +
+                                "roughly this many bytes; default: " + MAX_BATCH_BYTES).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("commitWithin")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("Solr destination only: commitWithin in milliseconds; " +
+                                "<= 0 relies on the collection's autoCommit; default: "
+                                + SolrClient.DEFAULT_COMMIT_WITHIN).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("reportInterval")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("seconds between throughput reports; default: " +
+                                REPORT_INTERVAL_SECONDS).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("autoTune")
+                        .hasArg(false)
+                        .required(false)
+                        .desc("adjust the number of concurrent index requests (up to " +
+                                "-indexThreads) and the batch size for the highest throughput " +
+                                "without rejections from the destination").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("state")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("checkpoint progress to this json file").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("resume")
+                        .hasArg(false)
+                        .required(false)
+                        .desc("resume from the checkpoint in the -state file; " +
+                                "-clean is ignored").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("idSortField")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("elasticsearch source with -state: keyword field that holds a " +
+                                "copy of the _id; the ids are sorted on this so that the copy " +
+                                "can be resumed.  Otherwise, the ids are read from a point in " +
+                                "time (7.12+), which can't be resumed").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("judgments")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("build an evaluation index: copy only the documents in this " +
+                                "judgments csv, the -topN results for the judged queries and " +
+                                "a -sample of the other documents").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("experiments")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("with -judgments, experiments json to run against the source " +
+                                "to find the top results for each judged query").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("topN")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("with -experiments, number of results to copy for each judged " +
+                                "query and experiment; default: " + TOP_N).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("sample")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("with -judgments, fraction of the other documents to copy " +
+                                "as a random background sample; default: 0").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("sampleSeed")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("seed for the -sample; default: 0").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("deadLetter")
+                        .hasArg(true)
+                        .required(false)
+                        .desc("append docs that the destination couldn't index and the reason " +
+                                "to this file (one json object per line) instead of failing " +
+                                "their batch").build()
         );
     }
 
     private int numThreads = NUM_THREADS;
+    private int numIndexThreads = NUM_INDEX_THREADS;
     private int batchSize = BATCH_SIZE;
+    private int numPartitions = NUM_PARTITIONS;
+    private long maxBatchBytes = MAX_BATCH_BYTES;
+    private int reportIntervalSeconds = REPORT_INTERVAL_SECONDS;
+    private boolean autoTune = false;
+    private Path deadLetterFile = null;
+    private StratifiedSample stratifiedSample = null;
 
     public static void main(String[] args) throws Exception {
         CommandLine commandLine = null;
@@ -143,19 +294,78 @@ public class CopyIndex extends AbstractCLI {
         LOG.debug("whiteListFields:" + whiteListFields);
         LOG.debug("blackListFields:" + blackListFields);
         LOG.debug("filterQueries:" + filterQueries);
-        CopyIndex copyIndex = new CopyIndex();
-        if (commandLine.hasOption("clean")) {
-            destClient.deleteAll();
+        if (destClient instanceof SolrClient) {
+            ((SolrClient) destClient).setCommitWithin(
+                    getInt(commandLine, "commitWithin", SolrClient.DEFAULT_COMMIT_WITHIN));
+        }
+        if (commandLine.hasOption("idSortField")) {
+            if (!(srcClient instanceof ESClient)) {
+                throw new IllegalArgumentException("-idSortField only applies to elasticsearch sources");
+            }
+            ((ESClient) srcClient).setIdSortField(commandLine.getOptionValue("idSortField"));
+        }
+        if (srcClient instanceof ESClient && commandLine.hasOption("state")
+                && !commandLine.hasOption("idSortField")) {
+            LOG.warn("without -idSortField, the ids are read from a point in time, " +
+                    "and the copy can't be resumed once it stops");
+        }
+        StratifiedSample stratifiedSample = null;
+        if (commandLine.hasOption("judgments")) {
+            if (commandLine.hasOption("state")) {
+                throw new IllegalArgumentException("-state can't be used with -judgments");
+            }
+            stratifiedSample = StratifiedSample.build(srcClient,
+                    Paths.get(commandLine.getOptionValue("judgments")),
+                    commandLine.hasOption("experiments") ?
+                            Paths.get(commandLine.getOptionValue("experiments")) : null,
+                    getInt(commandLine, "topN", TOP_N),
+                    getFloat(commandLine, "sample", 0.0f),
+                    getLong(commandLine, "sampleSeed", 0L),
+                    getInt(commandLine, "numThreads", NUM_THREADS));
+        }
+        CopyCheckpoint checkpoint = null;
+        if (commandLine.hasOption("resume")) {
+            if (!commandLine.hasOption("state")) {
+                throw new IllegalArgumentException("-resume requires -state");
+            }
+            checkpoint = CopyCheckpoint.load(Paths.get(commandLine.getOptionValue("state")),
+                    commandLine.getOptionValue("src"), commandLine.getOptionValue("dest"));
+            if (checkpoint.isComplete()) {
+                LOG.info("The copy in the state file has already completed");
+                return;
+            }
+            if (commandLine.hasOption("clean")) {
+                LOG.warn("ignoring -clean because this is resuming a copy");
+            }
+        } else {
+            if (commandLine.hasOption("clean")) {
+                destClient.deleteAll();
+            }
+            if (commandLine.hasOption("state")) {
+                checkpoint = CopyCheckpoint.create(Paths.get(commandLine.getOptionValue("state")),
+                        commandLine.getOptionValue("src"), commandLine.getOptionValue("dest"));
+            }
         }
+        CopyIndex copyIndex = new CopyIndex();
         copyIndex.setNumThreads(getInt(commandLine, "numThreads", NUM_THREADS));
         copyIndex.setBatchSize(getInt(commandLine, "b", BATCH_SIZE));
+        copyIndex.setNumPartitions(getInt(commandLine, "partitions", NUM_PARTITIONS));
+        copyIndex.setNumIndexThreads(getInt(commandLine, "indexThreads", NUM_INDEX_THREADS));
+        copyIndex.setMaxBatchBytes(getLong(commandLine, "maxBatchBytes", MAX_BATCH_BYTES));
+        copyIndex.setReportIntervalSeconds(getInt(commandLine, "reportInterval",
+                REPORT_INTERVAL_SECONDS));
+        copyIndex.setAutoTune(commandLine.hasOption("autoTune"));
+        copyIndex.setStratifiedSample(stratifiedSample);
+        if (commandLine.hasOption("deadLetter")) {
+            copyIndex.setDeadLetterFile(Paths.get(commandLine.getOptionValue("deadLetter")));
+        }
 
         copyIndex.execute(srcClient, destClient, filterQueries, whiteListFields,
-                blackListFields);
+                blackListFields, checkpoint);
     }
 
-    private static Set<String> updateBlackList(SearchClient srcClient,
-                                               Set<String> blackListFields)
+    static Set<String> updateBlackList(SearchClient srcClient,
+                                       Set<String> blackListFields)
             throws IOException, SearchClientException {
         Set<String> tmp = new HashSet<>();
         tmp.addAll(blackListFields);
@@ -164,15 +374,43 @@ public class CopyIndex extends AbstractCLI {
         return tmp;
     }
 
-    private void setNumThreads(int numThreads) {
+    void setNumThreads(int numThreads) {
         this.numThreads = numThreads;
     }
 
-    private void setBatchSize(int batchSize) {
+    void setBatchSize(int batchSize) {
         this.batchSize = batchSize;
     }
 
-    private static Set<String> splitComma(String s) {
+    private void setNumPartitions(int numPartitions) {
+        this.numPartitions = numPartitions;
+    }
+
+    void setNumIndexThreads(int numIndexThreads) {
+        this.numIndexThreads = numIndexThreads;
+    }
+
+    private void setMaxBatchBytes(long maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    private void setReportIntervalSeconds(int reportIntervalSeconds) {
+        this.reportIntervalSeconds = reportIntervalSeconds;
+    }
+
+    private void setAutoTune(boolean autoTune) {
+        this.autoTune = autoTune;
+    }
+
+    private void setStratifiedSample(StratifiedSample stratifiedSample) {
+        this.stratifiedSample = stratifiedSample;
+    }
+
+    private void setDeadLetterFile(Path deadLetterFile) {
+        this.deadLetterFile = deadLetterFile;
+    }
+
+    static Set<String> splitComma(String s) {
         if (StringUtils.isBlank(s)) {
             return Collections.EMPTY_SET;
         }
@@ -183,28 +421,105 @@ public class CopyIndex extends AbstractCLI {
         return ret;
     }
 
-    private void execute(SearchClient srcClient, SearchClient destClient,
-                         Set<Query> filterQueries,
-                         Set<String> whiteListFields, Set<String> blackListFields)
+    /**
+     * Copying runs in two stages with a bounded queue between them:
+     * fetchers pull batches of ids from the id grabber and fetch the docs
+     * from the source, and indexers collect the fetched docs and send
+     * them to the destination whenever their batch reaches
+     * {@link #maxBatchBytes}.  When the queue is full, the fetchers
+     * block until the indexers catch up.
+     * <p>
+     * Every {@link #reportIntervalSeconds}, the throughput of each stage
+     * is logged, and if {@link #autoTune} is set, the concurrency and
+     * batch size of the indexers are adjusted.
+     * <p>
+     * If <code>checkpoint</code> is not null, the id batches are acknowledged
+     * once all of their docs have been sent to the destination.
+     * <p>
+     * If {@link #deadLetterFile} is set, docs that the destination fails
+     * individually (e.g. with a mapping error) are written there with the
+     * reason, and the rest of their batch counts as sent.
+     * <p>
+     * If {@link #stratifiedSample} is set, its ids are copied, and if it
+     * has a sample rate, the source's ids are enumerated, but only the ids
+     * in the background sample are copied.
+     */
+    void execute(SearchClient srcClient, SearchClient destClient,
+                 Set<Query> filterQueries,
+                 Set<String> whiteListFields, Set<String> blackListFields,
+                 CopyCheckpoint checkpoint)
             throws IOException, SearchClientException {
-        ArrayBlockingQueue<Set<String>> idQueue = new ArrayBlockingQueue<>(100);
+        ArrayBlockingQueue<IdBatch> idQueue = new ArrayBlockingQueue<>(ID_QUEUE_SIZE);
+        ArrayBlockingQueue<FetchedBatch> docQueue =
+                new ArrayBlockingQueue<>(DOC_QUEUE_SIZE);
+        AtomicInteger errors = new AtomicInteger(0);
+        CopyMetrics metrics = new CopyMetrics(ID_QUEUE_SIZE, DOC_QUEUE_SIZE);
+        //items that the destination rejected and retried within a batch
+        destClient.setRejectionListener(metrics::rejected);
+        boolean passthrough = canPassThrough(srcClient, destClient, whiteListFields);
+        if (passthrough) {
+            LOG.info("copying the source json as is, without the blacklisted fields");
+        }
+        CopyThroughputController controller = new CopyThroughputController(
+                numIndexThreads, maxBatchBytes, autoTune);
+        DeadLetters deadLetters = (deadLetterFile == null) ? null : new DeadLetters(deadLetterFile);
 
-        ExecutorService executorService = Executors.newFixedThreadPool(numThreads + 1);
+        int partitions = numPartitions;
+        boolean resuming = checkpoint != null && checkpoint.isResumed();
+        if (resuming && partitions != checkpoint.getNumPartitions()) {
+            LOG.warn("resuming with the " + checkpoint.getNumPartitions() +
+                    " partitions in the state file");
+            partitions = checkpoint.getNumPartitions();
+        }
+        List<IdGrabber> idGrabbers = (stratifiedSample == null) ?
+                srcClient.getIdGrabbers(idQueue, batchSize, numThreads, filterQueries,
+                        partitions, checkpoint != null) :
+                getStratifiedGrabbers(srcClient, idQueue, filterQueries, partitions);
+        if (checkpoint != null) {
+            if (resuming && idGrabbers.size() != checkpoint.getNumPartitions()) {
+                throw new IllegalStateException("The state file has " +
+                        checkpoint.getNumPartitions() + " partitions, but the source " +
+                        "can only be enumerated with " + idGrabbers.size());
+            }
+            checkpoint.setNumPartitions(idGrabbers.size());
+            for (int i = 0; i < idGrabbers.size(); i++) {
+                idGrabbers.get(i).setResumeAfter(checkpoint.getResumeKey(i));
+            }
+        }
+        int totalThreads = numThreads + numIndexThreads + idGrabbers.size();
+        ExecutorService executorService = Executors.newFixedThreadPool(totalThreads);
         ExecutorCompletionService<Integer> executorCompletionService =
                 new ExecutorCompletionService<>(executorService);
-        String srcIdField = srcClient.getDefaultIdField();
-        String destIdField = destClient.getDefaultIdField();
-
-        executorCompletionService.submit(srcClient.getIdGrabber(idQueue,
-                batchSize, numThreads, filterQueries));
+        for (IdGrabber idGrabber : idGrabbers) {
+            executorCompletionService.submit(idGrabber);
+        }
 
+        AtomicInteger activeFetchers = new AtomicInteger(numThreads);
         for (int i = 0; i < numThreads; i++) {
-            executorCompletionService.submit(new Copier(
-                    idQueue, srcClient, destClient, whiteListFields, blackListFields));
+            executorCompletionService.submit(new Fetcher(
+                    idQueue, docQueue, activeFetchers, numIndexThreads,
+                    srcClient, destClient, whiteListFields, blackListFields, passthrough,
+                    errors, metrics));
+        }
+        for (int i = 0; i < numIndexThreads; i++) {
+            executorCompletionService.submit(new Indexer(docQueue, destClient,
+                    controller, checkpoint, deadLetters, errors, metrics));
         }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "copy-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleAtFixedRate(() -> {
+            try {
+                controller.update(metrics.report(idQueue.size(), docQueue.size()));
+            } catch (RuntimeException e) {
+                LOG.warn("couldn't report metrics", e);
+            }
+        }, reportIntervalSeconds, reportIntervalSeconds, TimeUnit.SECONDS);
         int finished = 0;
         try {
-            while (finished < numThreads + 1) {
+            while (finished < totalThreads) {
                 Future<Integer> future = executorCompletionService.poll(1,
                         TimeUnit.SECONDS);
                 if (future != null) {
@@ -213,6 +528,7 @@ public class CopyIndex extends AbstractCLI {
                         done = future.get();
                     } catch (ExecutionException e) {
                         LOG.error(e);
+                        errors.incrementAndGet();
                     }
                     if (done != null) {
                         if (done < 0) {
@@ -228,53 +544,390 @@ public class CopyIndex extends AbstractCLI {
             throw new RuntimeException(e);
         }
         executorService.shutdownNow();
+        reporter.shutdownNow();
+        destClient.setRejectionListener(null);
+        metrics.report(idQueue.size(), docQueue.size());
+        if (deadLetters != null) {
+            deadLetters.close();
+            if (deadLetters.getCount() > 0) {
+                LOG.warn(deadLetters.getCount() + " docs couldn't be indexed; see " + deadLetterFile);
+            }
+        }
+        if (errors.get() > 0) {
+            LOG.warn("there were " + errors.get() + " errors while copying");
+        }
+        if (checkpoint != null) {
+            checkpoint.close(errors.get() == 0);
+        }
+    }
+
+    private List<IdGrabber> getStratifiedGrabbers(SearchClient srcClient,
+                                                  ArrayBlockingQueue<IdBatch> idQueue,
+                                                  Set<Query> filterQueries, int partitions)
+            throws IOException, SearchClientException {
+        List<IdGrabber> idGrabbers = new ArrayList<>();
+        //the filter queries aren't applied to the judged and top N docs
+        idGrabbers.add(new IdListGrabber(stratifiedSample.getIds(), idQueue,
+                batchSize, numThreads));
+        if (stratifiedSample.getSampleRate() > 0) {
+            for (IdGrabber idGrabber : srcClient.getIdGrabbers(idQueue, batchSize,
+                    numThreads, filterQueries, partitions, false)) {
+                idGrabber.setIdFilter(stratifiedSample::isBackground);
+                idGrabbers.add(idGrabber);
+            }
+        }
+        return IdGrabber.shareCompletion(idGrabbers);
+    }
+
+    /**
+     * Documents can be copied as raw json if the source and destination are the
+     * same type of search server, there's no whitelist and the id field doesn't
+     * need to be renamed.  Blacklisted fields (including system and copy fields)
+     * are dropped while the json is copied.
+     */
+    private static boolean canPassThrough(SearchClient srcClient, SearchClient destClient,
+                                          Set<String> whiteListFields)
+            throws IOException, SearchClientException {
+        return srcClient instanceof RawDocumentClient
+                && ((RawDocumentClient) srcClient).supportsRawDocuments()
+                && srcClient.getClass().equals(destClient.getClass())
+                && whiteListFields.size() == 0
+                && srcClient.getDefaultIdField().equals(destClient.getDefaultIdField());
     }
 
-    private static class Copier implements Callable<Integer> {
+    /**
+     * Takes batches of ids off the id queue, fetches the docs from the source
+     * and puts them on the doc queue.  The last fetcher to finish adds
+     * one poison per indexer to the doc queue.
+     */
+    private static class Fetcher implements Callable<Integer> {
         private final String srcIdField;
         private final String destIdField;
-        private final ArrayBlockingQueue<Set<String>> ids;
+        private final ArrayBlockingQueue<IdBatch> ids;
+        private final ArrayBlockingQueue<FetchedBatch> docs;
+        private final AtomicInteger activeFetchers;
+        private final int numIndexers;
         private final SearchClient src;
-        private final SearchClient dest;
         private final Set<String> whiteListFields;
         private final Set<String> blackListFields;
+        private final boolean passthrough;
+        private final AtomicInteger errors;
+        private final CopyMetrics metrics;
         private int totalDocs = 0;
 
-        private Copier(ArrayBlockingQueue<Set<String>> ids,
-                       SearchClient src, SearchClient dest,
-                       Set<String> whiteListFields, Set<String> blackListFields)
+        private Fetcher(ArrayBlockingQueue<IdBatch> ids,
+                        ArrayBlockingQueue<FetchedBatch> docs,
+                        AtomicInteger activeFetchers, int numIndexers,
+                        SearchClient src, SearchClient dest,
+                        Set<String> whiteListFields, Set<String> blackListFields,
+                        boolean passthrough, AtomicInteger errors, CopyMetrics metrics)
                 throws IOException, SearchClientException {
             this.srcIdField = src.getDefaultIdField();
             this.destIdField = dest.getDefaultIdField();
             this.ids = ids;
+            this.docs = docs;
+            this.activeFetchers = activeFetchers;
+            this.numIndexers = numIndexers;
             this.src = src;
-            this.dest = dest;
             this.whiteListFields = whiteListFields;
             this.blackListFields = blackListFields;
+            this.passthrough = passthrough;
+            this.errors = errors;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Integer call() throws Exception {
+            try {
+                while (true) {
+                    //block on more ids
+                    IdBatch idBatch = ids.take();
+                    LOG.debug("ids size: " + ids.size() + " : " + idBatch.getIds().size());
+                    if (idBatch.isPoison()) {
+                        return totalDocs;
+                    }
+                    metrics.ids.record(idBatch.getIds().size(), 0, 0);
+                    FetchedBatch fetched;
+                    try {
+                        long start = System.nanoTime();
+                        fetched = fetch(idBatch);
+                        metrics.fetch.record(fetched.size(), fetched.getEstimatedSize(),
+                                System.nanoTime() - start);
+                    } catch (IOException | SearchClientException e) {
+                        LOG.error("couldn't fetch " + idBatch.getIds().size() +
+                                " docs: " + idBatch.getIds(), e);
+                        errors.incrementAndGet();
+                        continue;
+                    }
+                    //blocks if the indexers are falling behind
+                    docs.put(fetched);
+                    totalDocs += fetched.size();
+                }
+            } finally {
+                if (activeFetchers.decrementAndGet() == 0) {
+                    for (int i = 0; i < numIndexers; i++) {
+                        docs.put(FetchedBatch.POISON);
+                    }
+                }
+            }
+        }
+
+        private FetchedBatch fetch(IdBatch idBatch) throws IOException, SearchClientException {
+            if (passthrough) {
+                return FetchedBatch.raw(idBatch,
+                        ((RawDocumentClient) src).getRawDocs(srcIdField, idBatch.getIds(),
+                                blackListFields));
+            }
+            List<StoredDocument> fetched = src.getDocs(srcIdField, idBatch.getIds(),
+                    whiteListFields, blackListFields);
+            if (!srcIdField.equals(destIdField)) {
+                for (StoredDocument d : fetched) {
+                    d.rename(srcIdField, destIdField);
+                }
+            }
+            return FetchedBatch.stored(idBatch, fetched);
+        }
+    }
+
+    /**
+     * Collects fetched docs and sends them to the destination
+     * when the batch reaches roughly the controller's maxBatchBytes.
+     * An id batch is acknowledged after the flush that sends its last doc.
+     * If the destination rejects a batch with a 429 or 503, the batch
+     * is retried with exponential backoff.  If only some of the docs fail
+     * and there's a dead letter file, the failed docs are written to it, and
+     * the batch is treated as sent.
+     */
+    private static class Indexer implements Callable<Integer> {
+        private final ArrayBlockingQueue<FetchedBatch> docs;
+        private final SearchClient dest;
+        private final CopyThroughputController controller;
+        private final CopyCheckpoint checkpoint;
+        private final DeadLetters deadLetters;
+        private final AtomicInteger errors;
+        private final CopyMetrics metrics;
+        private final List<StoredDocument> batch = new ArrayList<>();
+        //used instead of batch for passthrough copies
+        private final List<RawDocument> rawBatch = new ArrayList<>();
+        //id batches whose docs have all been added to this or an earlier flush
+        private final List<FetchedBatch> completed = new ArrayList<>();
+        private long batchBytes = 0;
+        private int totalDocs = 0;
+
+        private Indexer(ArrayBlockingQueue<FetchedBatch> docs,
+                        SearchClient dest, CopyThroughputController controller,
+                        CopyCheckpoint checkpoint, DeadLetters deadLetters,
+                        AtomicInteger errors, CopyMetrics metrics) {
+            this.docs = docs;
+            this.dest = dest;
+            this.controller = controller;
+            this.checkpoint = checkpoint;
+            this.deadLetters = deadLetters;
+            this.errors = errors;
+            this.metrics = metrics;
         }
 
         @Override
         public Integer call() throws Exception {
             while (true) {
-                //block on more ids
-                Set<String> myIds = ids.take();
-                LOG.debug("ids size: " + ids.size() + " : " + myIds.size());
-                if (myIds.size() == 0) {
+                FetchedBatch fetched = docs.take();
+                if (fetched == FetchedBatch.POISON) {
+                    flush();
                     return totalDocs;
                 }
-                List<StoredDocument> docs = src.getDocs(srcIdField, myIds,
-                        whiteListFields, blackListFields);
-                if (!srcIdField.equals(destIdField)) {
-                    for (StoredDocument d : docs) {
-                        d.rename(srcIdField, destIdField);
+                if (fetched.rawDocs != null) {
+                    for (RawDocument doc : fetched.rawDocs) {
+                        makeRoom(doc.getEstimatedSize());
+                        rawBatch.add(doc);
+                    }
+                } else {
+                    for (StoredDocument doc : fetched.docs) {
+                        makeRoom(doc.getEstimatedSize());
+                        batch.add(doc);
                     }
                 }
+                completed.add(fetched);
+            }
+        }
 
-                dest.addDocuments(docs);
-                LOG.debug("inserted : " + totalDocs);
-                totalDocs += docs.size();
+        private void makeRoom(long size) throws InterruptedException {
+            if (batchSize() > 0 && batchBytes + size > controller.getMaxBatchBytes()) {
+                flush();
             }
+            batchBytes += size;
+        }
+
+        private int batchSize() {
+            return batch.size() + rawBatch.size();
+        }
 
+        private void flush() throws InterruptedException {
+            boolean success = true;
+            if (batchSize() > 0) {
+                success = send();
+            }
+            if (success && checkpoint != null) {
+                for (FetchedBatch fetchedBatch : completed) {
+                    checkpoint.ack(fetchedBatch.idBatch, fetchedBatch.size());
+                }
+            }
+            completed.clear();
+            batch.clear();
+            rawBatch.clear();
+            batchBytes = 0;
+        }
+
+        private boolean send() throws InterruptedException {
+            for (int attempt = 0; ; attempt++) {
+                controller.acquire();
+                try {
+                    long start = System.nanoTime();
+                    if (rawBatch.size() > 0) {
+                        ((RawDocumentClient) dest).addRawDocuments(rawBatch);
+                    } else {
+                        dest.addDocuments(batch);
+                    }
+                    metrics.index.record(batchSize(), batchBytes, System.nanoTime() - start);
+                    totalDocs += batchSize();
+                    LOG.debug("inserted : " + totalDocs);
+                    return true;
+                } catch (BulkFailureException e) {
+                    return handleFailures(e);
+                } catch (IOException | SearchClientException e) {
+                    if (attempt < MAX_REJECTION_RETRIES && isRejection(e)) {
+                        metrics.rejected();
+                        LOG.debug("destination rejected batch; retrying", e);
+                    } else {
+                        LOG.error("couldn't index " + batchSize() + " docs", e);
+                        errors.incrementAndGet();
+                        return false;
+                    }
+                } finally {
+                    controller.release();
+                }
+                Thread.sleep(BASE_REJECTION_BACKOFF_MILLIS << attempt);
+            }
+        }
+
+        //the docs that didn't fail were indexed, so they aren't resent
+        private boolean handleFailures(BulkFailureException e) {
+            totalDocs += batchSize() - e.getFailures().size();
+            if (deadLetters == null) {
+                LOG.error("couldn't index " + e.getFailures().size() + " of " +
+                        batchSize() + " docs", e);
+                errors.incrementAndGet();
+                return false;
+            }
+            try {
+                deadLetters.write(e.getFailures(), batch, rawBatch);
+                return true;
+            } catch (IOException ioe) {
+                LOG.error("couldn't write to the dead letter file", ioe);
+                errors.incrementAndGet();
+                return false;
+            }
+        }
+
+        private static boolean isRejection(Exception e) {
+            if (e instanceof SearchClientException) {
+                int status = ((SearchClientException) e).getStatusCode();
+                return status == 429 || status == 503;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Appends docs that the destination couldn't index to a file,
+     * one json object per line: the id, status, error type and reason
+     * and the failed document as it was sent.  This is shared by the indexers.
+     */
+    private static class DeadLetters implements Closeable {
+        private static final Gson GSON = new Gson();
+
+        private final Writer writer;
+        private int count = 0;
+
+        DeadLetters(Path path) throws IOException {
+            //append so that failures from a resumed copy are kept
+            writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        /**
+         * @param failures failures from a bulk request
+         * @param docs     the stored docs that were sent
+         * @param rawDocs  the raw docs that were sent; only one of docs or rawDocs
+         *                 should be non-empty
+         */
+        synchronized void write(List<BulkFailureException.Failure> failures,
+                                List<StoredDocument> docs, List<RawDocument> rawDocs)
+                throws IOException {
+            for (BulkFailureException.Failure failure : failures) {
+                JsonObject deadLetter = GSON.toJsonTree(failure).getAsJsonObject();
+                int index = failure.getIndex();
+                if (index > -1 && index < rawDocs.size()) {
+                    deadLetter.add("document", new JsonParser().parse(rawDocs.get(index).getJson()));
+                } else if (index > -1 && index < docs.size()) {
+                    deadLetter.add("document", GSON.toJsonTree(docs.get(index).getFields()));
+                }
+                writer.write(GSON.toJson(deadLetter));
+                writer.write('\n');
+                count++;
+            }
+            writer.flush();
+        }
+
+        synchronized int getCount() {
+            return count;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    //holds either stored docs or raw docs
+    private static class FetchedBatch {
+        private static final FetchedBatch POISON =
+                stored(IdBatch.POISON, Collections.EMPTY_LIST);
+
+        private final IdBatch idBatch;
+        private final List<StoredDocument> docs;
+        private final List<RawDocument> rawDocs;
+
+        private FetchedBatch(IdBatch idBatch, List<StoredDocument> docs,
+                             List<RawDocument> rawDocs) {
+            this.idBatch = idBatch;
+            this.docs = docs;
+            this.rawDocs = rawDocs;
+        }
+
+        static FetchedBatch stored(IdBatch idBatch, List<StoredDocument> docs) {
+            return new FetchedBatch(idBatch, docs, null);
+        }
+
+        static FetchedBatch raw(IdBatch idBatch, List<RawDocument> rawDocs) {
+            return new FetchedBatch(idBatch, null, rawDocs);
+        }
+
+        int size() {
+            return (rawDocs != null) ? rawDocs.size() : docs.size();
+        }
+
+        long getEstimatedSize() {
+            long bytes = 0;
+            if (rawDocs != null) {
+                for (RawDocument d : rawDocs) {
+                    bytes += d.getEstimatedSize();
+                }
+            } else {
+                for (StoredDocument d : docs) {
+                    bytes += d.getEstimatedSize();
+                }
+            }
+            return bytes;
         }
     }
 }
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Per-stage counters for {@link CopyIndex}.  {@link #report(int, int)}
+ * is called periodically and logs the throughput and latency for each
+ * stage since the last report, along with the depth of the queues
+ * between the stages.
+ * <p>
+ * A full id queue and an empty doc queue mean the source is the bottleneck;
+ * a full doc queue means the destination is; an empty id queue means
+ * the id grabbers are.
+ */
+class CopyMetrics {
+
+    static Logger LOG = Logger.getLogger(CopyMetrics.class);
+
+    final Stage ids = new Stage("ids");
+    final Stage fetch = new Stage("fetch");
+    final Stage index = new Stage("index");
+    private final AtomicLong rejections = new AtomicLong();
+
+    private final int idQueueCapacity;
+    private final int docQueueCapacity;
+    private long lastReport = System.nanoTime();
+    private long lastRejections = 0;
+
+    CopyMetrics(int idQueueCapacity, int docQueueCapacity) {
+        this.idQueueCapacity = idQueueCapacity;
+        this.docQueueCapacity = docQueueCapacity;
+    }
+
+    void rejected() {
+        rejected(1);
+    }
+
+    /**
+     * @param n number of requests or bulk items that the destination rejected
+     */
+    void rejected(long n) {
+        rejections.addAndGet(n);
+    }
+
+    long getRejections() {
+        return rejections.get();
+    }
+
+    /**
+     * Logs the stats since the last report
+     *
+     * @return the stats for the interval
+     */
+    synchronized Interval report(int idQueueSize, int docQueueSize) {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - lastReport) / 1_000_000_000.0;
+        lastReport = now;
+        long currentRejections = rejections.get();
+        Interval interval = new Interval(ids.delta(), fetch.delta(), index.delta(),
+                currentRejections - lastRejections, seconds);
+        lastRejections = currentRejections;
+        LOG.info(String.format(Locale.US,
+                "ids: %.0f/s | fetch: %.0f docs/s, %.1f MB/s, %.0f ms/req | " +
+                        "index: %.0f docs/s, %.1f MB/s, %.0f ms/req, %d rejected | " +
+                        "queues: ids %d/%d, docs %d/%d",
+                interval.ids.docsPerSecond(seconds),
+                interval.fetch.docsPerSecond(seconds), interval.fetch.mbPerSecond(seconds),
+                interval.fetch.millisPerRequest(),
+                interval.index.docsPerSecond(seconds), interval.index.mbPerSecond(seconds),
+                interval.index.millisPerRequest(), interval.rejections,
+                idQueueSize, idQueueCapacity, docQueueSize, docQueueCapacity));
+        return interval;
+    }
+
+    static class Stage {
+        private final String name;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong docs = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong nanos = new AtomicLong();
+        private Counts last = new Counts(0, 0, 0, 0);
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void record(long docs, long bytes, long elapsedNanos) {
+            this.requests.incrementAndGet();
+            this.docs.addAndGet(docs);
+            this.bytes.addAndGet(bytes);
+            this.nanos.addAndGet(elapsedNanos);
+        }
+
+        private Counts delta() {
+            Counts current = new Counts(requests.get(), docs.get(), bytes.get(), nanos.get());
+            Counts delta = new Counts(current.requests - last.requests,
+                    current.docs - last.docs, current.bytes - last.bytes,
+                    current.nanos - last.nanos);
+            last = current;
+            return delta;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{requests=" + requests + ", docs=" + docs +
+                    ", bytes=" + bytes + '}';
+        }
+    }
+
+    static class Counts {
+        final long requests;
+        final long docs;
+        final long bytes;
+        final long nanos;
+
+        Counts(long requests, long docs, long bytes, long nanos) {
+            this.requests = requests;
+            this.docs = docs;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        double docsPerSecond(double seconds) {
+            return docs / seconds;
+        }
+
+        double mbPerSecond(double seconds) {
+            return bytes / (1024.0 * 1024.0) / seconds;
+        }
+
+        double millisPerRequest() {
+            return (requests == 0) ? 0 : nanos / 1_000_000.0 / requests;
+        }
+
+        double millisPerDoc() {
+            return (docs == 0) ? 0 : nanos / 1_000_000.0 / docs;
+        }
+    }
+
+    static class Interval {
+        final Counts ids;
+        final Counts fetch;
+        final Counts index;
+        final long rejections;
+        final double seconds;
+
+        Interval(Counts ids, Counts fetch, Counts index, long rejections, double seconds) {
+            this.ids = ids;
+            this.fetch = fetch;
+            this.index = index;
+            this.rejections = rejections;
+            this.seconds = seconds;
+        }
+
+        double indexDocsPerSecond() {
+            return index.docsPerSecond(seconds);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Limits the number of concurrent requests to the destination
+ * and the size of each batch sent to it.
+ * <p>
+ * If auto-tuning is on, {@link #update(CopyMetrics.Interval)} adjusts both
+ * limits after each metrics interval with additive increase/multiplicative
+ * decrease: if the destination rejected any requests or bulk items (429/503) or the
+ * index latency per doc rose above {@link #MAX_LATENCY_INCREASE} times the
+ * lowest seen, both limits are halved; otherwise, the concurrency and the batch size
+ * take turns increasing for as long as throughput keeps up.  If throughput
+ * falls by more than {@link #TOLERANCE} after an increase,
+ * the increase is undone.
+ * <p>
+ * The concurrency can't exceed the number of indexer threads, and the
+ * batch size stays between {@link #MIN_BATCH_BYTES} and
+ * {@link #MAX_BATCH_BYTES_MULTIPLIER} times the starting size.
+ * <p>
+ * The fetchers aren't limited here; they block on the bounded doc queue
+ * when indexing slows, so they only read from the source as fast as the
+ * destination keeps up.
+ */
+class CopyThroughputController {
+
+    static Logger LOG = Logger.getLogger(CopyThroughputController.class);
+
+    private static final long MIN_BATCH_BYTES = 256 * 1024;
+    private static final int MAX_BATCH_BYTES_MULTIPLIER = 8;
+    private static final double BATCH_BYTES_INCREASE = 1.25;
+    private static final double TOLERANCE = 0.1;
+    private static final double MAX_LATENCY_INCREASE = 3.0;
+
+    private enum Change {
+        NONE, CONCURRENCY, BATCH_BYTES
+    }
+
+    private final boolean autoTune;
+    private final int maxConcurrency;
+    private final long maxBatchBytesLimit;
+    private final AdjustableSemaphore permits;
+    private int concurrency;
+    private volatile long maxBatchBytes;
+
+    private double lastDocsPerSecond = -1;
+    private double minMillisPerDoc = -1;
+    private Change lastChange = Change.NONE;
+    private boolean increaseConcurrencyNext = true;
+
+    /**
+     * @param maxConcurrency number of indexer threads
+     * @param maxBatchBytes  starting batch size in bytes
+     * @param autoTune       whether to adjust the limits; if false, the
+     *                       limits stay at maxConcurrency and maxBatchBytes
+     */
+    CopyThroughputController(int maxConcurrency, long maxBatchBytes, boolean autoTune) {
+        this.autoTune = autoTune;
+        this.maxConcurrency = maxConcurrency;
+        this.maxBatchBytesLimit = Math.max(MIN_BATCH_BYTES,
+                maxBatchBytes * MAX_BATCH_BYTES_MULTIPLIER);
+        this.concurrency = autoTune ? Math.max(1, maxConcurrency / 2) : maxConcurrency;
+        this.maxBatchBytes = maxBatchBytes;
+        this.permits = new AdjustableSemaphore(concurrency);
+    }
+
+    void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    void release() {
+        permits.release();
+    }
+
+    long getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    synchronized void update(CopyMetrics.Interval interval) {
+        if (!autoTune) {
+            return;
+        }
+        double docsPerSecond = interval.indexDocsPerSecond();
+        double millisPerDoc = interval.index.millisPerDoc();
+        boolean slow = minMillisPerDoc > 0
+                && millisPerDoc > MAX_LATENCY_INCREASE * minMillisPerDoc;
+        if (interval.rejections > 0 || slow) {
+            setConcurrency(Math.max(1, concurrency / 2));
+            maxBatchBytes = Math.max(MIN_BATCH_BYTES, maxBatchBytes / 2);
+            lastChange = Change.NONE;
+            String reason = (interval.rejections > 0) ?
+                    "destination rejected " + interval.rejections + " requests or items" :
+                    String.format(Locale.US, "index latency rose to %.2f ms/doc", millisPerDoc);
+            LOG.info(reason + "; backing off to concurrency=" + concurrency +
+                    ", maxBatchBytes=" + maxBatchBytes);
+        } else if (interval.index.requests == 0) {
+            //nothing was indexed; the bottleneck is upstream
+            return;
+        } else if (lastDocsPerSecond > 0
+                && docsPerSecond < (1.0 - TOLERANCE) * lastDocsPerSecond
+                && lastChange != Change.NONE) {
+            undo();
+            LOG.info("throughput dropped; reverting to concurrency=" + concurrency +
+                    ", maxBatchBytes=" + maxBatchBytes);
+        } else {
+            increase();
+            LOG.debug("concurrency=" + concurrency + ", maxBatchBytes=" + maxBatchBytes);
+        }
+        if (millisPerDoc > 0 && (minMillisPerDoc < 0 || millisPerDoc < minMillisPerDoc)) {
+            minMillisPerDoc = millisPerDoc;
+        }
+        lastDocsPerSecond = docsPerSecond;
+    }
+
+    private void increase() {
+        lastChange = Change.NONE;
+        for (int i = 0; i < 2 && lastChange == Change.NONE; i++) {
+            if (increaseConcurrencyNext && concurrency < maxConcurrency) {
+                setConcurrency(concurrency + 1);
+                lastChange = Change.CONCURRENCY;
+            } else if (!increaseConcurrencyNext && maxBatchBytes < maxBatchBytesLimit) {
+                maxBatchBytes = Math.min(maxBatchBytesLimit,
+                        (long) (maxBatchBytes * BATCH_BYTES_INCREASE));
+                lastChange = Change.BATCH_BYTES;
+            }
+            increaseConcurrencyNext = !increaseConcurrencyNext;
+        }
+    }
+
+    private void undo() {
+        if (lastChange == Change.CONCURRENCY) {
+            setConcurrency(Math.max(1, concurrency - 1));
+        } else if (lastChange == Change.BATCH_BYTES) {
+            maxBatchBytes = Math.max(MIN_BATCH_BYTES,
+                    (long) (maxBatchBytes / BATCH_BYTES_INCREASE));
+        }
+        lastChange = Change.NONE;
+    }
+
+    private void setConcurrency(int newConcurrency) {
+        int delta = newConcurrency - concurrency;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        concurrency = newConcurrency;
+    }
+
+    //exposes reducePermits so that the limit can be lowered without blocking
+    private static class AdjustableSemaphore extends Semaphore {
+        AdjustableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
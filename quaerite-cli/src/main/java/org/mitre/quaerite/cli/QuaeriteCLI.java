@@ -42,6 +42,8 @@ public class QuaeriteCLI {
             startDB();
         } else if (tool.equals("RunGA")) {
             RunGA.main(newArgs);
+        } else if (tool.equals("VerifyIndex")) {
+            VerifyIndex.main(newArgs);
         } else {
             System.err.println("I'm sorry, but I don't recognize \"" + tool + "\" as a tool");
         }
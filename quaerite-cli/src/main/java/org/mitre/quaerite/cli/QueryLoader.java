@@ -36,6 +36,7 @@ import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.mitre.quaerite.core.DocIdDictionary;
 import org.mitre.quaerite.core.Judgments;
 import org.mitre.quaerite.core.QueryInfo;
 import org.mitre.quaerite.core.QueryStrings;
@@ -65,7 +66,16 @@ class QueryLoader {
         if (freshStart) {
             experimentDB.clearJudgments();
         }
+        for (Judgments judgments : readJudgments(file).values()) {
+            experimentDB.addJudgment(judgments);
+        }
+    }
 
+    /**
+     * @param file judgments csv
+     * @return judgments by query id
+     */
+    public static Map<String, Judgments> readJudgments(Path file) throws IOException {
         Map<String, Judgments> judgmentsMap = null;
         try (InputStream is = Files.newInputStream(file)) {
             try (Reader reader = new InputStreamReader(new BOMInputStream(is), "UTF-8")) {
@@ -90,9 +100,7 @@ class QueryLoader {
                 }
             }
         }
-        for (Judgments judgments : judgmentsMap.values()) {
-            experimentDB.addJudgment(judgments);
-        }
+        return judgmentsMap;
     }
 
     private static Map<String, Judgments> loadJudmentsWithoutId(boolean hasJudgments,
@@ -102,6 +110,7 @@ class QueryLoader {
                                                                 Iterable<CSVRecord> records) {
         //queryset, Map<queryInfo.getId, Judgments>
         Map<String, Map<QueryStrings, Judgments>> queries = new HashMap<>();
+        DocIdDictionary dictionary = new DocIdDictionary();
 
         int uniqueJudgments = 0;
         for (CSVRecord record : records) {
@@ -123,7 +132,7 @@ class QueryLoader {
             } else {
                 String queryId = Integer.toString(uniqueJudgments++);
                 QueryInfo newQueryInfo = new QueryInfo(queryId, querySet, queryStrings, queryCount);
-                judgments = new Judgments(newQueryInfo);
+                judgments = new Judgments(newQueryInfo, dictionary);
                 if (queries.containsKey(querySet)) {
                     queries.get(querySet).put(queryStrings, judgments);
                 } else {
@@ -152,10 +161,11 @@ class QueryLoader {
 
     private static Map<String, Judgments> loadJudgmentsWithId(
             boolean hasJudgments, boolean hasQuerySet, boolean hasCount,
-            Set<String> queryStringNames, Iterable<CSVRecord> records) throws SQLException {
+            Set<String> queryStringNames, Iterable<CSVRecord> records) {
 
         //queryId, judgments
         Map<String, Judgments> judgmentsMap = new HashMap<>();
+        DocIdDictionary dictionary = new DocIdDictionary();
         for (CSVRecord record : records) {
             String querySet = (hasQuerySet) ? record.get(QUERY_SET) : QueryInfo.DEFAULT_QUERY_SET;
             QueryStrings queryStrings = getQueryStrings(queryStringNames, record);
@@ -174,7 +184,7 @@ class QueryLoader {
                             cachedQueryInfo + "\nand the QueryInfo loaded for this row: " + newQueryInfo);
                 }
             } else {
-                judgmentsMap.put(queryId, new Judgments(newQueryInfo));
+                judgmentsMap.put(queryId, new Judgments(newQueryInfo, dictionary));
             }
 
             if (hasJudgments) {
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.mitre.quaerite.connectors.QueryRequest;
+import org.mitre.quaerite.connectors.SearchClient;
+import org.mitre.quaerite.connectors.SearchClientException;
+import org.mitre.quaerite.core.Experiment;
+import org.mitre.quaerite.core.ExperimentSet;
+import org.mitre.quaerite.core.Judgments;
+
+/**
+ * Selects the documents for a small evaluation index that still gives
+ * representative scores:
+ * <ol>
+ *     <li>every judged document</li>
+ *     <li>the union of the top N results for each judged query for
+ *     each of the experiments (run against the source index)</li>
+ *     <li>a Bernoulli sample of the rest of the documents</li>
+ * </ol>
+ * Whether a document is in the background sample depends only on its id
+ * and the seed, so the same sample is selected every time.
+ */
+class StratifiedSample {
+
+    static Logger LOG = Logger.getLogger(StratifiedSample.class);
+
+    private final Set<String> ids;
+    private final double sampleRate;
+    private final long seed;
+
+    private StratifiedSample(Set<String> ids, double sampleRate, long seed) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.ids = Collections.unmodifiableSet(ids);
+        this.sampleRate = sampleRate;
+        this.seed = seed;
+    }
+
+    /**
+     * @param src             source index
+     * @param judgmentsFile   judgments csv
+     * @param experimentsFile experiments json to get the top N results for each
+     *                        judged query; may be <code>null</code>
+     * @param topN            number of results to include for each query and experiment
+     * @param sampleRate      probability that any other document is included
+     * @param seed            seed for the background sample
+     * @param numThreads      number of threads to run the queries
+     */
+    static StratifiedSample build(SearchClient src, Path judgmentsFile, Path experimentsFile,
+                                  int topN, double sampleRate, long seed, int numThreads)
+            throws IOException, SearchClientException {
+        Map<String, Judgments> judgmentsMap = QueryLoader.readJudgments(judgmentsFile);
+        Set<String> ids = new HashSet<>();
+        for (Judgments judgments : judgmentsMap.values()) {
+            ids.addAll(judgments.getSortedJudgments().keySet());
+        }
+        LOG.info("judged documents: " + ids.size());
+        if (experimentsFile != null && topN > 0) {
+            ExperimentSet experimentSet;
+            try (Reader reader = Files.newBufferedReader(experimentsFile, StandardCharsets.UTF_8)) {
+                experimentSet = ExperimentSet.fromJson(reader);
+            }
+            int judged = ids.size();
+            ids.addAll(getTopN(src, experimentSet, judgmentsMap.values(), topN, numThreads));
+            LOG.info("documents added from the top " + topN + " results: " + (ids.size() - judged));
+        }
+        return new StratifiedSample(ids, sampleRate, seed);
+    }
+
+    static Set<String> getTopN(SearchClient src, ExperimentSet experimentSet,
+                               Iterable<Judgments> judgmentsList, int topN,
+                               int numThreads)
+            throws IOException, SearchClientException {
+        String idField = src.getDefaultIdField();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (Experiment experiment : experimentSet.getExperiments().values()) {
+                for (Judgments judgments : judgmentsList) {
+                    futures.add(executorService.submit(() -> {
+                        QueryRequest queryRequest = AbstractExperimentRunner.buildQueryRequest(
+                                experiment.getQuery(), experiment, judgments, idField, topN);
+                        Collection<? extends String> results =
+                                src.search(queryRequest).getIds();
+                        ids.addAll(results);
+                        return results.size();
+                    }));
+                }
+            }
+            for (Future<Integer> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchClientException(e);
+        } catch (ExecutionException e) {
+            throw new SearchClientException("couldn't get the top " + topN + " results",
+                    e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        return ids;
+    }
+
+    /**
+     * @return judged and top N ids
+     */
+    Set<String> getIds() {
+        return ids;
+    }
+
+    double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @param id document id
+     * @return whether the id should be copied as part of the background sample;
+     * this is false for ids that are already in {@link #getIds()}
+     */
+    boolean isBackground(String id) {
+        if (ids.contains(id)) {
+            return false;
+        }
+        return isSampled(id, sampleRate, seed);
+    }
+
+    static boolean isSampled(String id, double sampleRate, long seed) {
+        long z = id.hashCode() + seed * 0x9e3779b97f4a7c15L;
+        //splitmix64 finalizer
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        z = z ^ (z >>> 31);
+        //top 53 bits as a double in [0, 1)
+        return (z >>> 11) * 0x1.0p-53 < sampleRate;
+    }
+}
@@ -0,0 +1,568 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import static org.mitre.quaerite.core.util.CommandLineUtil.getInt;
+import static org.mitre.quaerite.core.util.CommandLineUtil.getString;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.mitre.quaerite.connectors.IdBatch;
+import org.mitre.quaerite.connectors.IdGrabber;
+import org.mitre.quaerite.connectors.SearchClient;
+import org.mitre.quaerite.connectors.SearchClientException;
+import org.mitre.quaerite.connectors.SearchClientFactory;
+import org.mitre.quaerite.connectors.StoredDocument;
+import org.mitre.quaerite.core.queries.LuceneQuery;
+import org.mitre.quaerite.core.queries.Query;
+
+/**
+ * Checks that a destination index matches its source, e.g. after a
+ * {@link CopyIndex}.
+ * <p>
+ * In the first pass, the ids in both indices are enumerated in parallel
+ * (with partitioned id grabbers), and each document is assigned to a bucket
+ * by the hash of its id.  For each bucket, this keeps the number of documents
+ * and the sum of the hashes of the documents' ids and field values.  The sum
+ * doesn't depend on the order in which the documents are seen, so nothing
+ * but the buckets has to be kept in memory.
+ * <p>
+ * In the second pass, only the documents in buckets whose counts or sums
+ * differ are enumerated again so that the missing, extra and changed
+ * documents can be reported.
+ * <p>
+ * With <code>-idsOnly</code>, only the ids are hashed, so no documents are
+ * fetched at all; this finds missing and extra documents only.
+ * <p>
+ * Fields that differ by design between the indices (e.g. copy fields
+ * or fields that weren't copied) should be added to the blacklist.
+ */
+public class VerifyIndex extends AbstractCLI {
+
+    static Logger LOG = Logger.getLogger(VerifyIndex.class);
+
+    private static final int NUM_BUCKETS = 1024;
+    private static final int NUM_THREADS = 8;
+    private static final int NUM_PARTITIONS = 4;
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_REPORT = 100;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    static Options OPTIONS = new Options();
+
+    static {
+        OPTIONS.addOption(
+                Option.builder("src")
+                        .hasArg().required().desc("source index url").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("dest")
+                        .hasArg().required().desc("destination index url").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("whiteListFields")
+                        .hasArg()
+                        .required(false)
+                        .desc("only compare these fields (comma-delimited)").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("blackListFields")
+                        .hasArg()
+                        .required(false)
+                        .desc("don't compare these fields (comma-delimited)").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("fq")
+                        .hasArg()
+                        .required(false)
+                        .desc("filter queries that were used to copy the source " +
+                                "(comma-delimited)").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("buckets")
+                        .hasArg()
+                        .required(false)
+                        .desc("number of hash buckets; default: " + NUM_BUCKETS).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("n")
+                        .longOpt("numThreads")
+                        .hasArg()
+                        .required(false)
+                        .desc("num threads fetching docs from each index; default: "
+                                + NUM_THREADS).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("partitions")
+                        .hasArg()
+                        .required(false)
+                        .desc("num threads enumerating ids in each index; default: "
+                                + NUM_PARTITIONS).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("b")
+                        .longOpt("batchSize")
+                        .hasArg()
+                        .required(false)
+                        .desc("number of ids to fetch per request; default: " + BATCH_SIZE).build()
+        );
+        OPTIONS.addOption(
+                Option.builder("idsOnly")
+                        .hasArg(false)
+                        .required(false)
+                        .desc("only compare ids, not field values").build()
+        );
+        OPTIONS.addOption(
+                Option.builder("maxReport")
+                        .hasArg()
+                        .required(false)
+                        .desc("max number of ids to report for each kind of difference; " +
+                                "default: " + MAX_REPORT).build()
+        );
+    }
+
+    private int numBuckets = NUM_BUCKETS;
+    private int numThreads = NUM_THREADS;
+    private int numPartitions = NUM_PARTITIONS;
+    private int batchSize = BATCH_SIZE;
+    private int maxReport = MAX_REPORT;
+    private boolean idsOnly = false;
+
+    public static void main(String[] args) throws Exception {
+        CommandLine commandLine = null;
+
+        try {
+            commandLine = new DefaultParser().parse(OPTIONS, args);
+        } catch (ParseException e) {
+            HelpFormatter helpFormatter = new HelpFormatter();
+            helpFormatter.printHelp(
+                    "java -jar org.mitre.quaerite.cli.VerifyIndex",
+                    OPTIONS);
+            return;
+        }
+        SearchClient srcClient = SearchClientFactory.getClient(commandLine.getOptionValue("src"));
+        SearchClient destClient = SearchClientFactory.getClient(commandLine.getOptionValue("dest"));
+        Set<String> whiteListFields = CopyIndex.splitComma(
+                getString(commandLine, "whiteListFields", StringUtils.EMPTY));
+        Set<String> blackListFields = CopyIndex.splitComma(
+                getString(commandLine, "blackListFields", StringUtils.EMPTY));
+        //the system and copy fields of either index can't be compared
+        blackListFields = CopyIndex.updateBlackList(srcClient, blackListFields);
+        blackListFields = CopyIndex.updateBlackList(destClient, blackListFields);
+        Set<Query> filterQueries = new HashSet<>();
+        for (String q : CopyIndex.splitComma(getString(commandLine, "fq", StringUtils.EMPTY))) {
+            filterQueries.add(new LuceneQuery("", q));
+        }
+
+        VerifyIndex verifyIndex = new VerifyIndex();
+        verifyIndex.numBuckets = getInt(commandLine, "buckets", NUM_BUCKETS);
+        verifyIndex.numThreads = getInt(commandLine, "numThreads", NUM_THREADS);
+        verifyIndex.numPartitions = getInt(commandLine, "partitions", NUM_PARTITIONS);
+        verifyIndex.batchSize = getInt(commandLine, "b", BATCH_SIZE);
+        verifyIndex.maxReport = getInt(commandLine, "maxReport", MAX_REPORT);
+        verifyIndex.idsOnly = commandLine.hasOption("idsOnly");
+        boolean matches = verifyIndex.execute(srcClient, destClient, filterQueries,
+                whiteListFields, blackListFields);
+        System.out.println(matches ? "The indices match" : "The indices do not match");
+    }
+
+    /**
+     * @return whether the destination matches the source
+     */
+    private boolean execute(SearchClient srcClient, SearchClient destClient,
+                            Set<Query> filterQueries, Set<String> whiteListFields,
+                            Set<String> blackListFields) throws Exception {
+        Side src = new Side("src", srcClient, filterQueries, whiteListFields, blackListFields);
+        Side dest = new Side("dest", destClient, new HashSet<>(),
+                whiteListFields, blackListFields);
+
+        List<Buckets> buckets = scanBoth(src, dest, null);
+        Buckets srcBuckets = buckets.get(0);
+        Buckets destBuckets = buckets.get(1);
+        System.out.println("src docs: " + srcBuckets.total() + "; dest docs: " + destBuckets.total());
+
+        Set<Integer> mismatched = getMismatchedBuckets(srcBuckets, destBuckets);
+        System.out.println(mismatched.size() + " of " + numBuckets + " buckets differ");
+        if (mismatched.size() == 0) {
+            return true;
+        }
+        //second pass: collect the hashes of the docs in the mismatched buckets
+        src.collected = new ConcurrentHashMap<>();
+        dest.collected = new ConcurrentHashMap<>();
+        scanBoth(src, dest, mismatched);
+        report(src, dest);
+        return false;
+    }
+
+    private List<Buckets> scanBoth(Side src, Side dest, Set<Integer> onlyBuckets)
+            throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<Buckets> srcFuture = executorService.submit(() -> scan(src, onlyBuckets));
+            Future<Buckets> destFuture = executorService.submit(() -> scan(dest, onlyBuckets));
+            List<Buckets> buckets = new ArrayList<>();
+            buckets.add(srcFuture.get());
+            buckets.add(destFuture.get());
+            return buckets;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private Buckets scan(Side side, Set<Integer> onlyBuckets) throws Exception {
+        ArrayBlockingQueue<IdBatch> queue = new ArrayBlockingQueue<>(100);
+        List<IdGrabber> grabbers = side.client.getIdGrabbers(queue, batchSize,
+                numThreads, side.filterQueries, numPartitions, false);
+        ExecutorService executorService = Executors.newFixedThreadPool(
+                grabbers.size() + numThreads);
+        try {
+            List<Future<Buckets>> scanners = new ArrayList<>();
+            List<Future<Integer>> grabberFutures = new ArrayList<>();
+            for (IdGrabber grabber : grabbers) {
+                grabberFutures.add(executorService.submit(grabber));
+            }
+            for (int i = 0; i < numThreads; i++) {
+                scanners.add(executorService.submit(new Scanner(side, queue, onlyBuckets)));
+            }
+            Buckets buckets = new Buckets(numBuckets);
+            for (Future<Buckets> scanner : scanners) {
+                buckets.add(scanner.get());
+            }
+            for (Future<Integer> grabberFuture : grabberFutures) {
+                //surface enumeration failures; otherwise the counts would look short
+                grabberFuture.get();
+            }
+            LOG.info(side.name + ": scanned " + buckets.total() + " docs");
+            return buckets;
+        } catch (ExecutionException e) {
+            throw new SearchClientException(side.name + ": couldn't scan", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the buckets whose counts or sums differ
+     */
+    static Set<Integer> getMismatchedBuckets(Buckets src, Buckets dest) {
+        Set<Integer> mismatched = new TreeSet<>();
+        for (int i = 0; i < src.counts.length; i++) {
+            if (src.counts[i] != dest.counts[i] || src.sums[i] != dest.sums[i]) {
+                mismatched.add(i);
+            }
+        }
+        return mismatched;
+    }
+
+    /**
+     * @param src  doc hashes by id in the source
+     * @param dest doc hashes by id in the destination
+     * @return the ids that are missing from, extra in or changed in the destination
+     */
+    static Differences diff(Map<String, Long> src, Map<String, Long> dest) {
+        Differences differences = new Differences();
+        for (Map.Entry<String, Long> e : src.entrySet()) {
+            Long destHash = dest.get(e.getKey());
+            if (destHash == null) {
+                differences.missing.add(e.getKey());
+            } else if (!destHash.equals(e.getValue())) {
+                differences.changed.add(e.getKey());
+            }
+        }
+        for (String id : dest.keySet()) {
+            if (!src.containsKey(id)) {
+                differences.extra.add(id);
+            }
+        }
+        Collections.sort(differences.missing);
+        Collections.sort(differences.extra);
+        Collections.sort(differences.changed);
+        return differences;
+    }
+
+    private void report(Side src, Side dest) throws IOException, SearchClientException {
+        Differences differences = diff(src.collected, dest.collected);
+        reportIds("missing from dest", differences.missing);
+        reportIds("extra in dest", differences.extra);
+        reportIds("changed", differences.changed);
+        if (!idsOnly) {
+            reportFieldDiffs(src, dest, differences.changed);
+        }
+    }
+
+    private void reportIds(String label, List<String> ids) {
+        System.out.println(ids.size() + " " + label);
+        for (int i = 0; i < ids.size() && i < maxReport; i++) {
+            System.out.println("\t" + ids.get(i));
+        }
+    }
+
+    private void reportFieldDiffs(Side src, Side dest, List<String> changed)
+            throws IOException, SearchClientException {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < changed.size() && i < maxReport; i++) {
+            ids.add(changed.get(i));
+        }
+        if (ids.size() == 0) {
+            return;
+        }
+        Map<String, Map<String, String>> srcDocs = src.fetchCanonical(ids);
+        Map<String, Map<String, String>> destDocs = dest.fetchCanonical(ids);
+        for (String id : new TreeSet<>(ids)) {
+            Map<String, String> s = srcDocs.get(id);
+            Map<String, String> d = destDocs.get(id);
+            if (s == null || d == null) {
+                continue;
+            }
+            Set<String> fields = new TreeSet<>(s.keySet());
+            fields.addAll(d.keySet());
+            for (String field : fields) {
+                if (!StringUtils.equals(s.get(field), d.get(field))) {
+                    System.out.println("\t" + id + "\t" + field + "\tsrc=" + s.get(field) +
+                            "\tdest=" + d.get(field));
+                }
+            }
+        }
+    }
+
+    static int getBucket(String id, int numBuckets) {
+        return (int) Long.remainderUnsigned(mix(hash(id, FNV_OFFSET)), numBuckets);
+    }
+
+    /**
+     * @param id     document id
+     * @param fields canonical fields from {@link #canonicalize(StoredDocument, String)}
+     * @return hash of the id and the fields
+     */
+    static long hashDoc(String id, Map<String, String> fields) {
+        long h = hash(id, FNV_OFFSET);
+        for (Map.Entry<String, String> e : fields.entrySet()) {
+            h = hash(e.getKey(), h ^ 0x1f);
+            h = hash(e.getValue(), h ^ 0x1e);
+        }
+        return mix(h);
+    }
+
+    /**
+     * @return the fields other than the id, sorted by name, with
+     * multiple values joined
+     */
+    static Map<String, String> canonicalize(StoredDocument doc, String idField) {
+        Map<String, String> fields = new TreeMap<>();
+        for (Map.Entry<String, Object> e : doc.getFields().entrySet()) {
+            String field = e.getKey();
+            //ESClient.getDocs stores the _id as "id"
+            if (field.equals(idField) || field.equals("id")) {
+                continue;
+            }
+            Object value = e.getValue();
+            if (value instanceof List) {
+                fields.put(field, StringUtils.join((List) value, '\u0001'));
+            } else {
+                fields.put(field, String.valueOf(value));
+            }
+        }
+        return fields;
+    }
+
+    //64 bit FNV-1a
+    private static long hash(String s, long h) {
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    //splitmix64 finalizer so that sums of similar hashes don't collide
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Per bucket document counts and sums of document hashes
+     */
+    static class Buckets {
+        private final long[] counts;
+        private final long[] sums;
+
+        Buckets(int numBuckets) {
+            counts = new long[numBuckets];
+            sums = new long[numBuckets];
+        }
+
+        void add(int bucket, long hash) {
+            counts[bucket]++;
+            sums[bucket] += hash;
+        }
+
+        void add(Buckets other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+                sums[i] += other.sums[i];
+            }
+        }
+
+        long total() {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            return total;
+        }
+    }
+
+    static class Differences {
+        final List<String> missing = new ArrayList<>();
+        final List<String> extra = new ArrayList<>();
+        final List<String> changed = new ArrayList<>();
+    }
+
+    /**
+     * One of the indices being compared
+     */
+    private class Side {
+        private final String name;
+        private final SearchClient client;
+        private final Collection<Query> filterQueries;
+        private final Set<String> whiteListFields;
+        private final Set<String> blackListFields;
+        private final String idField;
+        //ids and doc hashes for the mismatched buckets in the second pass
+        private Map<String, Long> collected = null;
+
+        Side(String name, SearchClient client, Collection<Query> filterQueries,
+                Set<String> whiteListFields, Set<String> blackListFields)
+                throws IOException, SearchClientException {
+            this.name = name;
+            this.client = client;
+            this.filterQueries = filterQueries;
+            this.whiteListFields = whiteListFields;
+            this.blackListFields = blackListFields;
+            this.idField = client.getDefaultIdField();
+        }
+
+        /**
+         * @return canonical fields by id
+         */
+        Map<String, Map<String, String>> fetchCanonical(Set<String> ids)
+                throws IOException, SearchClientException {
+            Map<String, Map<String, String>> docs = new TreeMap<>();
+            for (StoredDocument doc : client.getDocs(idField, ids,
+                    whiteListFields, blackListFields)) {
+                String id = getId(doc);
+                if (id != null) {
+                    docs.put(id, canonicalize(doc));
+                }
+            }
+            return docs;
+        }
+
+        //ESClient.getDocs stores the _id as "id"
+        String getId(StoredDocument doc) {
+            Object id = doc.getFields().get(idField);
+            if (id == null) {
+                id = doc.getFields().get("id");
+            }
+            return (id == null) ? null : id.toString();
+        }
+
+        Map<String, String> canonicalize(StoredDocument doc) {
+            return VerifyIndex.canonicalize(doc, idField);
+        }
+    }
+
+    private class Scanner implements Callable<Buckets> {
+        private final Side side;
+        private final ArrayBlockingQueue<IdBatch> queue;
+        private final Set<Integer> onlyBuckets;
+        private final Buckets buckets = new Buckets(numBuckets);
+
+        Scanner(Side side, ArrayBlockingQueue<IdBatch> queue, Set<Integer> onlyBuckets) {
+            this.side = side;
+            this.queue = queue;
+            this.onlyBuckets = onlyBuckets;
+        }
+
+        @Override
+        public Buckets call() throws Exception {
+            while (true) {
+                IdBatch batch = queue.take();
+                if (batch.isPoison()) {
+                    return buckets;
+                }
+                Set<String> ids = new HashSet<>();
+                for (String id : batch.getIds()) {
+                    if (onlyBuckets == null || onlyBuckets.contains(getBucket(id, numBuckets))) {
+                        ids.add(id);
+                    }
+                }
+                if (ids.size() == 0) {
+                    continue;
+                }
+                if (idsOnly) {
+                    for (String id : ids) {
+                        add(id, hashDoc(id, Collections.EMPTY_MAP));
+                    }
+                    continue;
+                }
+                for (StoredDocument doc : side.client.getDocs(side.idField, ids,
+                        side.whiteListFields, side.blackListFields)) {
+                    String id = side.getId(doc);
+                    if (id != null) {
+                        add(id, hashDoc(id, side.canonicalize(doc)));
+                    }
+                }
+            }
+        }
+
+        private void add(String id, long hash) {
+            buckets.add(getBucket(id, numBuckets), hash);
+            if (side.collected != null) {
+                side.collected.put(id, hash);
+            }
+        }
+    }
+}
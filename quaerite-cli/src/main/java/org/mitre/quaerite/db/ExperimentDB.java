@@ -41,6 +41,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.mitre.quaerite.core.DocIdDictionary;
 import org.mitre.quaerite.core.Experiment;
 import org.mitre.quaerite.core.ExperimentConfig;
 import org.mitre.quaerite.core.ExperimentSet;
@@ -48,7 +49,6 @@ import org.mitre.quaerite.core.JudgmentList;
 import org.mitre.quaerite.core.Judgments;
 import org.mitre.quaerite.core.QueryInfo;
 import org.mitre.quaerite.core.SearchResultSet;
-import org.mitre.quaerite.core.scorers.AbstractJudgmentScorer;
 import org.mitre.quaerite.core.scorers.DistributionalScoreAggregator;
 import org.mitre.quaerite.core.scorers.Scorer;
 import org.mitre.quaerite.core.scorers.SummingScoreAggregator;
@@ -327,9 +327,7 @@ public class ExperimentDB implements Closeable {
     public Set<String> extractQuerySets(List<Scorer> scorers) {
         Set<String> querySets = new HashSet<>();
         for (Scorer scorer : scorers) {
-            if (scorer instanceof AbstractJudgmentScorer) {
-                querySets.addAll(((AbstractJudgmentScorer) scorer).getQuerySets());
-            }
+            querySets.addAll(scorer.getQuerySets());
         }
         return querySets;
     }
@@ -350,9 +348,11 @@ public class ExperimentDB implements Closeable {
     public JudgmentList getJudgments() throws SQLException {
         ResultSet rs = selectAllJudgments.executeQuery();
         JudgmentList list = new JudgmentList();
+        //all of the judgments share one dictionary
+        DocIdDictionary dictionary = new DocIdDictionary();
         while (rs.next()) {
             String json = rs.getString(1);
-            list.addJudgments(Judgments.fromJson(json));
+            list.addJudgments(Judgments.fromJson(json, dictionary));
         }
         return list;
     }
@@ -526,14 +526,22 @@ public class ExperimentDB implements Closeable {
             initInsertScoresAggregated(scorers);
         }
         Set<String> querySets = extractQuerySets(scorers);
+        //summarize all of the query sets for each scorer at once
+        List<Map<String, Map<String, Double>>> summaries = new ArrayList<>();
+        for (Scorer scorer : scorers) {
+            summaries.add(scorer.getSummaryStatistics());
+        }
         for (String querySet : querySets) {
             insertScoresAggregated.clearParameters();
             insertScoresAggregated.setString(1, querySet);
             insertScoresAggregated.setString(2, experimentName);
             int i = 3;
-            for (Scorer scorer : scorers) {
-                Map<String, Double> statValues =
-                        scorer.getSummaryStatistics(querySet);
+            for (int j = 0; j < scorers.size(); j++) {
+                Scorer scorer = scorers.get(j);
+                Map<String, Double> statValues = summaries.get(j).get(querySet);
+                if (statValues == null) {
+                    statValues = scorer.getSummaryStatistics(querySet);
+                }
 
                 for (String stat : scorer.getStatistics()) {
                     insertScoresAggregated.setDouble(i++, statValues.get(stat));
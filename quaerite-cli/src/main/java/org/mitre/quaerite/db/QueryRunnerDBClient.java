@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.List;
 
 import com.google.gson.Gson;
@@ -74,10 +75,13 @@ public class QueryRunnerDBClient implements Closeable {
         insertScores.setString(4, experimentName);
 
         int i = 5;
-        //TODO: check that score is not null
         for (Scorer scoreAggregator : scorers) {
-            insertScores.setDouble(i++,
-                    scoreAggregator.getScores().get(queryInfo));
+            double score = scoreAggregator.getScore(queryInfo);
+            if (Double.isNaN(score)) {
+                insertScores.setNull(i++, Types.DOUBLE);
+            } else {
+                insertScores.setDouble(i++, score);
+            }
         }
         insertScores.addBatch();
     }
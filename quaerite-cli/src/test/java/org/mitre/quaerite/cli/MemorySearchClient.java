@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.mitre.quaerite.connectors.IdBatch;
+import org.mitre.quaerite.connectors.IdGrabber;
+import org.mitre.quaerite.connectors.QueryRequest;
+import org.mitre.quaerite.connectors.SearchClient;
+import org.mitre.quaerite.connectors.SearchClientException;
+import org.mitre.quaerite.connectors.StoredDocument;
+import org.mitre.quaerite.core.FacetResult;
+import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.queries.Query;
+import org.mitre.quaerite.core.stats.TokenDF;
+
+/**
+ * Source with ids 0 to numDocs - 1, of which the ids below numDeleted are
+ * enumerated but can't be fetched, or destination that records the ids
+ * it's sent; tests override what else they need.  The ids are enumerated
+ * in numeric order, and a batch's resume key is its last id.
+ */
+class MemorySearchClient extends SearchClient {
+
+    private final int numDocs;
+    private final int numDeleted;
+    final ConcurrentSkipListSet<String> indexed = new ConcurrentSkipListSet<>();
+
+    MemorySearchClient(int numDocs, int numDeleted) {
+        this.numDocs = numDocs;
+        this.numDeleted = numDeleted;
+    }
+
+    @Override
+    public IdGrabber getIdGrabber(ArrayBlockingQueue<IdBatch> ids, int batchSize,
+                                  int copierThreads, Collection<Query> filterQueries)
+            throws IOException, SearchClientException {
+        return new IdGrabber("id", ids, batchSize, copierThreads, filterQueries) {
+            @Override
+            public Integer call() throws Exception {
+                try {
+                    int start = (resumeAfter == null) ? 0 : Integer.parseInt(resumeAfter) + 1;
+                    Set<String> batch = new TreeSet<>();
+                    for (int i = start; i < numDocs; i++) {
+                        batch.add(Integer.toString(i));
+                        if (batch.size() == batchSize) {
+                            addBatch(batch, Integer.toString(i));
+                            batch = new TreeSet<>();
+                        }
+                    }
+                    addBatch(batch, Integer.toString(numDocs - 1));
+                } finally {
+                    addPoison();
+                }
+                return numDocs;
+            }
+        };
+    }
+
+    @Override
+    public List<StoredDocument> getDocs(String idField, Set<String> ids,
+                                        Set<String> whiteListFields,
+                                        Set<String> blackListFields)
+            throws IOException, SearchClientException {
+        List<StoredDocument> docs = new ArrayList<>();
+        for (String id : ids) {
+            if (Integer.parseInt(id) >= numDeleted) {
+                StoredDocument doc = new StoredDocument();
+                doc.addNonBlankField("id", id);
+                docs.add(doc);
+            }
+        }
+        return docs;
+    }
+
+    @Override
+    public void addDocuments(List<StoredDocument> documents)
+            throws IOException, SearchClientException {
+        for (StoredDocument doc : documents) {
+            indexed.add((String) doc.getFields().get("id"));
+        }
+    }
+
+    @Override
+    public String getDefaultIdField() throws IOException, SearchClientException {
+        return "id";
+    }
+
+    @Override
+    public SearchResultSet search(QueryRequest query) throws SearchClientException, IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FacetResult facet(QueryRequest query) throws SearchClientException, IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<? extends String> getCopyFields() throws IOException, SearchClientException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void deleteAll() throws SearchClientException, IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<String> getSystemInternalFields() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<String> analyze(String field, String string)
+            throws IOException, SearchClientException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<TokenDF> getTerms(String field, String lower, int limit, int minCount)
+            throws IOException, SearchClientException {
+        throw new UnsupportedOperationException();
+    }
+}
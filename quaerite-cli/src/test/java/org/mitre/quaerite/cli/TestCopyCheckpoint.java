@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.connectors.ESClient;
+import org.mitre.quaerite.connectors.IdBatch;
+import org.mitre.quaerite.connectors.IdGrabber;
+
+public class TestCopyCheckpoint {
+
+    private static final String SRC = "http://localhost:8983/solr/src";
+    private static final String DEST = "http://localhost:8983/solr/dest";
+
+    private Path state;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        state = Files.createTempFile("quaerite-copy-state", ".json");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(state);
+    }
+
+    @Test
+    public void testOutOfOrderAcks() throws Exception {
+        CopyCheckpoint checkpoint = CopyCheckpoint.create(state, SRC, DEST);
+        assertNull(checkpoint.getResumeKey(0));
+        //batch 0 hasn't been indexed, so nothing after it counts
+        checkpoint.ack(batch(0, 2), 10);
+        checkpoint.ack(batch(0, 1), 10);
+        assertNull(checkpoint.getResumeKey(0));
+        //filling the gap advances past every contiguous batch
+        checkpoint.ack(batch(0, 0), 10);
+        assertEquals("key-0-2", checkpoint.getResumeKey(0));
+        //partitions advance independently
+        checkpoint.ack(batch(1, 1), 10);
+        assertNull(checkpoint.getResumeKey(1));
+        checkpoint.ack(batch(1, 0), 10);
+        assertEquals("key-1-1", checkpoint.getResumeKey(1));
+        assertEquals("key-0-2", checkpoint.getResumeKey(0));
+    }
+
+    @Test
+    public void testFailedBatchDoesNotAdvance() throws Exception {
+        CopyCheckpoint checkpoint = CopyCheckpoint.create(state, SRC, DEST);
+        checkpoint.ack(batch(0, 0), 10);
+        //batch 1 failed, so it's never acknowledged
+        for (int seq = 2; seq < 10; seq++) {
+            checkpoint.ack(batch(0, seq), 10);
+        }
+        assertEquals("key-0-0", checkpoint.getResumeKey(0));
+        checkpoint.close(false);
+
+        CopyCheckpoint resumed = CopyCheckpoint.load(state, SRC, DEST);
+        assertFalse(resumed.isComplete());
+        assertEquals("key-0-0", resumed.getResumeKey(0));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        CopyCheckpoint checkpoint = CopyCheckpoint.create(state, SRC, DEST);
+        assertFalse(checkpoint.isResumed());
+        checkpoint.setNumPartitions(2);
+        checkpoint.ack(batch(0, 0), 10);
+        checkpoint.ack(batch(1, 0), 10);
+        checkpoint.ack(batch(1, 1), 5);
+        checkpoint.close(false);
+        //the state file is moved into place, not written in place
+        assertFalse(Files.exists(state.resolveSibling(state.getFileName() + ".tmp")));
+
+        CopyCheckpoint resumed = CopyCheckpoint.load(state, SRC, DEST);
+        assertTrue(resumed.isResumed());
+        assertFalse(resumed.isComplete());
+        assertEquals(2, resumed.getNumPartitions());
+        assertEquals("key-0-0", resumed.getResumeKey(0));
+        assertEquals("key-1-1", resumed.getResumeKey(1));
+
+        //a state file can't be resumed for a different copy
+        assertThrows(IllegalArgumentException.class,
+                () -> CopyCheckpoint.load(state, SRC, "http://localhost:8983/solr/other"));
+        //and creating a new one starts over
+        CopyCheckpoint.create(state, SRC, DEST).close(true);
+        resumed = CopyCheckpoint.load(state, SRC, DEST);
+        assertTrue(resumed.isComplete());
+        assertNull(resumed.getResumeKey(0));
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        //a previous run indexed ids 0-39 before it failed
+        CopyCheckpoint checkpoint = CopyCheckpoint.create(state, SRC, DEST);
+        for (int seq = 0; seq < 4; seq++) {
+            checkpoint.ack(new IdBatch(0, seq, Collections.EMPTY_SET,
+                    Integer.toString(seq * 10 + 9)), 10);
+        }
+        checkpoint.close(false);
+
+        CopyCheckpoint resumed = CopyCheckpoint.load(state, SRC, DEST);
+        MemorySearchClient src = new MemorySearchClient(100, 0);
+        MemorySearchClient dest = new MemorySearchClient(0, 0);
+        CopyIndex copyIndex = new CopyIndex();
+        copyIndex.setNumThreads(2);
+        copyIndex.setNumIndexThreads(1);
+        copyIndex.setBatchSize(10);
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () ->
+                copyIndex.execute(src, dest, Collections.EMPTY_SET, Collections.EMPTY_SET,
+                        Collections.EMPTY_SET, resumed));
+        //only the ids after the checkpoint are copied again
+        assertEquals(60, dest.indexed.size());
+        assertFalse(dest.indexed.contains("39"));
+        assertTrue(dest.indexed.contains("40"));
+
+        CopyCheckpoint completed = CopyCheckpoint.load(state, SRC, DEST);
+        assertTrue(completed.isComplete());
+        assertEquals("99", completed.getResumeKey(0));
+    }
+
+    @Test
+    public void testPointInTimeKeys() throws Exception {
+        //a copy from an elasticsearch point in time checkpoints _shard_doc keys
+        CopyCheckpoint checkpoint = CopyCheckpoint.create(state, SRC, DEST);
+        checkpoint.ack(new IdBatch(0, 0, Collections.EMPTY_SET, "_shard_doc:41"), 10);
+        checkpoint.close(false);
+        CopyCheckpoint resumed = CopyCheckpoint.load(state, SRC, DEST);
+        assertEquals("_shard_doc:41", resumed.getResumeKey(0));
+
+        //but the point in time is gone, so they can't be resumed
+        ESClient client = new ESClient("http://localhost:9200/src");
+        IdGrabber grabber = client.getIdGrabber(new ArrayBlockingQueue<>(10), 10, 2,
+                Collections.EMPTY_LIST);
+        assertThrows(IllegalArgumentException.class,
+                () -> grabber.setResumeAfter(resumed.getResumeKey(0)));
+        client.setIdSortField("id_copy");
+        assertThrows(IllegalArgumentException.class,
+                () -> grabber.setResumeAfter(resumed.getResumeKey(0)));
+    }
+
+    private static IdBatch batch(int partition, long seq) {
+        return new IdBatch(partition, seq, Collections.EMPTY_SET,
+                "key-" + partition + "-" + seq);
+    }
+}
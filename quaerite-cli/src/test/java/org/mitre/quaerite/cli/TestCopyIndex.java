@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+public class TestCopyIndex {
+
+    @Test
+    public void testEmptyFetchDoesNotStopIndexer() throws Exception {
+        //ids 0-29 are enumerated but deleted before they're fetched,
+        //so the first three batches come back empty
+        MemorySearchClient src = new MemorySearchClient(100, 30);
+        MemorySearchClient dest = new MemorySearchClient(0, 0);
+        CopyIndex copyIndex = new CopyIndex();
+        copyIndex.setNumThreads(2);
+        copyIndex.setNumIndexThreads(1);
+        copyIndex.setBatchSize(10);
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () ->
+                copyIndex.execute(src, dest, Collections.EMPTY_SET, Collections.EMPTY_SET,
+                        Collections.EMPTY_SET, null));
+        assertEquals(70, dest.indexed.size());
+        assertEquals("30", dest.indexed.first());
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class TestCopyThroughputController {
+
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void testAdditiveIncrease() {
+        CopyThroughputController controller = new CopyThroughputController(4, MB, true);
+        assertEquals(2, controller.getConcurrency());
+        //concurrency and batch size take turns going up by a step
+        controller.update(interval(1000, 0, 1.0));
+        assertEquals(3, controller.getConcurrency());
+        assertEquals(MB, controller.getMaxBatchBytes());
+        controller.update(interval(1000, 0, 1.0));
+        assertEquals(3, controller.getConcurrency());
+        assertEquals((long) (MB * 1.25), controller.getMaxBatchBytes());
+        controller.update(interval(1000, 0, 1.0));
+        assertEquals(4, controller.getConcurrency());
+
+        //the ceilings: the number of indexers and 8x the starting batch size
+        for (int i = 0; i < 50; i++) {
+            controller.update(interval(1000, 0, 1.0));
+        }
+        assertEquals(4, controller.getConcurrency());
+        assertEquals(4, controller.availablePermits());
+        assertEquals(8 * MB, controller.getMaxBatchBytes());
+    }
+
+    @Test
+    public void testBackOffOnRejection() {
+        CopyThroughputController controller = new CopyThroughputController(8, MB, true);
+        for (int i = 0; i < 10; i++) {
+            controller.update(interval(1000, 0, 1.0));
+        }
+        assertEquals(8, controller.getConcurrency());
+        long batchBytes = controller.getMaxBatchBytes();
+
+        controller.update(interval(1000, 3, 1.0));
+        assertEquals(4, controller.getConcurrency());
+        assertEquals(batchBytes / 2, controller.getMaxBatchBytes());
+        assertEquals(4, controller.availablePermits());
+
+        //the floors: one request at a time and 256KB batches
+        for (int i = 0; i < 20; i++) {
+            controller.update(interval(1000, 1, 1.0));
+        }
+        assertEquals(1, controller.getConcurrency());
+        assertEquals(1, controller.availablePermits());
+        assertEquals(256 * 1024, controller.getMaxBatchBytes());
+    }
+
+    @Test
+    public void testBackOffOnLatency() {
+        CopyThroughputController controller = new CopyThroughputController(8, MB, true);
+        for (int i = 0; i < 7; i++) {
+            controller.update(interval(1000, 0, 1.0));
+        }
+        assertEquals(8, controller.getConcurrency());
+        //slower, but within 3x of the fastest
+        controller.update(interval(1000, 0, 2.5));
+        assertEquals(8, controller.getConcurrency());
+
+        controller.update(interval(1000, 0, 4.0));
+        assertEquals(4, controller.getConcurrency());
+    }
+
+    @Test
+    public void testUndoAfterThroughputDrops() {
+        CopyThroughputController controller = new CopyThroughputController(4, MB, true);
+        controller.update(interval(1000, 0, 1.0));
+        assertEquals(3, controller.getConcurrency());
+        controller.update(interval(500, 0, 1.0));
+        assertEquals(2, controller.getConcurrency());
+    }
+
+    @Test
+    public void testReduceHeldPermits() throws Exception {
+        CopyThroughputController controller = new CopyThroughputController(4, MB, true);
+        controller.acquire();
+        controller.acquire();
+        //lowering the limit doesn't wait for the requests in flight
+        controller.update(interval(1000, 1, 1.0));
+        assertEquals(1, controller.getConcurrency());
+        assertEquals(-1, controller.availablePermits());
+        controller.release();
+        controller.release();
+        assertEquals(1, controller.availablePermits());
+    }
+
+    @Test
+    public void testNoAutoTune() {
+        CopyThroughputController controller = new CopyThroughputController(4, MB, false);
+        controller.update(interval(1000, 5, 1.0));
+        assertEquals(4, controller.getConcurrency());
+        assertEquals(MB, controller.getMaxBatchBytes());
+    }
+
+    //one second with ten index requests
+    private static CopyMetrics.Interval interval(long docs, long rejections,
+                                                 double millisPerDoc) {
+        CopyMetrics.Counts none = new CopyMetrics.Counts(0, 0, 0, 0);
+        CopyMetrics.Counts index = new CopyMetrics.Counts(10, docs, docs * 1000,
+                (long) (docs * millisPerDoc * 1_000_000));
+        return new CopyMetrics.Interval(none, none, index, rejections, 1.0);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.core.Experiment;
+import org.mitre.quaerite.core.ExperimentSet;
+import org.mitre.quaerite.core.JudgmentList;
+import org.mitre.quaerite.core.Judgments;
+import org.mitre.quaerite.core.QueryInfo;
+import org.mitre.quaerite.core.QueryStrings;
+import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.queries.LuceneQuery;
+import org.mitre.quaerite.core.scorers.ElapsedTimePercentiles;
+import org.mitre.quaerite.core.scorers.NDCG;
+import org.mitre.quaerite.core.scorers.PrecisionAtN;
+import org.mitre.quaerite.core.scorers.Scorer;
+import org.mitre.quaerite.db.ExperimentDB;
+
+public class TestDumpResults {
+
+    private Path dir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("quaerite-dump-");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testOrderByScorer() {
+        NDCG ndcg = new NDCG(10);
+        ndcg.setUseForTrain();
+        PrecisionAtN precision = new PrecisionAtN(10);
+        precision.setUseForTest();
+        ElapsedTimePercentiles latency = new ElapsedTimePercentiles(10);
+        List<Scorer> scorers = Arrays.asList(ndcg, precision, latency);
+        assertEquals(ndcg, AbstractExperimentRunner.getOrderByScorer(scorers, false));
+        assertEquals(precision, AbstractExperimentRunner.getOrderByScorer(scorers, true));
+        //an explicit order by scorer takes precedence
+        latency.setOrderBy();
+        assertEquals(latency, AbstractExperimentRunner.getOrderByScorer(scorers, false));
+        assertEquals(latency, AbstractExperimentRunner.getOrderByScorer(scorers, true));
+        assertNull(AbstractExperimentRunner.getOrderByScorer(
+                Collections.singletonList(new ElapsedTimePercentiles(10)), false));
+    }
+
+    @Test
+    public void testRankByLatency() throws Exception {
+        ElapsedTimePercentiles latency = new ElapsedTimePercentiles(10);
+        latency.setOrderBy();
+        List<Scorer> scorers = Collections.singletonList(latency);
+        JudgmentList judgmentList = new JudgmentList();
+        for (int i = 0; i < 100; i++) {
+            judgmentList.addJudgments(new Judgments(new QueryInfo("q" + i,
+                    QueryInfo.DEFAULT_QUERY_SET, new QueryStrings(), 1)));
+        }
+
+        ExperimentDB db = ExperimentDB.openAndDrop(dir.resolve("db"));
+        try {
+            db.addScorer(latency);
+            db.initScoreTable(scorers);
+            //the slow experiment is added first, so it would be first without an order by
+            for (String name : new String[]{"slow", "fast"}) {
+                db.addExperiment(new Experiment(name, "http://solr",
+                        new LuceneQuery("text", "query")));
+                latency.reset(judgmentList);
+                long millis = name.equals("slow") ? 100 : 10;
+                for (Judgments judgments : judgmentList.getJudgmentsList()) {
+                    latency.score(judgments.getQueryInfo(), new SearchResultSet(0,
+                            millis, millis, Collections.EMPTY_LIST));
+                }
+                db.insertScoresAggregated(name, scorers);
+            }
+            ExperimentSet experimentSet = db.getExperiments();
+            Path outputDir = dir.resolve("results");
+            AbstractExperimentRunner.dumpResults(experimentSet, db, Collections.EMPTY_LIST,
+                    experimentSet.getScorers(), outputDir, false);
+
+            List<String> lines = Files.readAllLines(
+                    outputDir.resolve("scores_aggregated.csv"), StandardCharsets.UTF_8);
+            assertEquals(3, lines.size());
+            List<String> headers = Arrays.asList(lines.get(0).split(","));
+            int experiment = headers.indexOf("EXPERIMENT");
+            int p99 = headers.indexOf("ELAPSEDTIMEPERCENTILES_10_P99");
+            assertTrue(experiment > -1 && p99 > -1, lines.get(0));
+            //lower latencies rank first
+            assertEquals("fast", lines.get(1).split(",")[experiment]);
+            assertEquals("slow", lines.get(2).split(",")[experiment]);
+            assertTrue(Double.parseDouble(lines.get(1).split(",")[p99]) <
+                    Double.parseDouble(lines.get(2).split(",")[p99]));
+        } finally {
+            db.close();
+        }
+    }
+}
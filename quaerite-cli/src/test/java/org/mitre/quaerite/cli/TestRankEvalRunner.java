@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.connectors.ESClient;
+import org.mitre.quaerite.connectors.SearchClient;
+import org.mitre.quaerite.core.scorers.AverageQueryTime;
+import org.mitre.quaerite.core.scorers.NDCG;
+import org.mitre.quaerite.core.scorers.PrecisionAtN;
+import org.mitre.quaerite.core.scorers.Scorer;
+
+public class TestRankEvalRunner {
+
+    @Test
+    public void testCanUseRankEval() throws Exception {
+        SearchClient es = new ESClient("http://localhost:9200/tmdb");
+        List<Scorer> judgmentScorers = Arrays.asList(new NDCG(10), new PrecisionAtN(10));
+        assertTrue(AbstractExperimentRunner.canUseRankEval(true, es, judgmentScorers));
+        assertFalse(AbstractExperimentRunner.canUseRankEval(false, es, judgmentScorers));
+        //_rank_eval doesn't report timings
+        assertFalse(AbstractExperimentRunner.canUseRankEval(true, es,
+                Arrays.asList(new NDCG(10), new AverageQueryTime(10))));
+    }
+}
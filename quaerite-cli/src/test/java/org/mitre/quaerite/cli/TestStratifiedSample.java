@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.connectors.QueryRequest;
+import org.mitre.quaerite.connectors.SearchClientException;
+import org.mitre.quaerite.core.Experiment;
+import org.mitre.quaerite.core.ExperimentSet;
+import org.mitre.quaerite.core.Judgments;
+import org.mitre.quaerite.core.QueryInfo;
+import org.mitre.quaerite.core.QueryStrings;
+import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.queries.LuceneQuery;
+
+public class TestStratifiedSample {
+
+    private static final int NUM_IDS = 100000;
+
+    @Test
+    public void testSameSeedSameSample() {
+        int differences = 0;
+        for (int i = 0; i < NUM_IDS; i++) {
+            String id = "doc-" + i;
+            assertEquals(StratifiedSample.isSampled(id, 0.1, 42),
+                    StratifiedSample.isSampled(id, 0.1, 42));
+            if (StratifiedSample.isSampled(id, 0.1, 42) !=
+                    StratifiedSample.isSampled(id, 0.1, 43)) {
+                differences++;
+            }
+        }
+        //a different seed selects a different sample
+        assertTrue(differences > NUM_IDS / 20, "differences: " + differences);
+    }
+
+    @Test
+    public void testSampleRate() {
+        for (double sampleRate : new double[]{0.01, 0.1, 0.5}) {
+            int sampled = 0;
+            for (int i = 0; i < NUM_IDS; i++) {
+                if (StratifiedSample.isSampled(Integer.toString(i), sampleRate, 7)) {
+                    sampled++;
+                }
+            }
+            //well within 5 standard deviations
+            double stdev = Math.sqrt(NUM_IDS * sampleRate * (1 - sampleRate));
+            assertEquals(NUM_IDS * sampleRate, sampled, 5 * stdev,
+                    "sample rate " + sampleRate);
+        }
+        assertFalse(StratifiedSample.isSampled("a", 0.0, 7));
+        assertTrue(StratifiedSample.isSampled("a", 1.0, 7));
+    }
+
+    @Test
+    public void testTopNFailureKeepsCause() {
+        MemorySearchClient src = new MemorySearchClient(0, 0) {
+            @Override
+            public SearchResultSet search(QueryRequest query) throws SearchClientException {
+                throw new SearchClientException(503, "unavailable");
+            }
+        };
+        ExperimentSet experimentSet = new ExperimentSet();
+        experimentSet.addExperiment(new Experiment("title", "http://localhost:8983/solr/tmdb",
+                new LuceneQuery("title", "")));
+        QueryStrings queryStrings = new QueryStrings();
+        queryStrings.setQuery("psycho");
+        Judgments judgments = new Judgments(new QueryInfo("1", "set1", queryStrings, 1));
+
+        SearchClientException e = assertThrows(SearchClientException.class, () ->
+                StratifiedSample.getTopN(src, experimentSet,
+                        Collections.singletonList(judgments), 10, 2));
+        assertEquals("unavailable", e.getCause().getMessage());
+        assertEquals(503, e.getStatusCode());
+    }
+}
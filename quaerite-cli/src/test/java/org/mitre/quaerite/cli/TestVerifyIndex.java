@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.connectors.StoredDocument;
+
+public class TestVerifyIndex {
+
+    private static final int NUM_BUCKETS = 64;
+
+    @Test
+    public void testEqual() {
+        List<StoredDocument> docs = getDocs();
+        List<StoredDocument> reversed = getDocs();
+        Collections.reverse(reversed);
+        //the order the docs are seen in doesn't matter
+        assertEquals(0, VerifyIndex.getMismatchedBuckets(
+                getBuckets(docs), getBuckets(reversed)).size());
+        VerifyIndex.Differences differences = VerifyIndex.diff(getHashes(docs),
+                getHashes(reversed));
+        assertEquals(0, differences.missing.size());
+        assertEquals(0, differences.extra.size());
+        assertEquals(0, differences.changed.size());
+    }
+
+    @Test
+    public void testMissing() {
+        List<StoredDocument> src = getDocs();
+        List<StoredDocument> dest = getDocs();
+        dest.remove(3);
+        assertEquals(Collections.singleton(VerifyIndex.getBucket("3", NUM_BUCKETS)),
+                VerifyIndex.getMismatchedBuckets(getBuckets(src), getBuckets(dest)));
+        VerifyIndex.Differences differences = VerifyIndex.diff(getHashes(src), getHashes(dest));
+        assertEquals(Collections.singletonList("3"), differences.missing);
+        assertEquals(0, differences.changed.size());
+
+        //and the other way around
+        differences = VerifyIndex.diff(getHashes(dest), getHashes(src));
+        assertEquals(Collections.singletonList("3"), differences.extra);
+    }
+
+    @Test
+    public void testChangedField() {
+        List<StoredDocument> src = getDocs();
+        List<StoredDocument> dest = getDocs();
+        dest.set(5, newDoc("5", "title 5", "drama", "comedy"));
+        assertEquals(Collections.singleton(VerifyIndex.getBucket("5", NUM_BUCKETS)),
+                VerifyIndex.getMismatchedBuckets(getBuckets(src), getBuckets(dest)));
+        VerifyIndex.Differences differences = VerifyIndex.diff(getHashes(src), getHashes(dest));
+        assertEquals(0, differences.missing.size());
+        assertEquals(0, differences.extra.size());
+        assertEquals(Collections.singletonList("5"), differences.changed);
+    }
+
+    @Test
+    public void testCanonicalize() {
+        StoredDocument doc = newDoc("1", "title 1", "drama", "horror");
+        Map<String, String> fields = VerifyIndex.canonicalize(doc, "id");
+        assertEquals(Arrays.asList("genre", "title"), Arrays.asList(fields.keySet().toArray()));
+        assertEquals("drama\u0001horror", fields.get("genre"));
+        //multivalued fields are compared in order
+        assertNotEquals(VerifyIndex.hashDoc("1", fields), VerifyIndex.hashDoc("1",
+                VerifyIndex.canonicalize(newDoc("1", "title 1", "horror", "drama"), "id")));
+        //so are the id and the values
+        assertNotEquals(VerifyIndex.hashDoc("1", fields), VerifyIndex.hashDoc("2", fields));
+    }
+
+    private static List<StoredDocument> getDocs() {
+        List<StoredDocument> docs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            docs.add(newDoc(Integer.toString(i), "title " + i, "drama", "horror"));
+        }
+        return docs;
+    }
+
+    private static StoredDocument newDoc(String id, String title, String... genres) {
+        StoredDocument doc = new StoredDocument();
+        doc.addNonBlankField("id", id);
+        doc.addNonBlankField("title", title);
+        doc.addNonBlankField("genre", Arrays.asList(genres));
+        return doc;
+    }
+
+    private static VerifyIndex.Buckets getBuckets(List<StoredDocument> docs) {
+        VerifyIndex.Buckets buckets = new VerifyIndex.Buckets(NUM_BUCKETS);
+        for (Map.Entry<String, Long> e : getHashes(docs).entrySet()) {
+            buckets.add(VerifyIndex.getBucket(e.getKey(), NUM_BUCKETS), e.getValue());
+        }
+        return buckets;
+    }
+
+    private static Map<String, Long> getHashes(List<StoredDocument> docs) {
+        Map<String, Long> hashes = new HashMap<>();
+        for (StoredDocument doc : docs) {
+            String id = (String) doc.getFields().get("id");
+            hashes.put(id, VerifyIndex.hashDoc(id, VerifyIndex.canonicalize(doc, "id")));
+        }
+        return hashes;
+    }
+}
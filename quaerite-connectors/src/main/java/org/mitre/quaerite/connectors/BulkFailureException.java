@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when some of the documents in a bulk request could not be
+ * indexed.  The other documents in the request were indexed, so only
+ * the failed documents should be handled by the caller.
+ */
+public class BulkFailureException extends SearchClientException {
+
+    private final int numDocuments;
+    private final List<Failure> failures;
+
+    /**
+     * @param numDocuments number of documents in the bulk request
+     * @param failures     documents that couldn't be indexed
+     */
+    public BulkFailureException(int numDocuments, List<Failure> failures) {
+        super(failures.size() + " of " + numDocuments + " documents failed; first: " +
+                (failures.size() > 0 ? failures.get(0) : "none"));
+        this.numDocuments = numDocuments;
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+    public int getNumDocuments() {
+        return numDocuments;
+    }
+
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    /**
+     * A document that couldn't be indexed and the reason
+     */
+    public static class Failure {
+        //position of the document in the list that was sent; not serialized
+        private final transient int index;
+        private final String id;
+        private final int status;
+        private final String type;
+        private final String reason;
+
+        public Failure(String id, int status, String type, String reason) {
+            this(-1, id, status, type, reason);
+        }
+
+        /**
+         * @param index position of the document in the list of documents that was sent
+         */
+        public Failure(int index, String id, int status, String type, String reason) {
+            this.index = index;
+            this.id = id;
+            this.status = status;
+            this.type = type;
+            this.reason = reason;
+        }
+
+        /**
+         * @return position of the failed document in the list of documents
+         * that was sent, or -1 if it isn't known
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return the http status for this document
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the error type, e.g. <code>mapper_parsing_exception</code>
+         */
+        public String getType() {
+            return type;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure{" +
+                    "id='" + id + '\'' +
+                    ", status=" + status +
+                    ", type='" + type + '\'' +
+                    ", reason='" + reason + '\'' +
+                    '}';
+        }
+    }
+}
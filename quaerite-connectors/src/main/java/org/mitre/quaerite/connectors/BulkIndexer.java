@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Sends documents to a search client in batches on a pool of worker threads,
+ * so that the producer (e.g. a {@link com.google.gson.stream.JsonReader}
+ * parsing a large corpus) never waits for an index request unless the
+ * bounded queue of batches is full.
+ * <p>
+ * Batches are numbered in the order they are created, and failures are
+ * reported in that order by {@link #getFailures()} and {@link #close()}
+ * no matter which worker hit them first.  A failed batch doesn't stop
+ * the other workers.
+ * <p>
+ * {@link #add(StoredDocument)} should be called from a single thread.
+ */
+public class BulkIndexer implements AutoCloseable {
+
+    static Logger LOG = Logger.getLogger(BulkIndexer.class);
+
+    private static final Batch POISON = new Batch(-1, -1, Collections.EMPTY_LIST);
+
+    private final SearchClient searchClient;
+    private final int batchSize;
+    private final ArrayBlockingQueue<Batch> queue;
+    private final ExecutorService executorService;
+    private final List<Future<?>> workers = new ArrayList<>();
+    private final Map<Long, Failure> failures = new TreeMap<>();
+    private final AtomicLong indexed = new AtomicLong();
+
+    private List<StoredDocument> current;
+    private long nextSeq = 0;
+    private long added = 0;
+    private boolean closed = false;
+
+    /**
+     * @param searchClient client to send the documents to
+     * @param numWorkers   number of concurrent index requests
+     * @param batchSize    number of documents per request
+     * @param queueSize    max number of batches waiting for a worker
+     */
+    public BulkIndexer(SearchClient searchClient, int numWorkers, int batchSize, int queueSize) {
+        if (numWorkers < 1 || batchSize < 1 || queueSize < 1) {
+            throw new IllegalArgumentException("numWorkers, batchSize and queueSize must be > 0");
+        }
+        this.searchClient = searchClient;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.current = new ArrayList<>(batchSize);
+        this.executorService = Executors.newFixedThreadPool(numWorkers, r -> {
+            Thread t = new Thread(r, "bulk-indexer");
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < numWorkers; i++) {
+            workers.add(executorService.submit(this::work));
+        }
+    }
+
+    /**
+     * Adds a document to the current batch; blocks if the batch is full
+     * and the queue is full.
+     */
+    public void add(StoredDocument document) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("already closed");
+        }
+        current.add(document);
+        added++;
+        if (current.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Queues the current batch even if it isn't full.
+     */
+    public void flush() throws InterruptedException {
+        if (current.size() == 0) {
+            return;
+        }
+        queue.put(new Batch(nextSeq++, added - current.size(), current));
+        current = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * @return number of documents that have been indexed so far
+     */
+    public long getIndexed() {
+        return indexed.get();
+    }
+
+    /**
+     * @return failures so far in the order that the batches were created
+     */
+    public List<Failure> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<>(failures.values());
+        }
+    }
+
+    /**
+     * Sends the last batch and waits for the workers to finish.
+     *
+     * @throws SearchClientException if any batch failed; the cause is the
+     *                               failure of the first batch that failed
+     */
+    @Override
+    public void close() throws SearchClientException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            for (int i = 0; i < workers.size(); i++) {
+                queue.put(POISON);
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchClientException(e);
+        } catch (ExecutionException e) {
+            throw new SearchClientException(e);
+        } finally {
+            executorService.shutdownNow();
+        }
+        List<Failure> failed = getFailures();
+        if (failed.size() > 0) {
+            Failure first = failed.get(0);
+            SearchClientException e = new SearchClientException(failed.size() +
+                    " batch(es) failed; the first was batch " + first.getSeq() +
+                    " (documents " + first.getFirstDocument() + " to " +
+                    (first.getFirstDocument() + first.getSize() - 1) + ")");
+            e.initCause(first.getCause());
+            throw e;
+        }
+    }
+
+    private Void work() throws InterruptedException {
+        while (true) {
+            Batch batch = queue.take();
+            if (batch == POISON) {
+                return null;
+            }
+            try {
+                searchClient.addDocuments(batch.documents);
+                indexed.addAndGet(batch.documents.size());
+            } catch (IOException | SearchClientException | RuntimeException e) {
+                LOG.warn("failed to index batch " + batch.seq, e);
+                synchronized (failures) {
+                    failures.put(batch.seq, new Failure(batch.seq, batch.firstDocument,
+                            batch.documents.size(), e));
+                }
+            }
+        }
+    }
+
+    /**
+     * A batch that couldn't be indexed.  The documents are identified by
+     * the order in which they were added, starting at 0.
+     */
+    public static class Failure {
+        private final long seq;
+        private final long firstDocument;
+        private final int size;
+        private final Exception cause;
+
+        private Failure(long seq, long firstDocument, int size, Exception cause) {
+            this.seq = seq;
+            this.firstDocument = firstDocument;
+            this.size = size;
+            this.cause = cause;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public long getFirstDocument() {
+            return firstDocument;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public Exception getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure{" +
+                    "seq=" + seq +
+                    ", firstDocument=" + firstDocument +
+                    ", size=" + size +
+                    ", cause=" + cause +
+                    '}';
+        }
+    }
+
+    private static class Batch {
+        private final long seq;
+        private final long firstDocument;
+        private final List<StoredDocument> documents;
+
+        Batch(long seq, long firstDocument, List<StoredDocument> documents) {
+            this.seq = seq;
+            this.firstDocument = firstDocument;
+            this.documents = documents;
+        }
+    }
+}
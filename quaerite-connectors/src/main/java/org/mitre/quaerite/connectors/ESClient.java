@@ -16,7 +16,11 @@
  */
 package org.mitre.quaerite.connectors;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -27,16 +31,23 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Function;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
 import org.apache.log4j.Logger;
+import org.mitre.quaerite.core.DocIdDictionary;
 import org.mitre.quaerite.core.FacetResult;
+import org.mitre.quaerite.core.Judgments;
+import org.mitre.quaerite.core.RequestTimings;
 import org.mitre.quaerite.core.SearchResultSet;
 import org.mitre.quaerite.core.features.QueryOperator;
 import org.mitre.quaerite.core.features.WeightableField;
@@ -53,10 +64,17 @@ import org.mitre.quaerite.core.queries.TermsQuery;
 import org.mitre.quaerite.core.stats.TokenDF;
 import org.mitre.quaerite.core.util.JsonUtil;
 
-public class ESClient extends SearchClient {
+public class ESClient extends SearchClient implements RawDocumentClient {
     private static final String _ID = "_id";
     private static final String _DOC = "_doc";
+    private static final String _SHARD_DOC = "_shard_doc";
+    //checkpoint keys from a point in time start with this
+    private static final String SHARD_DOC_KEY_PREFIX = _SHARD_DOC + ":";
+    private static final String PIT_KEEP_ALIVE = "5m";
     private static final Gson GSON = new Gson();
+    //bulk items rejected because the write queue was full are retried this many times
+    static final int MAX_BULK_RETRIES = 5;
+    private static final long BASE_BULK_BACKOFF_MILLIS = 100;
 
     private static Set<String> SYS_INTERNAL_FIELDS;
 
@@ -72,6 +90,8 @@ public class ESClient extends SearchClient {
     private final String url;//must include esbase and es collection; must end in /
     private final String esBase;//must end in /
     private final String esCollection;//has no /
+    //keyword copy of the _id that resumable id grabbers sort on; may be null
+    private volatile String idSortField;
 
 
     public ESClient(String url) {
@@ -100,13 +120,14 @@ public class ESClient extends SearchClient {
         //System.out.println(jsonQuery);
         JsonResponse json = postJson(url + "_search", jsonQuery);
         if (json.getStatus() != 200) {
-            throw new SearchClientException(json.getMsg());
+            throw new SearchClientException(json.getStatus(), json.getMsg());
         }
         JsonElement root = json.getJson();
-        return scrapeIds(root, start);
+        return scrapeIds(root, start, json.getTimings(), query.getDocIdDictionary());
     }
 
-    private SearchResultSet scrapeIds(JsonElement root, long start)
+    private SearchResultSet scrapeIds(JsonElement root, long start, RequestTimings timings,
+                                      DocIdDictionary dictionary)
             throws IOException, SearchClientException {
         long queryTime = JsonUtil.getPrimitive(root, "took", -1l);
         JsonObject hits = (JsonObject) ((JsonObject) root).get("hits");
@@ -121,7 +142,7 @@ public class ESClient extends SearchClient {
             }
         }
         long elapsed = System.currentTimeMillis() - start;
-        return new SearchResultSet(totalHits, queryTime, elapsed, ids);
+        return new SearchResultSet(totalHits, queryTime, elapsed, ids, timings, dictionary);
 
     }
 
@@ -271,6 +292,102 @@ public class ESClient extends SearchClient {
         return wrapAMap("multi_match", queryMap);
     }
 
+    /**
+     * Runs a batch of queries through a single <code>_rank_eval</code> request
+     * so that elasticsearch executes the searches and joins the hits
+     * with the ratings on the server side.
+     * <p>
+     * Elasticsearch's metrics don't use quite the same definitions as our scorers
+     * (e.g. exponential vs linear gain in dcg), so this returns the ranked hits
+     * for each request rather than elasticsearch's metric values.  The caller
+     * can then score these with the usual scorers.
+     * <p>
+     * Elasticsearch does not return total hits or timing information per request
+     * via <code>_rank_eval</code>, so those are set to -1 in the result sets.
+     *
+     * @param requests  requests to run; only the query and filter queries are used
+     * @param judgments judgments for each request, in the same order as the requests
+     * @param k         number of hits to return for each request
+     * @return result sets in the same order as the requests.  If elasticsearch
+     * reported a failure for a request, its result set is <code>null</code>
+     */
+    public List<SearchResultSet> rankEval(List<QueryRequest> requests,
+                                          List<Judgments> judgments, int k)
+            throws IOException, SearchClientException {
+        String json = buildRankEvalRequest(requests, judgments, k);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace(json);
+        }
+        JsonResponse response = postJson(url + "_rank_eval", json);
+        if (response.getStatus() != 200) {
+            throw new SearchClientException(response.getMsg());
+        }
+        return getRankEvalResults(response.getJson(), judgments);
+    }
+
+    /**
+     * The requests are identified by their position so that the
+     * response can be matched up with the judgments.
+     */
+    String buildRankEvalRequest(List<QueryRequest> requests,
+                                List<Judgments> judgments, int k) {
+        if (requests.size() != judgments.size()) {
+            throw new IllegalArgumentException("must have the same number of requests ("
+                    + requests.size() + ") and judgments (" + judgments.size() + ")");
+        }
+        List<Map<String, Object>> ratedRequests = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            Map<String, Object> queryMap = getQueryMap(requests.get(i), Collections.EMPTY_LIST);
+            List<Map<String, Object>> ratings = new ArrayList<>();
+            for (Map.Entry<String, Double> e : judgments.get(i).getSortedJudgments().entrySet()) {
+                //elasticsearch requires integer ratings
+                ratings.add(wrapAMap("_index", esCollection,
+                        _ID, e.getKey(),
+                        "rating", Math.round(e.getValue())));
+            }
+            ratedRequests.add(wrapAMap("id", Integer.toString(i),
+                    "request", wrapAMap("query", queryMap.get("query")),
+                    "ratings", ratings));
+        }
+        Map<String, Object> rankEval = wrapAMap("requests", ratedRequests,
+                "metric", wrapAMap("precision", wrapAMap("k", k)));
+        return GSON.toJson(rankEval);
+    }
+
+    /**
+     * @param root      the <code>_rank_eval</code> response
+     * @param judgments judgments for each request, in the same order as the requests
+     * @return the ranked hits for each request; <code>null</code> for failed requests
+     */
+    static List<SearchResultSet> getRankEvalResults(JsonElement root, List<Judgments> judgments) {
+        JsonObject details = ((JsonObject) root).getAsJsonObject("details");
+        JsonObject failures = ((JsonObject) root).getAsJsonObject("failures");
+        List<SearchResultSet> results = new ArrayList<>();
+        for (int i = 0; i < judgments.size(); i++) {
+            String requestId = Integer.toString(i);
+            if (failures != null && failures.has(requestId)) {
+                LOG.warn("rank_eval failed for query '" +
+                        judgments.get(i).getQueryInfo().getQueryId() +
+                        "': " + failures.get(requestId));
+                results.add(null);
+                continue;
+            }
+            List<String> ids = new ArrayList<>();
+            if (details != null && details.has(requestId)) {
+                JsonArray hits = details.getAsJsonObject(requestId).getAsJsonArray("hits");
+                for (JsonElement el : hits) {
+                    String id = JsonUtil.getPrimitive(((JsonObject) el).get("hit"), _ID, "");
+                    if (!StringUtils.isBlank(id)) {
+                        ids.add(id);
+                    }
+                }
+            }
+            results.add(new SearchResultSet(-1, -1, -1, ids, null,
+                    judgments.get(i).getDocIdDictionary()));
+        }
+        return results;
+    }
+
     @Override
     public FacetResult facet(QueryRequest query) throws SearchClientException, IOException {
         String jsonRequest = buildFacetRequest(query);
@@ -314,30 +431,172 @@ public class ESClient extends SearchClient {
         return GSON.toJson(aggsMap);
     }
 
+    /**
+     * Items that are rejected with a 429 are retried with backoff.
+     *
+     * @throws BulkFailureException if some of the documents couldn't be indexed
+     */
     @Override
     public void addDocuments(List<StoredDocument> documents) throws IOException, SearchClientException {
-        StringBuilder sb = new StringBuilder();
-        for (StoredDocument sd : documents) {
-            Map<String, Object> fields = sd.getFields();
-            Map<String, Object> tmp = new HashMap<>(fields);
-            String id = (String) tmp.remove(_ID);
-            String indexJson = getBulkIndexJson(id);
-            sb.append(indexJson).append("\n");
-            sb.append(GSON.toJson(tmp)).append("\n");
-        }
-        JsonResponse response = postJson(url + "/_bulk", sb.toString());
-        if (response.getStatus() != 200) {
-            throw new SearchClientException(response.getMsg());
+        bulk(documents, BulkEntity::new);
+    }
+
+    @Override
+    public void addRawDocuments(List<RawDocument> documents)
+            throws IOException, SearchClientException {
+        bulk(documents, RawBulkEntity::new);
+    }
+
+    /**
+     * Sends the documents in a _bulk request and then resends only the items
+     * that were rejected with a 429 (es_rejected_execution_exception), up to
+     * {@link #MAX_BULK_RETRIES} times with exponential backoff.  The rejection
+     * listener is told how many items were rejected after each response.
+     *
+     * @throws BulkFailureException if any items failed for another reason or
+     *                              were still rejected after the last retry
+     */
+    private <T> void bulk(List<T> documents, Function<List<T>, HttpEntity> entityFactory)
+            throws IOException, SearchClientException {
+        List<T> pending = documents;
+        //positions of the pending items in documents
+        List<Integer> pendingIndexes = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            pendingIndexes.add(i);
+        }
+        List<BulkFailureException.Failure> failures = new ArrayList<>();
+        for (int attempt = 0; pending.size() > 0; attempt++) {
+            JsonResponse response = postJson(url + "/_bulk", entityFactory.apply(pending));
+            if (response.getStatus() != 200) {
+                throw new SearchClientException(response.getStatus(), response.getMsg());
+            }
+            Map<Integer, BulkFailureException.Failure> itemFailures =
+                    getBulkFailures(response.getJson(), pending.size());
+            List<T> rejected = new ArrayList<>();
+            List<Integer> rejectedIndexes = new ArrayList<>();
+            int numRejected = 0;
+            for (Map.Entry<Integer, BulkFailureException.Failure> e : itemFailures.entrySet()) {
+                int index = pendingIndexes.get(e.getKey());
+                BulkFailureException.Failure failure = e.getValue();
+                if (failure.getStatus() == 429) {
+                    numRejected++;
+                }
+                if (failure.getStatus() == 429 && attempt < MAX_BULK_RETRIES) {
+                    rejected.add(pending.get(e.getKey()));
+                    rejectedIndexes.add(index);
+                } else {
+                    failures.add(new BulkFailureException.Failure(index, failure.getId(),
+                            failure.getStatus(), failure.getType(), failure.getReason()));
+                }
+            }
+            rejected(numRejected);
+            if (rejected.size() > 0) {
+                LOG.debug("retrying " + rejected.size() + " rejected items");
+                try {
+                    Thread.sleep(BASE_BULK_BACKOFF_MILLIS << attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SearchClientException(e);
+                }
+            }
+            pending = rejected;
+            pendingIndexes = rejectedIndexes;
+        }
+        if (failures.size() > 0) {
+            throw new BulkFailureException(documents.size(), failures);
+        }
+    }
+
+    /**
+     * @param root     json response to a _bulk request
+     * @param numItems number of items in the request
+     * @return the failed items by their position in the request
+     */
+    static Map<Integer, BulkFailureException.Failure> getBulkFailures(JsonElement root,
+                                                                      int numItems)
+            throws SearchClientException {
+        Map<Integer, BulkFailureException.Failure> failures = new TreeMap<>();
+        if (!root.getAsJsonObject().has("errors")
+                || !root.getAsJsonObject().get("errors").getAsBoolean()) {
+            return failures;
+        }
+        JsonArray items = root.getAsJsonObject().getAsJsonArray("items");
+        if (items == null || items.size() != numItems) {
+            throw new SearchClientException("expected " + numItems +
+                    " items in the bulk response, but found " +
+                    (items == null ? 0 : items.size()));
+        }
+        for (int i = 0; i < items.size(); i++) {
+            //{"index":{"_id":"1","status":429,"error":{"type":"...","reason":"..."}}}
+            JsonObject item = items.get(i).getAsJsonObject();
+            JsonElement result = item.get(JsonUtil.getSingleChildName(item));
+            int status = (int) JsonUtil.getPrimitive(result, "status", -1l);
+            if (status >= 200 && status < 300) {
+                continue;
+            }
+            JsonElement error = result.getAsJsonObject().get("error");
+            String type = JsonUtil.getPrimitive(error, "type", "");
+            String reason = (error != null && error.isJsonPrimitive()) ?
+                    error.getAsString() : JsonUtil.getPrimitive(error, "reason", "");
+            failures.put(i, new BulkFailureException.Failure(i,
+                    JsonUtil.getPrimitive(result, _ID, ""), status, type, reason));
+        }
+        return failures;
+    }
+
+    /**
+     * The raw json is the _source.  The id field is ignored; ids are
+     * always the _id.
+     */
+    @Override
+    public List<RawDocument> getRawDocs(String idField, Set<String> ids,
+                                        Set<String> excludeFields)
+            throws IOException, SearchClientException {
+        byte[] bytes = postJsonForBytes(url + "/_doc/_mget", GSON.toJson(wrapAMap("ids", ids)));
+        List<RawDocument> documents = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(bytes), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"docs".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    RawDocument document = readMgetDoc(reader, excludeFields);
+                    if (document != null) {
+                        documents.add(document);
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
         }
+        return documents;
     }
 
-    private String getBulkIndexJson(String id) {
-        JsonObject innerObject = new JsonObject();
-        innerObject.add("_type", new JsonPrimitive(_DOC));
-        innerObject.add(_ID, new JsonPrimitive(id));
-        JsonObject outerObject = new JsonObject();
-        outerObject.add("index", innerObject);
-        return outerObject.toString();
+    //_id comes before _source in _mget responses, but don't count on it
+    private RawDocument readMgetDoc(JsonReader reader, Set<String> excludeFields)
+            throws IOException {
+        String id = null;
+        RawDocument source = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (_ID.equals(name)) {
+                id = reader.nextString();
+            } else if ("_source".equals(name)) {
+                source = RawDocument.read(reader, null, null, excludeFields);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (source == null || id == null) {
+            return null;
+        }
+        return new RawDocument(id, source.getJson());
     }
 
     @Override
@@ -441,7 +700,7 @@ public class ESClient extends SearchClient {
     }
 
     @Override
-    public IdGrabber getIdGrabber(ArrayBlockingQueue<Set<String>> ids,
+    public IdGrabber getIdGrabber(ArrayBlockingQueue<IdBatch> ids,
                                   int batchSize,
                                   int copierThreads,
                                   Collection<Query> filterQueries)
@@ -482,7 +741,7 @@ public class ESClient extends SearchClient {
 
     //list: String, Object, String, Object,
     //where the String is the key and the object is the value
-    private Map<String, Object> wrapAMap(Object... args) {
+    private static Map<String, Object> wrapAMap(Object... args) {
         Map<String, Object> ret = new HashMap<>();
         for (int i = 0; i < args.length - 1; i += 2) {
             String key = (String) args[i];
@@ -492,48 +751,283 @@ public class ESClient extends SearchClient {
         return ret;
     }
 
+    /**
+     * Resumable id grabbers page through the ids in a stable order.  By default,
+     * they use a point in time sorted by _shard_doc (elasticsearch 7.12+), but
+     * those keys are only valid in that point in time, which is closed when
+     * the copy stops, so a copy from a point in time can't be resumed.  To
+     * resume copies, or for older versions of elasticsearch, set a keyword field
+     * with doc values that holds a copy of each document's _id.  Sorting on _id itself needs fielddata,
+     * which is deprecated in 7.6 and not allowed in 8.
+     *
+     * @param idSortField keyword copy of the _id; <code>null</code> to use a point in time
+     */
+    public void setIdSortField(String idSortField) {
+        this.idSortField = idSortField;
+    }
+
+    /**
+     * Partitions the ids with sliced scrolls.  Slices can't be combined
+     * with search_after, so resumable grabbers aren't partitioned.
+     */
+    @Override
+    public List<IdGrabber> getIdGrabbers(ArrayBlockingQueue<IdBatch> ids, int batchSize,
+                                         int copierThreads, Collection<Query> filterQueries,
+                                         int numPartitions, boolean resumable)
+            throws IOException, SearchClientException {
+        if (numPartitions < 2 || resumable) {
+            if (numPartitions > 1) {
+                LOG.warn("can't partition resumable id grabbers; using a single id grabber");
+            }
+            return super.getIdGrabbers(ids, batchSize, copierThreads, filterQueries,
+                    1, resumable);
+        }
+        List<IdGrabber> grabbers = new ArrayList<>();
+        for (int i = 0; i < numPartitions; i++) {
+            grabbers.add(new ESIdGrabber(getDefaultIdField(), ids, batchSize,
+                    copierThreads, filterQueries));
+        }
+        return partition(grabbers, false);
+    }
+
+    /**
+     * @return the first request of a scroll over the ids, with a slice
+     * for the partition if there's more than one
+     */
+    static Map<String, Object> buildScrollQuery(int batchSize, int partition,
+                                                int numPartitions) {
+        Map<String, Object> q = wrapAMap("query",
+                wrapAMap("match_all", Collections.EMPTY_MAP));
+        q.put("size", Integer.toString(batchSize));
+        q.put("stored_fields", Collections.EMPTY_LIST);
+        if (numPartitions > 1) {
+            Map<String, Object> slice = new HashMap<>();
+            slice.put("id", partition);
+            slice.put("max", numPartitions);
+            q.put("slice", slice);
+        }
+        return q;
+    }
+
+    /**
+     * Uses a scroll to enumerate the ids; each partition gets a slice
+     * of the scroll.  If the grabber is resumable,
+     * this pages through the ids with search_after instead, sorted by
+     * the id sort field if there is one or by _shard_doc in a point in time;
+     * the last key is the sort value of the last hit.
+     */
     private class ESIdGrabber extends IdGrabber {
 
-        public ESIdGrabber(String idField, ArrayBlockingQueue<Set<String>> ids,
+        public ESIdGrabber(String idField, ArrayBlockingQueue<IdBatch> ids,
                            int batchSize,
                            int copierThreads, Collection<Query> filterQueries) {
             super(idField, ids, batchSize, copierThreads, filterQueries);
         }
 
+        /**
+         * @throws IllegalArgumentException if the key is from a point in time,
+         *                                  which expired when the copy stopped, or if
+         *                                  the key doesn't match the id sort field setting
+         */
+        @Override
+        public void setResumeAfter(String resumeAfter) {
+            if (resumeAfter != null) {
+                if (resumeAfter.startsWith(SHARD_DOC_KEY_PREFIX)) {
+                    throw new IllegalArgumentException("The checkpoint is from a point in time, " +
+                            "which can't be resumed after it expires; restart the copy without " +
+                            "-resume, and set an id sort field so that it can be resumed");
+                } else if (idSortField == null) {
+                    throw new IllegalArgumentException("The checkpoint was sorted by an " +
+                            "id sort field; resume with the same id sort field");
+                }
+            }
+            super.setResumeAfter(resumeAfter);
+        }
+
         @Override
         public Integer call() throws Exception {
             try {
+                if (resumable) {
+                    searchAfter();
+                } else {
+                    scroll();
+                }
+            } finally {
+                LOG.debug("id grabber adding poison");
+                addPoison();
+            }
+            return -1;
+
+        }
+
+        private void scroll() throws Exception {
+            Map<String, Object> q = buildScrollQuery(batchSize, partition, numPartitions);
+            JsonResponse response = null;
+            response = postJson(url + "_search?scroll=5m", GSON.toJson(q));
+            JsonObject root = (JsonObject) response.getJson();
+            String scrollId = JsonUtil.getPrimitive(root, "_scroll_id", "");
+            SearchResultSet searchResultSet = scrapeIds(root, System.currentTimeMillis(), null, null);
+
+            Map<String, String> nextScroll = new HashMap<>();
+            nextScroll.put("scroll", "5m");
+            nextScroll.put("scroll_id", scrollId);
+
+            while (searchResultSet.size() > 0) {
+                Set<String> set = new HashSet<>();
+                set.addAll(searchResultSet.getIds());
+                LOG.debug("adding " + set.size());
+                addBatch(set, null);
+                String u = esBase + "_search/scroll";
+                response = postJson(u, GSON.toJson(nextScroll));
+                root = (JsonObject) response.getJson();
+                searchResultSet = scrapeIds(root, System.currentTimeMillis(), null, null);
+            }
+        }
+
+        private void searchAfter() throws Exception {
+            String sortField = idSortField;
+            String lastKey = resumeAfter;
+            if (lastKey != null) {
+                LOG.info("resuming after: " + lastKey);
+            }
+            String pitId = (sortField == null) ? openPointInTime() : null;
+            try {
+                pitId = searchAfter(sortField, pitId, lastKey);
+            } finally {
+                if (pitId != null) {
+                    closePointInTime(pitId);
+                }
+            }
+        }
+
+        /**
+         * @return the latest id of the point in time, if there is one
+         */
+        private String searchAfter(String sortField, String pitId, String lastKey)
+                throws Exception {
+            while (true) {
                 Map<String, Object> q = wrapAMap("query",
                         wrapAMap("match_all", Collections.EMPTY_MAP));
                 q.put("size", Integer.toString(batchSize));
                 q.put("stored_fields", Collections.EMPTY_LIST);
-                JsonResponse response = null;
-                response = postJson(url + "_search?scroll=5m", GSON.toJson(q));
+                String searchUrl;
+                if (pitId == null) {
+                    q.put("sort", Collections.singletonList(wrapAMap(sortField, "asc")));
+                    if (lastKey != null) {
+                        q.put("search_after", Collections.singletonList(lastKey));
+                    }
+                    searchUrl = url + "_search";
+                } else {
+                    q.put("pit", wrapAMap("id", pitId, "keep_alive", PIT_KEEP_ALIVE));
+                    q.put("sort", Collections.singletonList(wrapAMap(_SHARD_DOC, "asc")));
+                    if (lastKey != null) {
+                        q.put("search_after", Collections.singletonList(
+                                Long.parseLong(lastKey.substring(SHARD_DOC_KEY_PREFIX.length()))));
+                    }
+                    //the point in time determines the index
+                    searchUrl = esBase + "_search";
+                }
+                JsonResponse response = postJson(searchUrl, GSON.toJson(q));
+                if (response.getStatus() != 200) {
+                    throw new SearchClientException(response.getStatus(), response.getMsg());
+                }
                 JsonObject root = (JsonObject) response.getJson();
-                String scrollId = JsonUtil.getPrimitive(root, "_scroll_id", "");
-                SearchResultSet searchResultSet = scrapeIds(root, System.currentTimeMillis());
-
-                Map<String, String> nextScroll = new HashMap<>();
-                nextScroll.put("scroll", "5m");
-                nextScroll.put("scroll_id", scrollId);
-
-                while (searchResultSet.size() > 0) {
-                    Set<String> set = new HashSet<>();
-                    set.addAll(searchResultSet.getIds());
-                    LOG.debug("adding " + set.size());
-                    addSet(ids, set);
-                    String u = esBase + "_search/scroll";
-                    response = postJson(u, GSON.toJson(nextScroll));
-                    root = (JsonObject) response.getJson();
-                    searchResultSet = scrapeIds(root, System.currentTimeMillis());
+                if (pitId != null) {
+                    //the id can change from one request to the next
+                    pitId = JsonUtil.getPrimitive(root, "pit_id", pitId);
                 }
-            } finally {
-                LOG.debug("id grabber adding poison");
-                addPoison();
+                JsonArray hits = root.getAsJsonObject("hits").getAsJsonArray("hits");
+                if (hits.size() == 0) {
+                    return pitId;
+                }
+                Set<String> set = new HashSet<>();
+                for (JsonElement hit : hits) {
+                    set.add(JsonUtil.getPrimitive(hit, _ID, ""));
+                }
+                String sortValue = hits.get(hits.size() - 1).getAsJsonObject()
+                        .getAsJsonArray("sort").get(0).getAsString();
+                lastKey = (pitId == null) ? sortValue : SHARD_DOC_KEY_PREFIX + sortValue;
+                addBatch(set, lastKey);
             }
-            return -1;
+        }
+
+        private String openPointInTime() throws IOException, SearchClientException {
+            JsonResponse response = postJson(url + "_pit?keep_alive=" + PIT_KEEP_ALIVE, "");
+            if (response.getStatus() != 200) {
+                throw new SearchClientException(response.getStatus(),
+                        "Couldn't open a point in time (elasticsearch 7.12+); " +
+                                "set an id sort field to resume copies from older versions: "
+                                + response.getMsg());
+            }
+            return JsonUtil.getPrimitive(response.getJson(), "id", "");
+        }
+
+        //don't leave the point in time's segments pinned until the keep alive expires
+        private void closePointInTime(String pitId) {
+            try {
+                JsonResponse response = deleteJson(esBase + "_pit", GSON.toJson(wrapAMap("id", pitId)));
+                if (response.getStatus() != 200) {
+                    LOG.warn("couldn't close the point in time: " + response.getMsg());
+                }
+            } catch (IOException e) {
+                LOG.warn("couldn't close the point in time", e);
+            }
+        }
+    }
+
+    /**
+     * Streams raw documents as the newline delimited json for a _bulk request
+     */
+    private static class RawBulkEntity extends JsonStreamingEntity {
+        private final List<RawDocument> documents;
+
+        RawBulkEntity(List<RawDocument> documents) {
+            this.documents = documents;
+        }
+
+        @Override
+        void write(Writer writer, JsonWriter jsonWriter) throws IOException {
+            for (RawDocument document : documents) {
+                jsonWriter.beginObject();
+                jsonWriter.name("index");
+                jsonWriter.beginObject();
+                jsonWriter.name("_type").value(_DOC);
+                jsonWriter.name(_ID).value(document.getId());
+                jsonWriter.endObject();
+                jsonWriter.endObject();
+                writer.write('\n');
+                writer.write(document.getJson());
+                writer.write('\n');
+            }
+        }
+    }
 
+    /**
+     * Streams the newline delimited json for a _bulk request
+     * without building the body in memory.
+     */
+    private static class BulkEntity extends JsonStreamingEntity {
+        private final List<StoredDocument> documents;
+
+        BulkEntity(List<StoredDocument> documents) {
+            this.documents = documents;
         }
 
+        @Override
+        void write(Writer writer, JsonWriter jsonWriter) throws IOException {
+            for (StoredDocument sd : documents) {
+                jsonWriter.beginObject();
+                jsonWriter.name("index");
+                jsonWriter.beginObject();
+                jsonWriter.name("_type").value(_DOC);
+                jsonWriter.name(_ID);
+                writeValue(jsonWriter, sd.getFields().get(_ID));
+                jsonWriter.endObject();
+                jsonWriter.endObject();
+                writer.write('\n');
+                sd.write(jsonWriter, _ID);
+                writer.write('\n');
+            }
+        }
     }
 }
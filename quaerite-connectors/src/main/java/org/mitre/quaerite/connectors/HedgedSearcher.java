@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.mitre.quaerite.core.SearchResultSet;
+
+/**
+ * Wraps {@link SearchClient#search(QueryRequest)} with two optional
+ * tail-latency tools.  This is meant to be shared by all of the threads
+ * running queries for an experiment.
+ * <p>
+ * Retries: transient failures (an IOException, 5xx or 429) are retried up to
+ * <code>maxRetries</code> times per request with exponential backoff.
+ * Retries are also limited by a shared budget so that a struggling
+ * server isn't hammered with retries: each successful request adds
+ * <code>retryBudgetRatio</code> tokens to the budget (up to a cap), and
+ * each retry spends one token.
+ * <p>
+ * Hedging: if a request has not returned by the observed 95th percentile
+ * latency, a single duplicate request is sent, whichever
+ * response arrives first is used, and the other request is cancelled.
+ * <p>
+ * The elapsed time of a hedged result is the latency the caller saw,
+ * including the wait before the duplicate was sent.  The server's query
+ * time and the phase timings are those of the attempt whose response was used.
+ * Retry backoff within an attempt is not added to that attempt's timings.
+ */
+public class HedgedSearcher implements Closeable {
+
+    static Logger LOG = Logger.getLogger(HedgedSearcher.class);
+
+    //the budget starts with this many tokens, and it can't grow beyond MAX_RETRY_TOKENS
+    private static final double MIN_RETRY_TOKENS = 10;
+    private static final double MAX_RETRY_TOKENS = 100;
+    private static final long BASE_BACKOFF_MILLIS = 50;
+
+    private final boolean hedge;
+    private final int maxRetries;
+    private final double retryBudgetRatio;
+    private final ExecutorService executorService;
+    private final LatencyTracker latencyTracker = new LatencyTracker();
+
+    private final Object retryLock = new Object();
+    private double retryTokens = MIN_RETRY_TOKENS;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong retriesDenied = new AtomicLong();
+
+    /**
+     * @param hedge            whether or not to send duplicate requests for slow requests
+     * @param maxRetries       maximum number of retries per request; 0 turns off retries
+     * @param retryBudgetRatio number of retry tokens earned per successful request
+     */
+    public HedgedSearcher(boolean hedge, int maxRetries, double retryBudgetRatio) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must be >= 0");
+        }
+        if (retryBudgetRatio < 0) {
+            throw new IllegalArgumentException("retryBudgetRatio must be >= 0");
+        }
+        this.hedge = hedge;
+        this.maxRetries = maxRetries;
+        this.retryBudgetRatio = retryBudgetRatio;
+        this.executorService = (hedge) ? Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "hedged-searcher");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    /**
+     * @param searchClient client to use for the search; this should be thread safe
+     *                     if hedging is turned on
+     * @param queryRequest request
+     * @return the result set from the first successful attempt
+     * @throws SearchClientException if retries are exhausted or the failure isn't transient
+     * @throws IOException           if retries are exhausted
+     */
+    public SearchResultSet search(SearchClient searchClient, QueryRequest queryRequest)
+            throws SearchClientException, IOException {
+        requests.incrementAndGet();
+        Callable<SearchResultSet> attempt = () -> searchWithRetries(searchClient, queryRequest);
+        if (!hedge) {
+            return call(attempt);
+        }
+        long hedgeDelay = latencyTracker.getP95();
+        long start = System.currentTimeMillis();
+        ExecutorCompletionService<SearchResultSet> completionService =
+                new ExecutorCompletionService<>(executorService);
+        Future<SearchResultSet> primary = completionService.submit(attempt);
+        Future<SearchResultSet> duplicate = null;
+        try {
+            if (hedgeDelay < 0) {
+                //not enough samples yet to know what slow is
+                return get(primary);
+            }
+            Future<SearchResultSet> done = completionService.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (done != null) {
+                return get(done);
+            }
+            hedged.incrementAndGet();
+            duplicate = completionService.submit(attempt);
+            done = completionService.take();
+            SearchResultSet searchResultSet;
+            try {
+                searchResultSet = get(done);
+            } catch (SearchClientException | IOException e) {
+                //the other request may still succeed
+                LOG.debug("first response to a hedged request failed", e);
+                done = completionService.take();
+                searchResultSet = get(done);
+            }
+            if (done == duplicate) {
+                hedgeWins.incrementAndGet();
+            }
+            return searchResultSet.withElapsedTime(System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchClientException(e);
+        } finally {
+            //stop the losing request; this is a no-op for the one that finished
+            primary.cancel(true);
+            if (duplicate != null) {
+                duplicate.cancel(true);
+            }
+        }
+    }
+
+    private SearchResultSet searchWithRetries(SearchClient searchClient,
+                                              QueryRequest queryRequest)
+            throws SearchClientException, IOException, InterruptedException {
+        int attempts = 0;
+        while (true) {
+            long start = System.currentTimeMillis();
+            try {
+                SearchResultSet searchResultSet = searchClient.search(queryRequest);
+                latencyTracker.add(System.currentTimeMillis() - start);
+                depositRetryToken();
+                return searchResultSet;
+            } catch (SearchClientException | IOException e) {
+                if (attempts >= maxRetries || !isTransient(e)) {
+                    throw e;
+                }
+                if (!withdrawRetryToken()) {
+                    retriesDenied.incrementAndGet();
+                    throw e;
+                }
+                retries.incrementAndGet();
+                LOG.debug("retrying after transient failure", e);
+                Thread.sleep(BASE_BACKOFF_MILLIS << attempts);
+                attempts++;
+            }
+        }
+    }
+
+    /**
+     * @return true for IOExceptions and for 429 and 5xx responses; other
+     * failures, e.g. a response that can't be parsed, won't succeed on retry
+     */
+    static boolean isTransient(Exception e) {
+        if (e instanceof IOException) {
+            return true;
+        }
+        if (e instanceof SearchClientException) {
+            int status = ((SearchClientException) e).getStatusCode();
+            if (status == 429 || status >= 500) {
+                return true;
+            }
+            return status == -1 && e.getCause() instanceof IOException;
+        }
+        return false;
+    }
+
+    void depositRetryToken() {
+        synchronized (retryLock) {
+            retryTokens = Math.min(MAX_RETRY_TOKENS, retryTokens + retryBudgetRatio);
+        }
+    }
+
+    boolean withdrawRetryToken() {
+        synchronized (retryLock) {
+            if (retryTokens >= 1.0) {
+                retryTokens -= 1.0;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static SearchResultSet call(Callable<SearchResultSet> callable)
+            throws SearchClientException, IOException {
+        try {
+            return callable.call();
+        } catch (SearchClientException | IOException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchClientException(e);
+        } catch (Exception e) {
+            throw new SearchClientException(e);
+        }
+    }
+
+    private static SearchResultSet get(Future<SearchResultSet> future)
+            throws SearchClientException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SearchClientException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SearchClientException) {
+                throw (SearchClientException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new SearchClientException(e);
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of duplicate requests that were sent
+     */
+    public long getHedged() {
+        return hedged.get();
+    }
+
+    /**
+     * @return number of times the duplicate request's response was used
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * @return number of retries that were not attempted because the retry
+     * budget was exhausted
+     */
+    public long getRetriesDenied() {
+        return retriesDenied.get();
+    }
+
+    @Override
+    public String toString() {
+        return "HedgedSearcher{" +
+                "requests=" + requests +
+                ", hedged=" + hedged +
+                ", hedgeWins=" + hedgeWins +
+                ", retries=" + retries +
+                ", retriesDenied=" + retriesDenied +
+                '}';
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Keeps the most recent latencies in a ring buffer and periodically
+     * recalculates the 95th percentile.
+     */
+    static class LatencyTracker {
+        private static final int WINDOW = 1000;
+        private static final int MIN_SAMPLES = 50;
+        private static final int RECALCULATE_EVERY = 50;
+
+        private final long[] latencies = new long[WINDOW];
+        private int count = 0;
+        private volatile long p95 = -1;
+
+        synchronized void add(long latency) {
+            latencies[count % WINDOW] = latency;
+            count++;
+            if (count >= MIN_SAMPLES && count % RECALCULATE_EVERY == 0) {
+                long[] sorted = Arrays.copyOf(latencies, Math.min(count, WINDOW));
+                Arrays.sort(sorted);
+                p95 = sorted[(int) Math.ceil(0.95 * sorted.length) - 1];
+            }
+        }
+
+        /**
+         * @return the 95th percentile or -1 if there aren't enough samples yet
+         */
+        long getP95() {
+            return p95;
+        }
+    }
+}
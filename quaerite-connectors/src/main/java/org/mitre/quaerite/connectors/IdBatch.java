@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A batch of ids from an {@link IdGrabber}.  Batches are numbered
+ * consecutively within a partition (starting at 0 each run), and they carry
+ * the key after which enumeration should resume once this batch and
+ * all of the batches before it have been copied.
+ */
+public class IdBatch {
+
+    /**
+     * Signals to the consumers that there are no more ids
+     */
+    public static final IdBatch POISON = new IdBatch(-1, -1, Collections.EMPTY_SET, null);
+
+    private final int partition;
+    private final long seq;
+    private final Set<String> ids;
+    private final String lastKey;
+
+    public IdBatch(int partition, long seq, Set<String> ids, String lastKey) {
+        this.partition = partition;
+        this.seq = seq;
+        this.ids = ids;
+        this.lastKey = lastKey;
+    }
+
+    public int getPartition() {
+        return partition;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public Set<String> getIds() {
+        return ids;
+    }
+
+    /**
+     * @return the enumeration key of the last id in this batch or
+     * <code>null</code> if the grabber can't resume
+     */
+    public String getLastKey() {
+        return lastKey;
+    }
+
+    public boolean isPoison() {
+        return ids.size() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "IdBatch{" +
+                "partition=" + partition +
+                ", seq=" + seq +
+                ", ids=" + ids.size() +
+                ", lastKey='" + lastKey + '\'' +
+                '}';
+    }
+}
@@ -17,11 +17,14 @@
 package org.mitre.quaerite.connectors;
 
 import java.util.Collection;
-import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import org.apache.log4j.Logger;
 import org.mitre.quaerite.core.queries.Query;
@@ -29,19 +32,36 @@ import org.mitre.quaerite.core.queries.Query;
 /**
  * This grabs ids from the index and puts them on a blocking queue
  * so that multiple consumers can process the docs in parallel.
- * <p>Make sure to call {@link #addPoison()} to add empty sets
+ * <p>Make sure to call {@link #addPoison()} to add empty batches
  * to the queue to signal to the consumers to end.</p>
+ * <p>If {@link #setResumable(boolean)} is set, ids are enumerated in a
+ * stable order and each batch carries the key of its last id so that
+ * a later grabber can pick up after it with {@link #setResumeAfter(String)}.</p>
+ * <p>Grabbers from {@link SearchClient#getIdGrabbers(ArrayBlockingQueue, int, int,
+ * Collection, int, boolean)} each enumerate a disjoint partition of the ids
+ * into the same queue, and only the last one to finish adds the poison.
+ * Grabbers that were created separately can be set up the same way with
+ * {@link #shareCompletion(List)}.</p>
  */
 public abstract class IdGrabber implements Callable<Integer> {
     static Logger LOG = Logger.getLogger(IdGrabber.class);
 
     protected final String idField;
-    protected final ArrayBlockingQueue<Set<String>> ids;
+    protected final ArrayBlockingQueue<IdBatch> ids;
     protected final int batchSize;
     protected final int copierThreads;
     protected final Collection<Query> filterQueries;
+    protected int partition = 0;
+    protected int numPartitions = 1;
+    //shared by the grabbers for all partitions so that only the last one adds poison
+    private AtomicInteger activeGrabbers = null;
+    protected boolean resumable = false;
+    protected String resumeAfter = null;
+    //ids that don't pass this are dropped before they're queued
+    private Predicate<String> idFilter = null;
+    private long seq = 0;
 
-    public IdGrabber(String idField, ArrayBlockingQueue<Set<String>> ids, int batchSize, int
+    public IdGrabber(String idField, ArrayBlockingQueue<IdBatch> ids, int batchSize, int
             copierThreads, Collection<Query> filterQueries) {
         this.idField = idField;
         this.ids = ids;
@@ -53,16 +73,85 @@ public abstract class IdGrabber implements Callable<Integer> {
     @Override
     public abstract Integer call() throws Exception;
 
-    protected int addSet(ArrayBlockingQueue<Set<String>> ids, Set<String> set) throws InterruptedException {
+    /**
+     * @param resumable whether to enumerate ids in a stable order
+     *                  so that the enumeration can be resumed.  This may
+     *                  be slower for some search servers.
+     */
+    public void setResumable(boolean resumable) {
+        this.resumable = resumable;
+    }
+
+    /**
+     * @param resumeAfter only enumerate ids after this key
+     *                    (see {@link IdBatch#getLastKey()}); <code>null</code>
+     *                    to start at the beginning.  Implies resumable.
+     */
+    public void setResumeAfter(String resumeAfter) {
+        this.resumeAfter = resumeAfter;
+        if (resumeAfter != null) {
+            this.resumable = true;
+        }
+    }
+
+    /**
+     * @param idFilter only ids that pass this filter are added to the queue;
+     *                 <code>null</code> to add all ids
+     */
+    public void setIdFilter(Predicate<String> idFilter) {
+        this.idFilter = idFilter;
+    }
+
+    /**
+     * Sets up grabbers that feed the same queue so that only the last one
+     * to finish adds the poison.  This doesn't change their partitions.
+     *
+     * @param grabbers grabbers that haven't been started yet
+     * @return the grabbers
+     */
+    public static List<IdGrabber> shareCompletion(List<IdGrabber> grabbers) {
+        AtomicInteger activeGrabbers = new AtomicInteger(grabbers.size());
+        for (IdGrabber grabber : grabbers) {
+            grabber.activeGrabbers = activeGrabbers;
+        }
+        return grabbers;
+    }
+
+    /**
+     * Makes this grabber responsible for one partition of the ids
+     *
+     * @param partition      partition number from 0 to numPartitions - 1
+     * @param numPartitions  number of partitions
+     * @param activeGrabbers counter shared by the grabbers for all of the
+     *                       partitions; initialized to numPartitions
+     */
+    void setPartition(int partition, int numPartitions, AtomicInteger activeGrabbers) {
+        this.partition = partition;
+        this.numPartitions = numPartitions;
+        this.activeGrabbers = activeGrabbers;
+    }
+
+    /**
+     * @param set     ids
+     * @param lastKey key of the last id in the set; <code>null</code> if
+     *                the enumeration can't be resumed
+     * @return number of ids added after the id filter
+     * @throws InterruptedException if interrupted
+     */
+    protected int addBatch(Set<String> set, String lastKey) throws InterruptedException {
+        if (idFilter != null) {
+            set = set.stream().filter(idFilter).collect(Collectors.toSet());
+        }
         int sz = set.size();
         //don't bother adding if set size == 0
         if (sz == 0) {
             return sz;
         }
-        boolean added = ids.offer(set, 1, TimeUnit.SECONDS);
+        IdBatch batch = new IdBatch(partition, seq++, set, resumable ? lastKey : null);
+        boolean added = ids.offer(batch, 1, TimeUnit.SECONDS);
         LOG.debug("id grabber: " + added + " " + ids.size());
         while (!added) {
-            added = ids.offer(set, 1, TimeUnit.SECONDS);
+            added = ids.offer(batch, 1, TimeUnit.SECONDS);
             LOG.debug("waiting to add");
         }
         return sz;
@@ -70,14 +159,17 @@ public abstract class IdGrabber implements Callable<Integer> {
 
     //this is the poison that signals to the copiers to stop copying
     protected void addPoison() {
+        if (activeGrabbers != null && activeGrabbers.decrementAndGet() > 0) {
+            return;
+        }
         try {
             for (int i = 0; i < copierThreads; i++) {
                 boolean added = false;
 
-                added = ids.offer(Collections.EMPTY_SET,
+                added = ids.offer(IdBatch.POISON,
                         1, TimeUnit.SECONDS);
                 while (!added) {
-                    added = ids.offer(Collections.EMPTY_SET,
+                    added = ids.offer(IdBatch.POISON,
                             1, TimeUnit.SECONDS);
                 }
             }
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Adds a known list of ids to the queue in batches, e.g. the judged
+ * documents that have to be copied to an evaluation index.
+ */
+public class IdListGrabber extends IdGrabber {
+
+    private final List<String> idList;
+
+    public IdListGrabber(Collection<String> idList, ArrayBlockingQueue<IdBatch> ids,
+                         int batchSize, int copierThreads) {
+        super(null, ids, batchSize, copierThreads, Collections.EMPTY_LIST);
+        this.idList = new ArrayList<>(idList);
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        try {
+            for (int i = 0; i < idList.size(); i += batchSize) {
+                Set<String> set = new HashSet<>(
+                        idList.subList(i, Math.min(i + batchSize, idList.size())));
+                addBatch(set, null);
+            }
+        } finally {
+            addPoison();
+        }
+        return -1;
+    }
+}
@@ -17,23 +17,31 @@
 package org.mitre.quaerite.connectors;
 
 import com.google.gson.JsonElement;
+import org.mitre.quaerite.core.RequestTimings;
 
 public class JsonResponse {
 
     private final int status;
     private final String msg;
     private final JsonElement root;
+    private final RequestTimings timings;
 
     public JsonResponse(int status, JsonElement root) {
+        this(status, root, null);
+    }
+
+    public JsonResponse(int status, JsonElement root, RequestTimings timings) {
         this.status = status;
         this.root = root;
         this.msg = null;
+        this.timings = timings;
     }
 
     public JsonResponse(int status, String msg) {
         this.status = status;
         this.msg = msg;
         this.root = null;
+        this.timings = null;
     }
 
     public int getStatus() {
@@ -48,6 +56,13 @@ public class JsonResponse {
         return root;
     }
 
+    /**
+     * @return phase timings for the request or null if not available
+     */
+    public RequestTimings getTimings() {
+        return timings;
+    }
+
     @Override
     public String toString() {
         return "JsonResponse{" +
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Request entity that writes json straight to the connection's output stream
+ * with a {@link JsonWriter} instead of building the whole request body
+ * in memory first.  The body is sent chunked.
+ * <p>
+ * The entity is repeatable as long as {@link #write(Writer, JsonWriter)}
+ * is, so it can be retried.
+ */
+abstract class JsonStreamingEntity extends AbstractHttpEntity {
+
+    private static final Gson GSON = new Gson();
+
+    JsonStreamingEntity() {
+        setContentType("application/json; charset=utf-8");
+        setChunked(true);
+    }
+
+    /**
+     * Write the body.  The json writer is lenient so that multiple top level
+     * values can be written, e.g. for newline delimited json.  It writes
+     * directly to <code>writer</code>, so the two can be mixed.
+     *
+     * @param writer     underlying writer
+     * @param jsonWriter json writer wrapping <code>writer</code>
+     * @throws IOException on failure to write
+     */
+    abstract void write(Writer writer, JsonWriter jsonWriter) throws IOException;
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.setLenient(true);
+        write(writer, jsonWriter);
+        jsonWriter.flush();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        //only used if something asks for the content directly, e.g. logging
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writeTo(bos);
+        return new ByteArrayInputStream(bos.toByteArray());
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    static void writeValue(JsonWriter jsonWriter, Object value) throws IOException {
+        if (value == null) {
+            jsonWriter.nullValue();
+        } else if (value instanceof String) {
+            jsonWriter.value((String) value);
+        } else if (value instanceof List) {
+            jsonWriter.beginArray();
+            for (Object v : (List) value) {
+                writeValue(jsonWriter, v);
+            }
+            jsonWriter.endArray();
+        } else if (value instanceof Number) {
+            jsonWriter.value((Number) value);
+        } else if (value instanceof Boolean) {
+            jsonWriter.value((Boolean) value);
+        } else {
+            GSON.toJson(value, value.getClass(), jsonWriter);
+        }
+    }
+}
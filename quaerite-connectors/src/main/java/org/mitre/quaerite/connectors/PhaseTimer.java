@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.mitre.quaerite.core.RequestTimings;
+
+/**
+ * Records the phases of a single request made with a client from
+ * {@link #createHttpClient()}.  Pass {@link #getContext()} to the client's
+ * execute method, call {@link #downloaded()} after the response body has been
+ * read (or read the body through {@link #timeDownload(InputStream)}) and
+ * {@link #parsed()} after it has been parsed.
+ */
+class PhaseTimer {
+
+    static final String CONNECT_NANOS = "quaerite.connect-nanos";
+    static final String SEND_START = "quaerite.send-start";
+    static final String HEADERS_RECEIVED = "quaerite.headers-received";
+
+    private final HttpClientContext context = HttpClientContext.create();
+    private final long start;
+    private long downloaded = -1;
+
+    PhaseTimer() {
+        this(System.nanoTime());
+    }
+
+    /**
+     * @param start nanoTime when the request was started
+     */
+    PhaseTimer(long start) {
+        this.start = start;
+    }
+
+    /**
+     * @return an http client that records connect, send and response header
+     * times in the context of each request
+     */
+    static CloseableHttpClient createHttpClient() {
+        return HttpClients.custom()
+                .setConnectionManager(new TimingConnectionManager())
+                .setRequestExecutor(new TimingRequestExecutor())
+                .build();
+    }
+
+    HttpClientContext getContext() {
+        return context;
+    }
+
+    void downloaded() {
+        downloaded(System.nanoTime());
+    }
+
+    void downloaded(long nanos) {
+        downloaded = nanos;
+    }
+
+    /**
+     * If the body is parsed as it's read, the download time includes the
+     * parsing that overlapped it, and the parse time is what's left after the
+     * last byte arrived.
+     *
+     * @return a stream that calls {@link #downloaded()} when it reaches the end
+     */
+    InputStream timeDownload(InputStream is) {
+        return new DownloadTimingInputStream(is);
+    }
+
+    RequestTimings parsed() {
+        return parsed(System.nanoTime());
+    }
+
+    /**
+     * Phases that weren't recorded, e.g. the connect time
+     * for a pooled connection, are 0.
+     */
+    RequestTimings parsed(long parsed) {
+        if (downloaded < 0) {
+            downloaded = parsed;
+        }
+        long connect = getAttribute(CONNECT_NANOS, 0);
+        long sendStart = getAttribute(SEND_START, start);
+        long headers = getAttribute(HEADERS_RECEIVED, downloaded);
+        return new RequestTimings(
+                micros(Math.max(0, sendStart - start - connect)),
+                micros(connect),
+                micros(headers - sendStart),
+                micros(downloaded - headers),
+                micros(parsed - downloaded));
+    }
+
+    private long getAttribute(String key, long dflt) {
+        Long val = (Long) context.getAttribute(key);
+        return (val == null) ? dflt : val;
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1000;
+    }
+
+    private class DownloadTimingInputStream extends FilterInputStream {
+        private boolean eof = false;
+
+        DownloadTimingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return checkEOF(super.read());
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return checkEOF(super.read(b, off, len));
+        }
+
+        private int checkEOF(int read) {
+            if (read < 0 && !eof) {
+                eof = true;
+                downloaded();
+            }
+            return read;
+        }
+    }
+
+    private static class TimingConnectionManager extends PoolingHttpClientConnectionManager {
+        @Override
+        public void connect(HttpClientConnection managedConn, HttpRoute route,
+                            int connectTimeout, HttpContext context) throws IOException {
+            long connectStart = System.nanoTime();
+            try {
+                super.connect(managedConn, route, connectTimeout, context);
+            } finally {
+                context.setAttribute(CONNECT_NANOS, System.nanoTime() - connectStart);
+            }
+        }
+    }
+
+    private static class TimingRequestExecutor extends HttpRequestExecutor {
+        @Override
+        public HttpResponse execute(HttpRequest request, HttpClientConnection conn,
+                                    HttpContext context) throws IOException, HttpException {
+            context.setAttribute(SEND_START, System.nanoTime());
+            return super.execute(request, conn, context);
+        }
+
+        @Override
+        protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn,
+                                                 HttpContext context)
+                throws HttpException, IOException {
+            HttpResponse response = super.doReceiveResponse(request, conn, context);
+            context.setAttribute(HEADERS_RECEIVED, System.nanoTime());
+            return response;
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import org.mitre.quaerite.core.DocIdDictionary;
 import org.mitre.quaerite.core.features.CustomHandler;
 import org.mitre.quaerite.core.queries.Query;
 
@@ -41,6 +42,7 @@ public class QueryRequest {
     private int numResults = 10;
     private String sortField;
     private SORT_ORDER sortOrder;
+    private DocIdDictionary docIdDictionary;
 
     public QueryRequest(Query query) {
         this(query, null, null);
@@ -159,4 +161,19 @@ public class QueryRequest {
         return filterQueries;
     }
 
+    /**
+     * @param docIdDictionary dictionary that the client should translate the
+     *                        result ids with when it parses the response
+     */
+    public void setDocIdDictionary(DocIdDictionary docIdDictionary) {
+        this.docIdDictionary = docIdDictionary;
+    }
+
+    /**
+     * @return the dictionary or null if the ids shouldn't be translated
+     */
+    public DocIdDictionary getDocIdDictionary() {
+        return docIdDictionary;
+    }
+
 }
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Set;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A document as the json object that the source returned, for copying
+ * between search servers of the same type without converting it to
+ * a {@link StoredDocument} and back.
+ * <p>
+ * The json is copied token by token from the response, so fields can be
+ * dropped without building a tree, and numbers keep their original text.
+ */
+public class RawDocument {
+
+    private final String id;
+    private final String json;
+
+    public RawDocument(String id, String json) {
+        this.id = id;
+        this.json = json;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getJson() {
+        return json;
+    }
+
+    public long getEstimatedSize() {
+        return json.length();
+    }
+
+    /**
+     * Reads the next object from the reader.
+     *
+     * @param reader        reader positioned at the start of the object
+     * @param idField       top level field that holds the id or <code>null</code>
+     * @param id            id to use if idField is <code>null</code>
+     * @param excludeFields top level fields to drop
+     * @return the document
+     * @throws IOException on failure to read
+     */
+    static RawDocument read(JsonReader reader, String idField, String id,
+                            Set<String> excludeFields) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        JsonWriter writer = new JsonWriter(stringWriter);
+        reader.beginObject();
+        writer.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (excludeFields.contains(name)) {
+                reader.skipValue();
+                continue;
+            }
+            writer.name(name);
+            if (name.equals(idField) && reader.peek() != JsonToken.BEGIN_ARRAY
+                    && reader.peek() != JsonToken.BEGIN_OBJECT) {
+                id = reader.nextString();
+                writer.value(id);
+            } else {
+                copyValue(reader, writer);
+            }
+        }
+        reader.endObject();
+        writer.endObject();
+        writer.flush();
+        return new RawDocument(id, stringWriter.toString());
+    }
+
+    static void copyValue(JsonReader reader, JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    copyValue(reader, writer);
+                }
+                reader.endArray();
+                writer.endArray();
+                break;
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copyValue(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                //keep the original text, e.g. for longs that don't fit in a double
+                writer.jsonValue(reader.nextString());
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nullValue();
+                break;
+            default:
+                throw new IllegalStateException("unexpected token: " + reader.peek());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RawDocument{" +
+                "id='" + id + '\'' +
+                ", json=" + json +
+                '}';
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Implemented by clients that can copy documents as raw json to
+ * a search server of the same type.
+ */
+public interface RawDocumentClient {
+
+    /**
+     * @return whether this client can use {@link #getRawDocs(String, Set, Set)}
+     * and {@link #addRawDocuments(List)}; e.g. older versions of a server may not
+     */
+    default boolean supportsRawDocuments() {
+        return true;
+    }
+
+    /**
+     * Fetches documents as raw json for copying to a search server of the
+     * same type.
+     *
+     * @param idField       id field
+     * @param ids           ids to fetch
+     * @param excludeFields top level fields to drop, e.g. system fields and copy fields
+     * @return documents; ids that aren't found are skipped
+     */
+    List<RawDocument> getRawDocs(String idField, Set<String> ids,
+                                 Set<String> excludeFields)
+            throws IOException, SearchClientException;
+
+    /**
+     * @param documents documents from {@link #getRawDocs(String, Set, Set)} on
+     *                  a client of the same type
+     */
+    void addRawDocuments(List<RawDocument> documents)
+            throws IOException, SearchClientException;
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.HttpHost;
+import org.apache.log4j.Logger;
+
+/**
+ * A pool of interchangeable replicas (e.g. solr nodes or elasticsearch
+ * coordinating nodes) that serve a single logical search server.
+ * <p>
+ * Requests go to the healthy replica with the fewest outstanding requests.
+ * A replica that fails {@link #FAILURES_TO_EJECT} times in a row is ejected
+ * for a backoff period, which doubles with each consecutive ejection.
+ * If every replica is ejected, the one that is due back first is used.
+ * <p>
+ * Replicas are specified by their origin, e.g. <code>http://solr2:8983</code>;
+ * the path of the logical url is kept when a request is routed.
+ * <p>
+ * This is thread safe and is meant to be shared by all clients that talk
+ * to the same logical search server.
+ */
+public class ReplicaPool {
+
+    static Logger LOG = Logger.getLogger(ReplicaPool.class);
+
+    static final int FAILURES_TO_EJECT = 3;
+    private static final long BASE_EJECTION_MILLIS = 5000;
+    private static final long MAX_EJECTION_MILLIS = 5 * 60 * 1000;
+
+    private static final Pattern ORIGIN = Pattern.compile("^(https?://[^/]+)");
+
+    private List<Replica> replicas;
+    private int next = 0;
+
+    public ReplicaPool(List<String> origins) {
+        setOrigins(origins);
+    }
+
+    /**
+     * @return the replica that should handle the next request.  The caller
+     * must call {@link #release(Replica, boolean)} when the request is complete.
+     */
+    public synchronized Replica acquire() {
+        long now = System.currentTimeMillis();
+        Replica best = null;
+        Replica earliestBack = null;
+        //start at a rotating offset so that ties are spread across replicas
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((next + i) % replicas.size());
+            if (replica.ejectedUntil > now) {
+                if (earliestBack == null || replica.ejectedUntil < earliestBack.ejectedUntil) {
+                    earliestBack = replica;
+                }
+            } else if (best == null || replica.outstanding < best.outstanding) {
+                best = replica;
+            }
+        }
+        next = (next + 1) % replicas.size();
+        if (best == null) {
+            best = earliestBack;
+        }
+        best.outstanding++;
+        return best;
+    }
+
+    /**
+     * @param replica replica that handled the request
+     * @param success false if there was no response or a 5xx response
+     */
+    public synchronized void release(Replica replica, boolean success) {
+        replica.outstanding--;
+        if (success) {
+            replica.consecutiveFailures = 0;
+            replica.ejections = 0;
+            return;
+        }
+        if (++replica.consecutiveFailures >= FAILURES_TO_EJECT) {
+            long backoff = Math.min(MAX_EJECTION_MILLIS,
+                    BASE_EJECTION_MILLIS << Math.min(replica.ejections, 16));
+            replica.ejectedUntil = System.currentTimeMillis() + backoff;
+            replica.ejections++;
+            replica.consecutiveFailures = 0;
+            LOG.warn("ejecting " + replica.origin + " for " + backoff + " ms");
+            onEjection(replica);
+        }
+    }
+
+    /**
+     * Hook for subclasses that can rediscover the replicas, e.g. from
+     * cluster state.  This is called while holding the pool's lock.
+     *
+     * @param replica replica that was just ejected
+     */
+    protected void onEjection(Replica replica) {
+    }
+
+    /**
+     * Replaces the replicas in the pool.  Replicas that were already
+     * in the pool keep their state.
+     *
+     * @param origins origins (scheme://host:port) of the replicas
+     */
+    protected synchronized void setOrigins(List<String> origins) {
+        if (origins.size() == 0) {
+            throw new IllegalArgumentException("must have at least one replica");
+        }
+        List<Replica> updated = new ArrayList<>();
+        for (String origin : origins) {
+            String normalized = getOrigin(origin);
+            Replica replica = null;
+            if (replicas != null) {
+                for (Replica existing : replicas) {
+                    if (existing.origin.equals(normalized)) {
+                        replica = existing;
+                        break;
+                    }
+                }
+            }
+            updated.add((replica == null) ? new Replica(normalized) : replica);
+        }
+        replicas = updated;
+        next = 0;
+    }
+
+    public synchronized List<String> getOrigins() {
+        List<String> origins = new ArrayList<>();
+        for (Replica replica : replicas) {
+            origins.add(replica.origin);
+        }
+        return Collections.unmodifiableList(origins);
+    }
+
+    /**
+     * @param url     url for the logical search server
+     * @param replica replica to send the request to
+     * @return the url with its origin replaced by the replica's origin
+     */
+    static String route(String url, Replica replica) {
+        Matcher m = ORIGIN.matcher(url);
+        if (!m.find()) {
+            throw new IllegalArgumentException("Couldn't find domain in this url:" + url);
+        }
+        return replica.origin + url.substring(m.end());
+    }
+
+    static String getOrigin(String url) {
+        Matcher m = ORIGIN.matcher(url.trim());
+        if (!m.find()) {
+            throw new IllegalArgumentException("Couldn't find domain in this url:" + url);
+        }
+        return m.group(1);
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicaPool{" + getOrigins() + '}';
+    }
+
+    public static class Replica {
+        private final String origin;
+        private final HttpHost httpHost;
+        //these are guarded by the pool's lock
+        private int outstanding = 0;
+        private int consecutiveFailures = 0;
+        private int ejections = 0;
+        private long ejectedUntil = 0;
+
+        private Replica(String origin) {
+            this.origin = origin;
+            try {
+                URI uri = new URI(origin);
+                this.httpHost = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException(origin, e);
+            }
+        }
+
+        public String getOrigin() {
+            return origin;
+        }
+
+        HttpHost getHttpHost() {
+            return httpHost;
+        }
+    }
+}
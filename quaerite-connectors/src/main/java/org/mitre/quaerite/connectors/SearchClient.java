@@ -18,8 +18,10 @@ package org.mitre.quaerite.connectors;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
@@ -28,20 +30,24 @@ import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
 import org.mitre.quaerite.core.ExperimentConfig;
@@ -60,12 +66,19 @@ public abstract class SearchClient implements Closeable {
 
     private final CloseableHttpClient httpClient;
     private final JsonParser parser = new JsonParser();
+    //if set, requests are spread across the replicas in this pool
+    private volatile ReplicaPool replicaPool;
+    private volatile IntConsumer rejectionListener;
 
     public SearchClient() {
-        httpClient = HttpClients.createDefault();
+        httpClient = PhaseTimer.createHttpClient();
     }
 
     protected byte[] get(String url) throws SearchClientException {
+        return get(url, new PhaseTimer());
+    }
+
+    private byte[] get(String url, PhaseTimer timer) throws SearchClientException {
         //overly simplistic...need to add proxy, etc., but good enough for now
         URI uri = null;
         try {
@@ -73,7 +86,10 @@ public abstract class SearchClient implements Closeable {
         } catch (URISyntaxException e) {
             throw new IllegalArgumentException(e);
         }
-        HttpHost target = new HttpHost(uri.getHost(), uri.getPort());
+        ReplicaPool pool = replicaPool;
+        ReplicaPool.Replica replica = (pool == null) ? null : pool.acquire();
+        HttpHost target = (replica == null) ? new HttpHost(uri.getHost(), uri.getPort())
+                : replica.getHttpHost();
         HttpGet httpGet = null;
         try {
             String get = uri.getPath();
@@ -89,23 +105,98 @@ public abstract class SearchClient implements Closeable {
         //httpGet.setHeader("Connection", "close");
 
         //try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-        try (CloseableHttpResponse httpResponse = httpClient.execute(target, httpGet)) {
+        boolean success = false;
+        try (CloseableHttpResponse httpResponse = httpClient.execute(target, httpGet,
+                timer.getContext())) {
+            success = httpResponse.getStatusLine().getStatusCode() < 500;
             if (httpResponse.getStatusLine().getStatusCode() != 200) {
                 String msg = new String(EntityUtils.toByteArray(
                         httpResponse.getEntity()), StandardCharsets.UTF_8);
-                throw new SearchClientException("Bad status code: "
+                throw new SearchClientException(
+                        httpResponse.getStatusLine().getStatusCode(),
+                        "Bad status code: "
                         + httpResponse.getStatusLine().getStatusCode()
                         + "for url: " + url + "; msg: " + msg);
             }
-            return EntityUtils.toByteArray(httpResponse.getEntity());
+            byte[] bytes = EntityUtils.toByteArray(httpResponse.getEntity());
+            timer.downloaded();
+            return bytes;
         } catch (IOException e) {
             throw new SearchClientException(url, e);
+        } finally {
+            if (replica != null) {
+                pool.release(replica, success);
+            }
         }
     }
 
     protected JsonResponse postJson(String url, String json) throws IOException {
-        HttpPost httpRequest = new HttpPost(url);
-        ByteArrayEntity entity = new ByteArrayEntity(json.getBytes(StandardCharsets.UTF_8));
+        return postJson(url, new ByteArrayEntity(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    protected JsonResponse postJson(String url, HttpEntity entity) throws IOException {
+        return sendJson(new HttpPost(), url, entity);
+    }
+
+    /**
+     * Sends a DELETE with a json body, e.g. to close an elasticsearch point in time
+     */
+    protected JsonResponse deleteJson(String url, String json) throws IOException {
+        return sendJson(new HttpDeleteWithBody(), url,
+                new ByteArrayEntity(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private JsonResponse sendJson(HttpEntityEnclosingRequestBase httpRequest, String url,
+                                  HttpEntity entity) throws IOException {
+        PhaseTimer timer = new PhaseTimer();
+        //parse the body as it streams in instead of buffering it
+        PostResponse<JsonElement> response = send(httpRequest, url, entity, timer, is -> {
+            try (Reader reader = new BufferedReader(
+                    new InputStreamReader(is, StandardCharsets.UTF_8))) {
+                return parser.parse(reader);
+            }
+        });
+        if (response.status == 200) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace(response.value);
+            }
+            return new JsonResponse(200, response.value, timer.parsed());
+        } else {
+            return new JsonResponse(response.status, response.msg);
+        }
+    }
+
+    /**
+     * Like {@link #postJson(String, String)}, but the response isn't parsed,
+     * so that it can be streamed by the caller.
+     *
+     * @return the bytes of a 200 response
+     * @throws SearchClientException with the status code if the response isn't a 200
+     */
+    protected byte[] postJsonForBytes(String url, String json)
+            throws IOException, SearchClientException {
+        PostResponse<byte[]> response = send(new HttpPost(), url,
+                new ByteArrayEntity(json.getBytes(StandardCharsets.UTF_8)), new PhaseTimer(),
+                is -> toByteArray(is));
+        if (response.status != 200) {
+            throw new SearchClientException(response.status, response.msg);
+        }
+        return response.value;
+    }
+
+    /**
+     * @param reader reads the body of a 200 response as it streams in; the
+     *               download is marked done on the timer when the reader
+     *               reaches the end of the body.  Other responses are read
+     *               into the message.
+     */
+    private <T> PostResponse<T> send(HttpEntityEnclosingRequestBase httpRequest, String url,
+                                     HttpEntity entity, PhaseTimer timer,
+                                     BodyReader<T> reader) throws IOException {
+        ReplicaPool pool = replicaPool;
+        ReplicaPool.Replica replica = (pool == null) ? null : pool.acquire();
+        httpRequest.setURI(URI.create(
+                (replica == null) ? url : ReplicaPool.route(url, replica)));
         httpRequest.setEntity(entity);
         httpRequest.setHeader("Accept", "application/json");
         httpRequest.setHeader("Content-type", "application/json; charset=utf-8");
@@ -114,28 +205,68 @@ public abstract class SearchClient implements Closeable {
 
         //try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
 
-        try (CloseableHttpResponse response = httpClient.execute(httpRequest)) {
+        boolean success = false;
+        try (CloseableHttpResponse response = httpClient.execute(httpRequest, timer.getContext())) {
             int status = response.getStatusLine().getStatusCode();
-            if (status == 200) {
-                try (Reader reader = new BufferedReader(
-                        new InputStreamReader(response.getEntity().getContent(),
-                                StandardCharsets.UTF_8))) {
-                    JsonElement element = parser.parse(reader);
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace(element);
-                    }
-                    return new JsonResponse(200, element);
-                }
-            } else {
-                return new JsonResponse(status,
-                        new String(EntityUtils.toByteArray(response.getEntity()),
-                                StandardCharsets.UTF_8));
+            success = status < 500;
+            if (status != 200) {
+                String msg = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                timer.downloaded();
+                return new PostResponse<>(status, null, msg);
+            }
+            try (InputStream is = timer.timeDownload(response.getEntity().getContent())) {
+                return new PostResponse<>(status, reader.read(is), null);
             }
         } finally {
             httpRequest.releaseConnection();
+            if (replica != null) {
+                pool.release(replica, success);
+            }
         }
     }
 
+    private static byte[] toByteArray(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read = is.read(buffer);
+        while (read > -1) {
+            bos.write(buffer, 0, read);
+            read = is.read(buffer);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * Spread requests across the replicas in this pool instead of sending
+     * them to the host in the client's url.
+     *
+     * @param replicaPool pool to use or <code>null</code> to turn this off
+     */
+    void setReplicaPool(ReplicaPool replicaPool) {
+        this.replicaPool = replicaPool;
+    }
+
+    /**
+     * @param rejectionListener told how many items in a batch the server
+     *                          rejected because it was overloaded (e.g. a 429
+     *                          for each item in an elasticsearch _bulk response);
+     *                          <code>null</code> to turn this off
+     */
+    public void setRejectionListener(IntConsumer rejectionListener) {
+        this.rejectionListener = rejectionListener;
+    }
+
+    protected void rejected(int items) {
+        IntConsumer listener = rejectionListener;
+        if (listener != null && items > 0) {
+            listener.accept(items);
+        }
+    }
+
+    ReplicaPool getReplicaPool() {
+        return replicaPool;
+    }
+
 
     protected static String encode(String s) throws IllegalArgumentException {
         try {
@@ -177,25 +308,59 @@ public abstract class SearchClient implements Closeable {
 
     public abstract void deleteAll() throws SearchClientException, IOException;
 
-    public abstract IdGrabber getIdGrabber(ArrayBlockingQueue<Set<String>> ids,
+    public abstract IdGrabber getIdGrabber(ArrayBlockingQueue<IdBatch> ids,
                                            int batchSize,
                                            int copierThreads,
                                            Collection<Query> filterQueries)
             throws IOException, SearchClientException;
 
+    /**
+     * Returns grabbers that each enumerate a disjoint partition of the
+     * ids into the shared queue.  Clients that can't partition the ids
+     * return a single grabber, so callers should check the size of the list.
+     *
+     * @param numPartitions requested number of partitions
+     * @param resumable     whether the grabbers need to be resumable
+     *                      (see {@link IdGrabber#setResumable(boolean)})
+     */
+    public List<IdGrabber> getIdGrabbers(ArrayBlockingQueue<IdBatch> ids,
+                                         int batchSize,
+                                         int copierThreads,
+                                         Collection<Query> filterQueries,
+                                         int numPartitions, boolean resumable)
+            throws IOException, SearchClientException {
+        IdGrabber idGrabber = getIdGrabber(ids, batchSize, copierThreads, filterQueries);
+        idGrabber.setResumable(resumable);
+        return Collections.singletonList(idGrabber);
+    }
+
+    /**
+     * Assigns the partitions to the grabbers and sets them up to share the poison
+     */
+    static List<IdGrabber> partition(List<IdGrabber> grabbers, boolean resumable) {
+        AtomicInteger activeGrabbers = new AtomicInteger(grabbers.size());
+        for (int i = 0; i < grabbers.size(); i++) {
+            grabbers.get(i).setPartition(i, grabbers.size(), activeGrabbers);
+            grabbers.get(i).setResumable(resumable);
+        }
+        return grabbers;
+    }
+
 
     protected JsonResponse getJson(String url) throws IOException,
             SearchClientException {
         byte[] bytes;
+        PhaseTimer timer = new PhaseTimer();
         try {
-            bytes = get(url);
+            bytes = get(url, timer);
         } catch (SearchClientException e) {
-            return new JsonResponse(-1, e.getMessage());
+            return new JsonResponse(e.getStatusCode(), e.getMessage());
         }
         try (Reader reader = new BufferedReader(
                 new InputStreamReader(new ByteArrayInputStream(bytes),
                         StandardCharsets.UTF_8))) {
-            return new JsonResponse(200, parser.parse(reader));
+            JsonElement root = parser.parse(reader);
+            return new JsonResponse(200, root, timer.parsed());
         }
     }
 
@@ -213,4 +378,30 @@ public abstract class SearchClient implements Closeable {
     public abstract List<TokenDF> getTerms(String field, String lower,
                                            int limit, int minCount)
             throws IOException, SearchClientException;
+
+    private interface BodyReader<T> {
+        T read(InputStream is) throws IOException;
+    }
+
+    private static class PostResponse<T> {
+        private final int status;
+        //the body of a 200 response
+        private final T value;
+        //the body of any other response
+        private final String msg;
+
+        PostResponse(int status, T value, String msg) {
+            this.status = status;
+            this.value = value;
+            this.msg = msg;
+        }
+    }
+
+    //HttpDelete can't have a body
+    private static class HttpDeleteWithBody extends HttpEntityEnclosingRequestBase {
+        @Override
+        public String getMethod() {
+            return "DELETE";
+        }
+    }
 }
@@ -20,16 +20,44 @@ import java.io.IOException;
 
 public class SearchClientException extends Exception {
 
+    //http status code of the response if there was one, -1 otherwise
+    private final int statusCode;
+
     public SearchClientException(String msg) {
+        this(-1, msg);
+    }
+
+    public SearchClientException(int statusCode, String msg) {
         super(msg);
+        this.statusCode = statusCode;
     }
 
     public SearchClientException(Exception e) {
         super(e);
+        this.statusCode = -1;
     }
 
     public SearchClientException(String url, IOException e) {
         super(url, e);
+        this.statusCode = -1;
+    }
+
+    /**
+     * @param msg   message
+     * @param cause cause; if it's a SearchClientException, its status code is kept
+     */
+    public SearchClientException(String msg, Throwable cause) {
+        super(msg, cause);
+        this.statusCode = (cause instanceof SearchClientException) ?
+                ((SearchClientException) cause).getStatusCode() : -1;
+    }
+
+    /**
+     * @return the http status code of the failed response or -1
+     * if there was no response, e.g. because of an IOException
+     */
+    public int getStatusCode() {
+        return statusCode;
     }
 
 }
@@ -21,23 +21,104 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
 
 public class SearchClientFactory {
 
+    //logical search server url -> pool of replicas that can serve it
+    private static final Map<String, ReplicaPool> REPLICA_POOLS = new ConcurrentHashMap<>();
+    //urls for which we've already tried to read the SolrCloud cluster status
+    private static final Set<String> SOLR_CLOUD_PROBED = new HashSet<>();
+    private static volatile boolean SOLR_CLOUD_ROUTING = false;
+
+    static Logger LOG = Logger.getLogger(SearchClientFactory.class);
+
+    /**
+     * Registers the replicas that can serve requests for a logical search server url.
+     * Clients created by {@link #getClient(String)} for that url spread their requests
+     * across the replicas, while experiments keep reporting the logical url.
+     *
+     * @param url      logical search server url as used in the experiments
+     * @param replicas origins (scheme://host:port) of the replicas
+     */
+    public static void registerReplicas(String url, List<String> replicas) {
+        if (replicas == null || replicas.size() == 0) {
+            REPLICA_POOLS.remove(normalize(url));
+            return;
+        }
+        ReplicaPool existing = REPLICA_POOLS.get(normalize(url));
+        if (existing != null && existing.getOrigins().equals(normalizeOrigins(replicas))) {
+            return;
+        }
+        REPLICA_POOLS.put(normalize(url), new ReplicaPool(replicas));
+    }
+
+    /**
+     * If set to <code>true</code>, the factory reads the cluster status for SolrCloud
+     * collections and spreads requests across the nodes that host active replicas.
+     * This does not override replicas registered via {@link #registerReplicas(String, List)}.
+     *
+     * @param solrCloudRouting whether or not to route requests to SolrCloud replicas
+     */
+    public static void setSolrCloudRouting(boolean solrCloudRouting) {
+        SOLR_CLOUD_ROUTING = solrCloudRouting;
+    }
+
     public static SearchClient getClient(String url) throws IOException, SearchClientException {
+        ReplicaPool replicaPool = REPLICA_POOLS.get(normalize(url));
+        SearchClient client = getClient(url, replicaPool);
+        if (replicaPool == null && SOLR_CLOUD_ROUTING && client instanceof SolrClient) {
+            replicaPool = discoverSolrCloudReplicas(url);
+        }
+        client.setReplicaPool(replicaPool);
+        return client;
+    }
 
+    private static ReplicaPool discoverSolrCloudReplicas(String url) {
+        String key = normalize(url);
+        synchronized (SOLR_CLOUD_PROBED) {
+            if (SOLR_CLOUD_PROBED.contains(key)) {
+                return REPLICA_POOLS.get(key);
+            }
+            SOLR_CLOUD_PROBED.add(key);
+            try {
+                ReplicaPool pool = SolrCloudReplicaPool.discover(url);
+                if (pool != null) {
+                    REPLICA_POOLS.put(key, pool);
+                }
+                return pool;
+            } catch (SearchClientException | IOException e) {
+                //not solrcloud or collections api not available
+                LOG.info("Couldn't read SolrCloud cluster status for " + url +
+                        "; sending all requests to " + url, e);
+                return null;
+            }
+        }
+    }
+
+    private static SearchClient getClient(String url, ReplicaPool replicaPool)
+            throws IOException, SearchClientException {
         Matcher m = Pattern.compile("(https?://[^/]+)").matcher(url);
         if (!m.find()) {
             throw new SearchClientException(
                     "Couldn't find domain in this url:" + url);
         }
-        String solrSystem = m.group(1) + "/solr/admin/info/system?wt=json";
+        //the logical url's host may not be reachable, so ask a replica
+        String origin = (replicaPool == null) ? m.group(1) : replicaPool.getOrigins().get(0);
+        String solrSystem = origin + "/solr/admin/info/system?wt=json";
         try {
             byte[] bytes = HttpUtils.get(solrSystem);
             try (Reader reader = new InputStreamReader(
@@ -63,7 +144,7 @@ public class SearchClientFactory {
         } catch (SearchClientException e) {
             //swallow and try es
         }
-        String es = m.group(1);
+        String es = origin;
         byte[] bytes = HttpUtils.get(es);
         try (Reader reader = new InputStreamReader(
                 new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)) {
@@ -84,4 +165,16 @@ public class SearchClientFactory {
                     "Couldn't find right client for: " + url);
         }
     }
+
+    private static String normalize(String url) {
+        return StringUtils.stripEnd(url.trim(), "/");
+    }
+
+    private static List<String> normalizeOrigins(List<String> replicas) {
+        List<String> origins = new ArrayList<>();
+        for (String replica : replicas) {
+            origins.add(ReplicaPool.getOrigin(replica));
+        }
+        return origins;
+    }
 }
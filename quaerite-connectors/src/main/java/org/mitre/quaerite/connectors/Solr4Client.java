@@ -18,15 +18,18 @@ package org.mitre.quaerite.connectors;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.apache.log4j.Logger;
 import org.mitre.quaerite.core.queries.LuceneQuery;
+import org.mitre.quaerite.core.queries.Query;
 import org.mitre.quaerite.core.queries.TermsQuery;
 
 /**
@@ -46,6 +49,30 @@ public class Solr4Client extends SolrClient {
     }
 
 
+    /**
+     * The json request api that raw documents rely on isn't available in Solr 4.x
+     */
+    @Override
+    public boolean supportsRawDocuments() {
+        return false;
+    }
+
+    /**
+     * Solr 4.x doesn't have the hash query parser, so this always
+     * returns a single grabber.
+     */
+    @Override
+    public List<IdGrabber> getIdGrabbers(ArrayBlockingQueue<IdBatch> ids, int batchSize,
+                                         int copierThreads, Collection<Query> filterQueries,
+                                         int numPartitions, boolean resumable)
+            throws IOException, SearchClientException {
+        if (numPartitions > 1) {
+            LOG.warn("Solr 4.x can't partition ids; using a single id grabber");
+        }
+        return super.getIdGrabbers(ids, batchSize, copierThreads, filterQueries,
+                1, resumable);
+    }
+
     @Override
     public List<StoredDocument> getDocs(String idField, Set<String> ids,
                                         Set<String> whiteListFields,
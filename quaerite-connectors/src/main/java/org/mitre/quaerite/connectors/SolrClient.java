@@ -23,6 +23,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -34,16 +35,19 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.TimeUnit;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
+import org.mitre.quaerite.core.DocIdDictionary;
 import org.mitre.quaerite.core.FacetResult;
+import org.mitre.quaerite.core.RequestTimings;
 import org.mitre.quaerite.core.SearchResultSet;
 import org.mitre.quaerite.core.features.CustomHandler;
 import org.mitre.quaerite.core.features.ParameterizableString;
@@ -58,11 +62,12 @@ import org.mitre.quaerite.core.queries.Query;
 import org.mitre.quaerite.core.queries.TermQuery;
 import org.mitre.quaerite.core.queries.TermsQuery;
 import org.mitre.quaerite.core.stats.TokenDF;
+import org.mitre.quaerite.core.util.JsonUtil;
 
 /**
  * This should work with versions >= Solr 7.x
  */
-public class SolrClient extends SearchClient {
+public class SolrClient extends SearchClient implements RawDocumentClient {
 
     protected static final String JSON_RESPONSE = "&wt=json";
     private static Set<String> SYS_INTERNAL_FIELDS;
@@ -77,9 +82,11 @@ public class SolrClient extends SearchClient {
 
     static final Gson GSON = new Gson();
     private static String DEFAULT_ID_FIELD = "id";
+    public static final int DEFAULT_COMMIT_WITHIN = 10000;
 
     final String url;
     String idField;
+    private volatile int commitWithin = DEFAULT_COMMIT_WITHIN;
 
     /**
      * @param url url to Solr including /collection
@@ -101,16 +108,20 @@ public class SolrClient extends SearchClient {
             LOG.trace(response);
         }
         if (response.getStatus() != 200) {
-            throw new SearchClientException(response.getMsg());
+            throw new SearchClientException(response.getStatus(), response.getMsg());
         }
         long elapsed = System.currentTimeMillis() - start;
-        return translateResponse(elapsed, response.getJson());
+        return translateResponse(elapsed, response.getJson(), response.getTimings(),
+                query.getDocIdDictionary());
     }
 
 
-    private SearchResultSet translateResponse(long totalTime, JsonElement root) throws IOException {
-        //TODO: figure out what queryTime means/is as diff from total
-        long queryTime = 0;
+    private SearchResultSet translateResponse(long totalTime, JsonElement root,
+                                              RequestTimings timings,
+                                              DocIdDictionary dictionary) throws IOException {
+        //QTime is the time solr spent on the query, excluding writing the response
+        long queryTime = JsonUtil.getPrimitive(
+                ((JsonObject) root).get("responseHeader"), "QTime", -1l);
         List<String> ids = new ArrayList();
         JsonObject response = (JsonObject) ((JsonObject) root).get("response");
         long totalHits = response.get("numFound").getAsLong();
@@ -121,7 +132,7 @@ public class SolrClient extends SearchClient {
                 ids.add(id);
             }
         }
-        return new SearchResultSet(totalHits, queryTime, totalTime, ids);
+        return new SearchResultSet(totalHits, queryTime, totalTime, ids, timings, dictionary);
     }
 
     String generateRequestURL(QueryRequest queryRequest) {
@@ -345,23 +356,74 @@ public class SolrClient extends SearchClient {
 
     @Override
     public void addDocuments(List<StoredDocument> buildDocuments) throws IOException, SearchClientException {
-        List<Map<String, Object>> data = new ArrayList<>();
-        for (StoredDocument d : buildDocuments) {
-            data.add(d.getFields());
+        String updateUrl = url + "/update/json";
+        if (commitWithin > 0) {
+            updateUrl += "?commitWithin=" + commitWithin;
         }
-        String json = GSON.toJson(data);
-        JsonResponse response = postJson(url +
-                "/update/json?commitWithin=10000", json);
+        JsonResponse response = postJson(updateUrl, new UpdateEntity(buildDocuments));
         if (response.getStatus() != 200) {
-            throw new SearchClientException(response.getMsg());
+            throw new SearchClientException(response.getStatus(), response.getMsg());
         }
     }
 
     @Override
-    public List<StoredDocument> getDocs(String idField, Set<String> ids,
-                                        Set<String> whiteListFields,
-                                        Set<String> blackListFields)
+    public void addRawDocuments(List<RawDocument> documents)
             throws IOException, SearchClientException {
+        String updateUrl = url + "/update/json";
+        if (commitWithin > 0) {
+            updateUrl += "?commitWithin=" + commitWithin;
+        }
+        JsonResponse response = postJson(updateUrl, new RawUpdateEntity(documents));
+        if (response.getStatus() != 200) {
+            throw new SearchClientException(response.getStatus(), response.getMsg());
+        }
+    }
+
+    @Override
+    public List<RawDocument> getRawDocs(String idField, Set<String> ids,
+                                        Set<String> excludeFields)
+            throws IOException, SearchClientException {
+        String json = GSON.toJson(buildGetDocsRequest(idField, ids, Collections.EMPTY_SET));
+        byte[] bytes = postJsonForBytes(url + "/select", json);
+        List<RawDocument> documents = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(bytes), StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"response".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!"docs".equals(reader.nextName())) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        documents.add(RawDocument.read(reader, idField, null, excludeFields));
+                    }
+                    reader.endArray();
+                }
+                reader.endObject();
+            }
+            reader.endObject();
+        }
+        return documents;
+    }
+
+    /**
+     * @param commitWithin milliseconds within which Solr should commit added documents;
+     *                     &lt;= 0 leaves commits to the collection's autoCommit settings.
+     *                     Default: {@link #DEFAULT_COMMIT_WITHIN}
+     */
+    public void setCommitWithin(int commitWithin) {
+        this.commitWithin = commitWithin;
+    }
+
+    private Map<String, String> buildGetDocsRequest(String idField, Set<String> ids,
+                                                    Set<String> whiteListFields) {
         StringBuilder sb = new StringBuilder();
         int i = 0;
         sb.append(idField + ":(");
@@ -380,7 +442,15 @@ public class SolrClient extends SearchClient {
             String fields = StringUtils.join(whiteListFields, ",");
             qRequest.put("fields", fields);
         }
-        String json = GSON.toJson(qRequest);
+        return qRequest;
+    }
+
+    @Override
+    public List<StoredDocument> getDocs(String idField, Set<String> ids,
+                                        Set<String> whiteListFields,
+                                        Set<String> blackListFields)
+            throws IOException, SearchClientException {
+        String json = GSON.toJson(buildGetDocsRequest(idField, ids, whiteListFields));
         JsonResponse fullResponse = postJson(url + "/select", json);
         if (fullResponse.getStatus() != 200) {
             LOG.warn("problem with " + url + " and " + json);
@@ -459,13 +529,35 @@ public class SolrClient extends SearchClient {
     }
 
     @Override
-    public IdGrabber getIdGrabber(ArrayBlockingQueue<Set<String>> ids, int batchSize,
+    public IdGrabber getIdGrabber(ArrayBlockingQueue<IdBatch> ids, int batchSize,
                                   int copierThreads, Collection<Query> filterQueries)
             throws IOException, SearchClientException {
         return new SolrIdGrabber(getDefaultIdField(), ids,
                 batchSize, copierThreads, filterQueries);
     }
 
+    /**
+     * Partitions the ids with Solr's hash query parser on the id field
+     * (requires Solr &gt;= 5.1).  Each partition is enumerated in id order,
+     * so the grabbers are always resumable.
+     */
+    @Override
+    public List<IdGrabber> getIdGrabbers(ArrayBlockingQueue<IdBatch> ids, int batchSize,
+                                         int copierThreads, Collection<Query> filterQueries,
+                                         int numPartitions, boolean resumable)
+            throws IOException, SearchClientException {
+        if (numPartitions < 2) {
+            return super.getIdGrabbers(ids, batchSize, copierThreads,
+                    filterQueries, numPartitions, resumable);
+        }
+        List<IdGrabber> grabbers = new ArrayList<>();
+        for (int i = 0; i < numPartitions; i++) {
+            grabbers.add(new SolrIdGrabber(getDefaultIdField(), ids,
+                    batchSize, copierThreads, filterQueries));
+        }
+        return partition(grabbers, resumable);
+    }
+
     @Override
     public Set<String> getSystemInternalFields() {
         return SYS_INTERNAL_FIELDS;
@@ -533,9 +625,14 @@ public class SolrClient extends SearchClient {
         return termDFList;
     }
 
+    /**
+     * Pages through the ids sorted by the id field, so the enumeration
+     * is always resumable: a resumed grabber adds a range filter
+     * for ids after the last key.
+     */
     class SolrIdGrabber extends IdGrabber {
 
-        public SolrIdGrabber(String idField, ArrayBlockingQueue<Set<String>> ids,
+        public SolrIdGrabber(String idField, ArrayBlockingQueue<IdBatch> ids,
                              int batchSize, int copierThreads,
                              Collection<Query> filterQueries) {
             super(idField, ids, batchSize, copierThreads, filterQueries);
@@ -547,25 +644,30 @@ public class SolrClient extends SearchClient {
             int totalAdded = 0;
             int idSize = 10000;
             try {
+                if (resumeAfter != null) {
+                    LOG.info("resuming partition " + partition + " after id: " + resumeAfter);
+                }
+                List<Query> fqs = getIdFilterQueries(idField, filterQueries, resumeAfter,
+                        partition, numPartitions);
                 QueryRequest queryRequest =
-                        buildQueryRequest(idField, start, idSize, filterQueries);
+                        buildQueryRequest(idField, start, idSize, fqs);
                 SearchResultSet rs = search(queryRequest);
                 while (rs.size() > 0) {
                     Set<String> set = new HashSet<>();
                     for (int i = 0; i < rs.size(); i++) {
                         set.add(rs.get(i));
                         if (set.size() > batchSize) {
-                            totalAdded += addSet(set);
+                            totalAdded += addBatch(set, rs.get(i));
                             set = new HashSet<>();
                         }
                     }
                     if (set.size() > 0) {
-                        totalAdded += addSet(set);
+                        totalAdded += addBatch(set, rs.get(rs.size() - 1));
                     }
                     LOG.info("ids added: " + totalAdded);
                     start += idSize;
                     queryRequest = buildQueryRequest(idField, start, idSize,
-                            filterQueries);
+                            fqs);
                     rs = search(queryRequest);
                 }
                 LOG.debug("id grabber is finishing" + start);
@@ -587,17 +689,71 @@ public class SolrClient extends SearchClient {
             queryRequest.addFieldsToRetrieve(idField);
             return queryRequest;
         }
+    }
+
+    /**
+     * @return the filter queries plus a range filter for ids after
+     * <code>resumeAfter</code> and, if there's more than one partition,
+     * a hash filter for this partition's ids
+     */
+    static List<Query> getIdFilterQueries(String idField, Collection<Query> filterQueries,
+                                          String resumeAfter, int partition,
+                                          int numPartitions) {
+        List<Query> fqs = new ArrayList<>(filterQueries);
+        if (resumeAfter != null) {
+            fqs.add(new LuceneQuery(idField,
+                    idField + ":{\"" + escapeQuoted(resumeAfter) + "\" TO *]"));
+        }
+        if (numPartitions > 1) {
+            //nested so that the local params go to the hash parser
+            fqs.add(new LuceneQuery(idField, "_query_:\"{!hash workers=" + numPartitions +
+                    " worker=" + partition + " partitionKeys=" + idField + "}\""));
+        }
+        return fqs;
+    }
+
+    private static String escapeQuoted(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Streams the raw documents as a json array
+     */
+    private static class RawUpdateEntity extends JsonStreamingEntity {
+        private final List<RawDocument> documents;
+
+        RawUpdateEntity(List<RawDocument> documents) {
+            this.documents = documents;
+        }
+
+        @Override
+        void write(Writer writer, JsonWriter jsonWriter) throws IOException {
+            jsonWriter.beginArray();
+            for (RawDocument document : documents) {
+                jsonWriter.jsonValue(document.getJson());
+            }
+            jsonWriter.endArray();
+        }
+    }
+
+    /**
+     * Streams the json array of documents for an update request
+     * without building the body in memory.
+     */
+    private static class UpdateEntity extends JsonStreamingEntity {
+        private final List<StoredDocument> documents;
 
+        UpdateEntity(List<StoredDocument> documents) {
+            this.documents = documents;
+        }
 
-        private int addSet(Set<String> set) throws InterruptedException {
-            int sz = set.size();
-            boolean added = ids.offer(set, 1, TimeUnit.SECONDS);
-            LOG.debug("id adder: " + added + " " + ids.size());
-            while (!added) {
-                added = ids.offer(set, 1, TimeUnit.SECONDS);
-                LOG.debug("waiting to add");
+        @Override
+        void write(Writer writer, JsonWriter jsonWriter) throws IOException {
+            jsonWriter.beginArray();
+            for (StoredDocument sd : documents) {
+                sd.write(jsonWriter, null);
             }
-            return sz;
+            jsonWriter.endArray();
         }
     }
 }
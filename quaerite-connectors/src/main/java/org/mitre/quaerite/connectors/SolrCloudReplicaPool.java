@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.log4j.Logger;
+import org.mitre.quaerite.core.util.JsonUtil;
+
+/**
+ * Replica pool for a SolrCloud collection that is populated from the
+ * collections API's <code>CLUSTERSTATUS</code>.  Only nodes that are live
+ * and that host an active replica of the collection are used.
+ * <p>
+ * When a node is ejected, the cluster status is re-read in the background
+ * (at most once every {@link #MIN_REFRESH_INTERVAL_MILLIS}).
+ */
+class SolrCloudReplicaPool extends ReplicaPool {
+
+    static Logger LOG = Logger.getLogger(SolrCloudReplicaPool.class);
+
+    private static final long MIN_REFRESH_INTERVAL_MILLIS = 10000;
+
+    private static final ExecutorService REFRESHER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "solrcloud-replica-refresher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String collection;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private volatile long lastRefresh = System.currentTimeMillis();
+
+    private SolrCloudReplicaPool(String collection, List<String> origins) {
+        super(origins);
+        this.collection = collection;
+    }
+
+    /**
+     * @param url url of a solr collection, e.g. http://localhost:8983/solr/tmdb
+     * @return a pool of the nodes hosting active replicas of the collection or
+     * <code>null</code> if the collection couldn't be found in the cluster status
+     */
+    static SolrCloudReplicaPool discover(String url) throws SearchClientException, IOException {
+        String collection = getCollection(url);
+        List<String> origins = readActiveOrigins(ReplicaPool.getOrigin(url), collection);
+        if (origins.size() == 0) {
+            LOG.warn("Couldn't find any active replicas for " + collection +
+                    "; sending all requests to " + url);
+            return null;
+        }
+        LOG.info("found active replicas for " + collection + ": " + origins);
+        return new SolrCloudReplicaPool(collection, origins);
+    }
+
+    @Override
+    protected void onEjection(Replica replica) {
+        if (System.currentTimeMillis() - lastRefresh < MIN_REFRESH_INTERVAL_MILLIS) {
+            return;
+        }
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        REFRESHER.submit(() -> {
+            try {
+                refresh();
+            } finally {
+                lastRefresh = System.currentTimeMillis();
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private void refresh() {
+        //ask each of the nodes we know about until one answers
+        for (String origin : getOrigins()) {
+            try {
+                List<String> origins = readActiveOrigins(origin, collection);
+                if (origins.size() > 0) {
+                    LOG.info("refreshed active replicas for " + collection + ": " + origins);
+                    setOrigins(origins);
+                    return;
+                }
+            } catch (SearchClientException | IOException e) {
+                LOG.warn("couldn't read cluster status from " + origin, e);
+            }
+        }
+    }
+
+    static List<String> readActiveOrigins(String origin, String collection)
+            throws SearchClientException, IOException {
+        String statusUrl = origin + "/solr/admin/collections?action=CLUSTERSTATUS&wt=json&collection="
+                + SearchClient.encode(collection);
+        byte[] bytes = HttpUtils.get(statusUrl);
+        try (Reader reader = new InputStreamReader(
+                new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)) {
+            JsonObject cluster = new JsonParser().parse(reader)
+                    .getAsJsonObject().getAsJsonObject("cluster");
+            return parseActiveOrigins(cluster, collection);
+        }
+    }
+
+    static List<String> parseActiveOrigins(JsonObject cluster, String collection) {
+        Set<String> liveNodes = new HashSet<>();
+        if (cluster.has("live_nodes")) {
+            liveNodes.addAll(JsonUtil.jsonArrToStringList(cluster.get("live_nodes")));
+        }
+        JsonObject collections = cluster.getAsJsonObject("collections");
+        if (collections == null || !collections.has(collection)) {
+            return new ArrayList<>();
+        }
+        JsonObject shards = collections.getAsJsonObject(collection).getAsJsonObject("shards");
+        Set<String> origins = new LinkedHashSet<>();
+        for (Map.Entry<String, JsonElement> shard : shards.entrySet()) {
+            JsonObject replicas = shard.getValue().getAsJsonObject().getAsJsonObject("replicas");
+            if (replicas == null) {
+                continue;
+            }
+            for (Map.Entry<String, JsonElement> e : replicas.entrySet()) {
+                JsonElement replica = e.getValue();
+                String state = JsonUtil.getPrimitive(replica, "state", "");
+                String nodeName = JsonUtil.getPrimitive(replica, "node_name", "");
+                String baseUrl = JsonUtil.getPrimitive(replica, "base_url", "");
+                if ("active".equals(state) && baseUrl.length() > 0
+                        && (liveNodes.size() == 0 || liveNodes.contains(nodeName))) {
+                    origins.add(ReplicaPool.getOrigin(baseUrl));
+                }
+            }
+        }
+        return new ArrayList<>(origins);
+    }
+
+    //http://localhost:8983/solr/tmdb -> tmdb
+    static String getCollection(String url) {
+        String path = url.substring(ReplicaPool.getOrigin(url).length());
+        String[] parts = path.split("/");
+        for (int i = 0; i < parts.length - 1; i++) {
+            if ("solr".equals(parts[i])) {
+                return parts[i + 1];
+            }
+        }
+        throw new IllegalArgumentException("Couldn't find collection name in: " + url);
+    }
+}
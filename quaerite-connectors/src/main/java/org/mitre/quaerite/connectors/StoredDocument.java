@@ -16,15 +16,45 @@
  */
 package org.mitre.quaerite.connectors;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.google.gson.stream.JsonWriter;
 import org.apache.commons.lang3.StringUtils;
 
+/**
+ * A document's stored fields.  Each value is a String, and fields with
+ * more than one value are returned as a List of Strings.
+ * <p>
+ * Many of these are held in memory while copying an index, so the fields
+ * are kept in parallel arrays rather than a map, and the field names are
+ * shared across documents.  {@link #getFields()} is a read-only view over
+ * the arrays that creates the lists for multivalued fields only when they
+ * are accessed.
+ */
 public class StoredDocument {
-    Map<String, Object> fields = new LinkedHashMap<>();
+
+    //caps the shared field names so that dynamic fields can't grow it without bound
+    private static final int MAX_SHARED_NAMES = 10000;
+    private static final Map<String, String> SHARED_NAMES = new ConcurrentHashMap<>();
+    private static final int INITIAL_CAPACITY = 8;
+
+    //names[i] has counts[i] values; values[i] is a String if counts[i] == 1,
+    //otherwise a String[] with room for at least counts[i] values
+    private String[] names = new String[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    private Map<String, Object> view;
 
     public void addNonBlankField(String field, List<String> values) {
         if (values == null) {
@@ -39,37 +69,201 @@ public class StoredDocument {
         if (StringUtils.isBlank(value)) {
             return;
         }
-        Object values;
-        if (fields.containsKey(field)) {
-            values = fields.get(field);
-            if (values instanceof String) {
-                List<String> tmp = new ArrayList<>();
-                tmp.add((String)values);
-                tmp.add(value);
-                fields.put(field, tmp);
-            } else {
-                ((List)values).add(value);
-            }
-        } else {
-            fields.put(field, value);
+        int i = indexOf(field);
+        if (i < 0) {
+            append(share(field), value, 1);
+            return;
         }
+        if (counts[i] == 1) {
+            String[] arr = new String[4];
+            arr[0] = (String) values[i];
+            values[i] = arr;
+        } else if (counts[i] == ((String[]) values[i]).length) {
+            values[i] = Arrays.copyOf((String[]) values[i], counts[i] * 2);
+        }
+        ((String[]) values[i])[counts[i]++] = value;
     }
 
+    /**
+     * @return a read-only view of the fields in the order they were added
+     */
     public Map<String, Object> getFields() {
-        return fields;
+        if (view == null) {
+            view = new FieldsView();
+        }
+        return view;
+    }
+
+    /**
+     * @return rough size of the document when serialized as json, in characters
+     */
+    public long getEstimatedSize() {
+        long size = 2;
+        for (int i = 0; i < this.size; i++) {
+            size += names[i].length() + 4;
+            if (counts[i] == 1) {
+                size += ((String) values[i]).length() + 2;
+            } else {
+                String[] arr = (String[]) values[i];
+                for (int j = 0; j < counts[i]; j++) {
+                    size += arr[j].length() + 3;
+                }
+                size += 2;
+            }
+        }
+        return size;
     }
 
     @Override
     public String toString() {
         return "StoredDocument{" +
-                "fields=" + fields +
+                "fields=" + getFields() +
                 '}';
     }
 
     public void rename(String srcIdField, String destIdField) {
-        Object value = fields.remove(srcIdField);
-        if (value != null) {
-            fields.put(destIdField, value);
+        int src = indexOf(srcIdField);
+        if (src < 0) {
+            return;
+        }
+        Object value = values[src];
+        int count = counts[src];
+        remove(src);
+        int dest = indexOf(destIdField);
+        if (dest < 0) {
+            append(share(destIdField), value, count);
+        } else {
+            values[dest] = value;
+            counts[dest] = count;
+        }
+    }
+
+    /**
+     * Writes the fields as a json object without building the map view
+     *
+     * @param skipField field to leave out; may be <code>null</code>
+     */
+    void write(JsonWriter jsonWriter, String skipField) throws IOException {
+        jsonWriter.beginObject();
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(skipField)) {
+                continue;
+            }
+            jsonWriter.name(names[i]);
+            if (counts[i] == 1) {
+                jsonWriter.value((String) values[i]);
+            } else {
+                String[] arr = (String[]) values[i];
+                jsonWriter.beginArray();
+                for (int j = 0; j < counts[i]; j++) {
+                    jsonWriter.value(arr[j]);
+                }
+                jsonWriter.endArray();
+            }
+        }
+        jsonWriter.endObject();
+    }
+
+    private int indexOf(Object field) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void append(String field, Object value, int count) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        names[size] = field;
+        values[size] = value;
+        counts[size] = count;
+        size++;
+    }
+
+    private void remove(int i) {
+        int toMove = size - i - 1;
+        System.arraycopy(names, i + 1, names, i, toMove);
+        System.arraycopy(values, i + 1, values, i, toMove);
+        System.arraycopy(counts, i + 1, counts, i, toMove);
+        size--;
+        names[size] = null;
+        values[size] = null;
+    }
+
+    private Object getValue(int i) {
+        if (counts[i] == 1) {
+            return values[i];
+        }
+        return Collections.unmodifiableList(
+                Arrays.asList((String[]) values[i]).subList(0, counts[i]));
+    }
+
+    private static String share(String field) {
+        String shared = SHARED_NAMES.get(field);
+        if (shared != null) {
+            return shared;
+        }
+        if (SHARED_NAMES.size() >= MAX_SHARED_NAMES) {
+            return field;
+        }
+        shared = SHARED_NAMES.putIfAbsent(field, field);
+        return (shared == null) ? field : shared;
+    }
+
+    private class FieldsView extends AbstractMap<String, Object> {
+
+        @Override
+        public Object get(Object key) {
+            int i = indexOf(key);
+            return (i < 0) ? null : getValue(i);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) > -1;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<String, Object> e = new SimpleImmutableEntry<>(
+                                    names[next], getValue(next));
+                            next++;
+                            return e;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
         }
     }
 }
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.mitre.quaerite.core.FacetResult;
+import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.queries.Query;
+import org.mitre.quaerite.core.stats.TokenDF;
+
+/**
+ * Client that doesn't talk to a server; tests override what they need.
+ */
+class StubSearchClient extends SearchClient {
+
+    @Override
+    public SearchResultSet search(QueryRequest query) throws SearchClientException, IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public FacetResult facet(QueryRequest query) throws SearchClientException, IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addDocuments(List<StoredDocument> buildDocuments)
+            throws IOException, SearchClientException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<StoredDocument> getDocs(String idField, Set<String> ids,
+                                        Set<String> whiteListFields,
+                                        Set<String> blackListFields)
+            throws IOException, SearchClientException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Collection<? extends String> getCopyFields() throws IOException, SearchClientException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getDefaultIdField() throws IOException, SearchClientException {
+        return "id";
+    }
+
+    @Override
+    public void deleteAll() throws SearchClientException, IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public IdGrabber getIdGrabber(ArrayBlockingQueue<IdBatch> ids, int batchSize,
+                                  int copierThreads, Collection<Query> filterQueries)
+            throws IOException, SearchClientException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Set<String> getSystemInternalFields() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<String> analyze(String field, String string)
+            throws IOException, SearchClientException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<TokenDF> getTerms(String field, String lower, int limit, int minCount)
+            throws IOException, SearchClientException {
+        throw new UnsupportedOperationException();
+    }
+}
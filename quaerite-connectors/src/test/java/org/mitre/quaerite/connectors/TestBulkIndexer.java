@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TestBulkIndexer {
+
+    @Test
+    public void testBatches() throws Exception {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        SearchClient client = new StubSearchClient() {
+            @Override
+            public void addDocuments(List<StoredDocument> documents) {
+                batchSizes.add(documents.size());
+            }
+        };
+        BulkIndexer bulkIndexer = new BulkIndexer(client, 2, 10, 2);
+        for (int i = 0; i < 25; i++) {
+            bulkIndexer.add(newDocument(i));
+        }
+        bulkIndexer.close();
+        assertEquals(25, bulkIndexer.getIndexed());
+        assertEquals(3, batchSizes.size());
+        assertEquals(25, batchSizes.stream().mapToInt(Integer::intValue).sum());
+        assertEquals(0, bulkIndexer.getFailures().size());
+
+        //closing again is a no-op
+        bulkIndexer.close();
+        assertThrows(IllegalStateException.class, () -> bulkIndexer.add(newDocument(25)));
+    }
+
+    @Test
+    public void testFailuresInOrder() throws Exception {
+        SearchClient client = new StubSearchClient() {
+            @Override
+            public void addDocuments(List<StoredDocument> documents)
+                    throws SearchClientException {
+                int first = Integer.parseInt((String) documents.get(0).getFields().get("id"));
+                //fail the second and fourth batches
+                if (first == 10 || first == 30) {
+                    throw new SearchClientException(400, "bad batch " + first);
+                }
+            }
+        };
+        BulkIndexer bulkIndexer = new BulkIndexer(client, 3, 10, 4);
+        for (int i = 0; i < 45; i++) {
+            bulkIndexer.add(newDocument(i));
+        }
+        SearchClientException e = assertThrows(SearchClientException.class, bulkIndexer::close);
+        assertTrue(e.getMessage().contains("batch 1 "), e.getMessage());
+        assertEquals("bad batch 10", e.getCause().getMessage());
+        //the other batches were still indexed
+        assertEquals(25, bulkIndexer.getIndexed());
+
+        List<BulkIndexer.Failure> failures = bulkIndexer.getFailures();
+        assertEquals(2, failures.size());
+        assertEquals(1, failures.get(0).getSeq());
+        assertEquals(10, failures.get(0).getFirstDocument());
+        assertEquals(3, failures.get(1).getSeq());
+        assertEquals(30, failures.get(1).getFirstDocument());
+        assertEquals(10, failures.get(1).getSize());
+    }
+
+    private static StoredDocument newDocument(int i) {
+        StoredDocument document = new StoredDocument();
+        document.addNonBlankField("id", Integer.toString(i));
+        return document;
+    }
+}
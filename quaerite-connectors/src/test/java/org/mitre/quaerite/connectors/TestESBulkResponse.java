@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.JsonParser;
+import org.apache.http.HttpEntity;
+import org.junit.jupiter.api.Test;
+
+public class TestESBulkResponse {
+
+    @Test
+    public void testNoErrors() throws Exception {
+        String json = "{\"took\":3,\"errors\":false,\"items\":[" +
+                "{\"index\":{\"_id\":\"1\",\"status\":201}}]}";
+        assertEquals(0, ESClient.getBulkFailures(new JsonParser().parse(json), 1).size());
+    }
+
+    @Test
+    public void testItemFailures() throws Exception {
+        String json = "{\"took\":3,\"errors\":true,\"items\":[" +
+                "{\"index\":{\"_id\":\"1\",\"status\":201}}," +
+                "{\"index\":{\"_id\":\"2\",\"status\":429,\"error\":{" +
+                "\"type\":\"es_rejected_execution_exception\",\"reason\":\"queue full\"}}}," +
+                "{\"index\":{\"_id\":\"3\",\"status\":200}}," +
+                "{\"index\":{\"_id\":\"4\",\"status\":400,\"error\":{" +
+                "\"type\":\"mapper_parsing_exception\",\"reason\":\"bad date\"}}}]}";
+        Map<Integer, BulkFailureException.Failure> failures =
+                ESClient.getBulkFailures(new JsonParser().parse(json), 4);
+        assertEquals(2, failures.size());
+        assertEquals("2", failures.get(1).getId());
+        assertEquals(429, failures.get(1).getStatus());
+        assertEquals("es_rejected_execution_exception", failures.get(1).getType());
+        assertEquals("4", failures.get(3).getId());
+        assertEquals(400, failures.get(3).getStatus());
+        assertEquals("bad date", failures.get(3).getReason());
+        //the position of the failed document in the request
+        assertEquals(3, failures.get(3).getIndex());
+    }
+
+    @Test
+    public void testMissingItems() {
+        String json = "{\"took\":3,\"errors\":true,\"items\":[" +
+                "{\"index\":{\"_id\":\"1\",\"status\":201}}]}";
+        assertThrows(SearchClientException.class,
+                () -> ESClient.getBulkFailures(new JsonParser().parse(json), 2));
+    }
+
+    @Test
+    public void testRejectedItemsAreReported() throws Exception {
+        String rejected = "{\"index\":{\"_id\":\"%s\",\"status\":429,\"error\":{" +
+                "\"type\":\"es_rejected_execution_exception\",\"reason\":\"queue full\"}}}";
+        String created = "{\"index\":{\"_id\":\"%s\",\"status\":201}}";
+        //the first response rejects two of the three items; the retry indexes them
+        Queue<String> responses = new ConcurrentLinkedQueue<>();
+        responses.add("{\"took\":3,\"errors\":true,\"items\":[" +
+                String.format(Locale.US, created, "1") + "," +
+                String.format(Locale.US, rejected, "2") + "," +
+                String.format(Locale.US, rejected, "3") + "]}");
+        responses.add("{\"took\":3,\"errors\":false,\"items\":[" +
+                String.format(Locale.US, created, "2") + "," +
+                String.format(Locale.US, created, "3") + "]}");
+        ESClient client = new ESClient("http://localhost:9200/idx") {
+            @Override
+            protected JsonResponse postJson(String url, HttpEntity entity) {
+                return new JsonResponse(200, new JsonParser().parse(responses.poll()));
+            }
+        };
+        AtomicInteger numRejected = new AtomicInteger();
+        client.setRejectionListener(numRejected::addAndGet);
+        List<StoredDocument> docs = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            StoredDocument doc = new StoredDocument();
+            doc.addNonBlankField("_id", Integer.toString(i));
+            docs.add(doc);
+        }
+        client.addDocuments(docs);
+        assertEquals(2, numRejected.get());
+        assertEquals(0, responses.size());
+    }
+}
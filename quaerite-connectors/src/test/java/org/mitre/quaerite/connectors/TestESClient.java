@@ -302,7 +302,7 @@ public class TestESClient {
     @Test
     public void testIDGrabbing() throws Exception {
         SearchClient searchClient = SearchClientFactory.getClient(TMDB_URL);
-        final ArrayBlockingQueue<Set<String>> ids = new ArrayBlockingQueue<>(10);
+        final ArrayBlockingQueue<IdBatch> ids = new ArrayBlockingQueue<>(10);
         IdGrabber grabber = searchClient.getIdGrabber(ids, 1000, 1, Collections.EMPTY_SET);
         Thread producer = new Thread(new FutureTask(grabber));
         producer.start();
@@ -311,16 +311,16 @@ public class TestESClient {
             @Override
             public void run() {
                 while (true) {
-                    Set<String> set = null;
+                    IdBatch batch = null;
                     try {
-                        set = ids.poll(1, TimeUnit.SECONDS);
+                        batch = ids.poll(1, TimeUnit.SECONDS);
                     } catch (InterruptedException e) {
                         //swallow
                     }
-                    if (set != null) {
-                        idCounter.addAndGet(set.size());
+                    if (batch != null) {
+                        idCounter.addAndGet(batch.getIds().size());
                     }
-                    if (set != null && set.size() == 0) {
+                    if (batch != null && batch.isPoison()) {
                         break;
                     }
                 }
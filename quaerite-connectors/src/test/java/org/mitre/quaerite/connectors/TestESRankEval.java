@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.core.JudgedResults;
+import org.mitre.quaerite.core.JudgmentList;
+import org.mitre.quaerite.core.Judgments;
+import org.mitre.quaerite.core.QueryInfo;
+import org.mitre.quaerite.core.QueryStrings;
+import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.queries.LuceneQuery;
+import org.mitre.quaerite.core.scorers.PrecisionAtN;
+
+public class TestESRankEval {
+
+    private static final String RESPONSE = "{\"metric_score\":0.667," +
+            "\"details\":{\"0\":{\"metric_score\":0.6666666666666666," +
+            "\"unrated_docs\":[{\"_index\":\"tmdb\",\"_id\":\"c\"}]," +
+            "\"hits\":[" +
+            "{\"hit\":{\"_index\":\"tmdb\",\"_id\":\"a\",\"_score\":2.1},\"rating\":3}," +
+            "{\"hit\":{\"_index\":\"tmdb\",\"_id\":\"c\",\"_score\":1.7},\"rating\":null}," +
+            "{\"hit\":{\"_index\":\"tmdb\",\"_id\":\"b\",\"_score\":0.4},\"rating\":1}]," +
+            "\"metric_details\":{\"precision\":" +
+            "{\"relevant_docs_retrieved\":2,\"docs_retrieved\":3}}}}," +
+            "\"failures\":{\"1\":{\"error\":{\"type\":\"parsing_exception\"," +
+            "\"reason\":\"bad query\"}}}}";
+
+    @Test
+    public void testRequest() throws Exception {
+        ESClient client = new ESClient("http://localhost:9200/tmdb");
+        List<Judgments> judgments = getJudgments();
+        List<QueryRequest> requests = new ArrayList<>();
+        for (Judgments j : judgments) {
+            requests.add(new QueryRequest(new LuceneQuery("title",
+                    j.getQueryStrings().getQuery()), null, "_id"));
+        }
+        JsonObject root = (JsonObject) new JsonParser().parse(
+                client.buildRankEvalRequest(requests, judgments, 10));
+        assertEquals(10,
+                root.getAsJsonObject("metric").getAsJsonObject("precision").get("k").getAsInt());
+        JsonArray ratedRequests = root.getAsJsonArray("requests");
+        assertEquals(2, ratedRequests.size());
+
+        JsonObject first = ratedRequests.get(0).getAsJsonObject();
+        assertEquals("0", first.get("id").getAsString());
+        assertEquals("psycho", first.getAsJsonObject("request").getAsJsonObject("query")
+                .getAsJsonObject("query_string").get("query").getAsString());
+        JsonArray ratings = first.getAsJsonArray("ratings");
+        assertEquals(2, ratings.size());
+        JsonObject rating = ratings.get(0).getAsJsonObject();
+        assertEquals("tmdb", rating.get("_index").getAsString());
+        assertEquals("a", rating.get("_id").getAsString());
+        //ratings are rounded to integers
+        assertEquals("3", rating.get("rating").toString());
+        assertEquals("1", ratedRequests.get(1).getAsJsonObject().get("id").getAsString());
+
+        assertThrows(IllegalArgumentException.class, () ->
+                client.buildRankEvalRequest(requests, judgments.subList(0, 1), 10));
+    }
+
+    @Test
+    public void testResponse() throws Exception {
+        List<Judgments> judgments = getJudgments();
+        JsonElement root = new JsonParser().parse(RESPONSE);
+        List<SearchResultSet> results = ESClient.getRankEvalResults(root, judgments);
+        assertEquals(2, results.size());
+        SearchResultSet resultSet = results.get(0);
+        assertEquals(3, resultSet.size());
+        assertEquals("a", resultSet.get(0));
+        assertEquals("c", resultSet.get(1));
+        assertEquals("b", resultSet.get(2));
+        assertEquals(-1, resultSet.getQueryTime());
+        //failed requests don't have results
+        assertNull(results.get(1));
+
+        //our precision agrees with the metric_score elasticsearch
+        //computed from the same hits
+        JudgmentList judgmentList = new JudgmentList();
+        judgments.forEach(judgmentList::addJudgments);
+        PrecisionAtN precision = new PrecisionAtN(10);
+        precision.reset(judgmentList);
+        precision.score(new JudgedResults(judgments.get(0), resultSet));
+        double metricScore = root.getAsJsonObject().getAsJsonObject("details")
+                .getAsJsonObject("0").get("metric_score").getAsDouble();
+        assertEquals(metricScore, precision.getScore(judgments.get(0).getQueryInfo()), 0.0001);
+    }
+
+    private static List<Judgments> getJudgments() {
+        List<Judgments> judgmentsList = new ArrayList<>();
+        Judgments judgments = newJudgments("1", "psycho");
+        judgments.addJudgment("a", 2.9);
+        judgments.addJudgment("b", 1.0);
+        judgmentsList.add(judgments);
+        judgments = newJudgments("2", "vertigo");
+        judgments.addJudgment("d", 2.0);
+        judgmentsList.add(judgments);
+        return Collections.unmodifiableList(judgmentsList);
+    }
+
+    private static Judgments newJudgments(String queryId, String query) {
+        QueryStrings queryStrings = new QueryStrings();
+        queryStrings.setQuery(query);
+        return new Judgments(new QueryInfo(queryId, "set1", queryStrings, 1));
+    }
+}
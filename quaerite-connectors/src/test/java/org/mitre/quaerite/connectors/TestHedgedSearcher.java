@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.core.SearchResultSet;
+
+public class TestHedgedSearcher {
+
+    @Test
+    public void testLatencyTracker() {
+        HedgedSearcher.LatencyTracker tracker = new HedgedSearcher.LatencyTracker();
+        for (int i = 1; i < 50; i++) {
+            tracker.add(i);
+        }
+        //not enough samples
+        assertEquals(-1, tracker.getP95());
+        for (int i = 50; i <= 100; i++) {
+            tracker.add(i);
+        }
+        assertEquals(95, tracker.getP95());
+
+        //only the most recent 1000 latencies count
+        for (int i = 0; i < 1000; i++) {
+            tracker.add(1000);
+        }
+        assertEquals(1000, tracker.getP95());
+    }
+
+    @Test
+    public void testRetryBudget() throws Exception {
+        try (HedgedSearcher searcher = new HedgedSearcher(false, 3, 0.5)) {
+            //the budget starts with 10 tokens
+            for (int i = 0; i < 10; i++) {
+                assertTrue(searcher.withdrawRetryToken());
+            }
+            assertFalse(searcher.withdrawRetryToken());
+
+            //two successes earn one retry
+            searcher.depositRetryToken();
+            assertFalse(searcher.withdrawRetryToken());
+            searcher.depositRetryToken();
+            assertTrue(searcher.withdrawRetryToken());
+            assertFalse(searcher.withdrawRetryToken());
+
+            //the budget is capped
+            for (int i = 0; i < 1000; i++) {
+                searcher.depositRetryToken();
+            }
+            for (int i = 0; i < 100; i++) {
+                assertTrue(searcher.withdrawRetryToken());
+            }
+            assertFalse(searcher.withdrawRetryToken());
+        }
+    }
+
+    @Test
+    public void testIsTransient() {
+        assertTrue(HedgedSearcher.isTransient(new IOException("connection reset")));
+        assertTrue(HedgedSearcher.isTransient(
+                new SearchClientException("http://localhost", new IOException())));
+        assertTrue(HedgedSearcher.isTransient(new SearchClientException(503, "unavailable")));
+        assertTrue(HedgedSearcher.isTransient(new SearchClientException(429, "too many")));
+        assertFalse(HedgedSearcher.isTransient(new SearchClientException(400, "bad request")));
+        //e.g. a response that couldn't be parsed
+        assertFalse(HedgedSearcher.isTransient(new SearchClientException("bad json")));
+    }
+
+    @Test
+    public void testRetries() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        SearchClient client = new StubSearchClient() {
+            @Override
+            public SearchResultSet search(QueryRequest query) throws SearchClientException {
+                if (calls.incrementAndGet() == 1) {
+                    throw new SearchClientException(503, "unavailable");
+                }
+                return newResultSet(1);
+            }
+        };
+        try (HedgedSearcher searcher = new HedgedSearcher(false, 2, 0.1)) {
+            searcher.search(client, null);
+            assertEquals(2, calls.get());
+            assertEquals(1, searcher.getRetries());
+        }
+
+        //not transient, so no retry
+        calls.set(0);
+        SearchClient badResponse = new StubSearchClient() {
+            @Override
+            public SearchResultSet search(QueryRequest query) throws SearchClientException {
+                calls.incrementAndGet();
+                throw new SearchClientException("bad json");
+            }
+        };
+        try (HedgedSearcher searcher = new HedgedSearcher(false, 2, 0.1)) {
+            try {
+                searcher.search(badResponse, null);
+            } catch (SearchClientException e) {
+                //expected
+            }
+            assertEquals(1, calls.get());
+            assertEquals(0, searcher.getRetries());
+        }
+    }
+
+    @Test
+    public void testHedge() throws Exception {
+        int warmup = 50;
+        long fastMillis = 20;
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch cancelled = new CountDownLatch(1);
+        SearchClient client = new StubSearchClient() {
+            @Override
+            public SearchResultSet search(QueryRequest query) throws IOException {
+                int call = calls.incrementAndGet();
+                try {
+                    if (call <= warmup) {
+                        //long enough that the primary is running before a hedge is sent
+                        Thread.sleep(5);
+                        return newResultSet(0);
+                    }
+                    //the first request after the warmup stalls
+                    Thread.sleep(call == warmup + 1 ? 60000 : fastMillis);
+                } catch (InterruptedException e) {
+                    cancelled.countDown();
+                    throw new IOException(e);
+                }
+                //the attempt reports a single-request latency
+                return newResultSet(0);
+            }
+        };
+        try (HedgedSearcher searcher = new HedgedSearcher(true, 0, 0.1)) {
+            for (int i = 0; i < warmup; i++) {
+                searcher.search(client, null);
+            }
+            assertEquals(0, searcher.getHedged());
+
+            SearchResultSet searchResultSet = searcher.search(client, null);
+            assertEquals(1, searcher.getHedged());
+            assertEquals(1, searcher.getHedgeWins());
+            //the caller waited for the hedge delay and the duplicate
+            assertTrue(searchResultSet.getElapsedTime() >= fastMillis);
+            assertEquals(1, searchResultSet.size());
+            //the stalled request was cancelled
+            assertTrue(cancelled.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static SearchResultSet newResultSet(long elapsed) {
+        return new SearchResultSet(1, 0, elapsed, Collections.singletonList("1"));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.core.queries.LuceneQuery;
+import org.mitre.quaerite.core.queries.Query;
+
+public class TestIdPartitions {
+
+    @Test
+    public void testPartition() {
+        ArrayBlockingQueue<IdBatch> queue = new ArrayBlockingQueue<>(10);
+        List<IdGrabber> grabbers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            grabbers.add(new IdGrabber("id", queue, 10, 2, Collections.EMPTY_LIST) {
+                @Override
+                public Integer call() {
+                    return -1;
+                }
+            });
+        }
+        SearchClient.partition(grabbers, true);
+        //each grabber has its own partition, and together they cover 0 to 3
+        Set<Integer> partitions = new HashSet<>();
+        for (IdGrabber grabber : grabbers) {
+            assertTrue(partitions.add(grabber.partition));
+            assertEquals(4, grabber.numPartitions);
+            assertTrue(grabber.resumable);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(0, 1, 2, 3)), partitions);
+
+        //only the last grabber to finish adds the poison, once per copier
+        for (int i = 0; i < 3; i++) {
+            grabbers.get(i).addPoison();
+            assertEquals(0, queue.size());
+        }
+        grabbers.get(3).addPoison();
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testSolrHashFilters() {
+        Query fq = new LuceneQuery("", "type:movie");
+        Set<String> hashFilters = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            List<Query> fqs = SolrClient.getIdFilterQueries("id",
+                    Collections.singletonList(fq), null, i, 3);
+            assertEquals(2, fqs.size());
+            assertEquals(fq, fqs.get(0));
+            String hash = ((LuceneQuery) fqs.get(1)).getQueryString();
+            assertTrue(hash.contains("{!hash workers=3 worker=" + i + " partitionKeys=id}"), hash);
+            hashFilters.add(hash);
+        }
+        assertEquals(3, hashFilters.size());
+
+        //a single partition isn't filtered
+        assertEquals(1, SolrClient.getIdFilterQueries("id",
+                Collections.singletonList(fq), null, 0, 1).size());
+
+        List<Query> resumed = SolrClient.getIdFilterQueries("id",
+                Collections.EMPTY_LIST, "a\"b", 1, 2);
+        assertEquals(2, resumed.size());
+        assertEquals("id:{\"a\\\"b\" TO *]", ((LuceneQuery) resumed.get(0)).getQueryString());
+    }
+
+    @Test
+    public void testESSlices() throws Exception {
+        ESClient client = new ESClient("http://localhost:9200/tmdb");
+        ArrayBlockingQueue<IdBatch> queue = new ArrayBlockingQueue<>(10);
+        List<IdGrabber> grabbers = client.getIdGrabbers(queue, 10, 2,
+                Collections.EMPTY_LIST, 3, false);
+        assertEquals(3, grabbers.size());
+        Set<Integer> sliceIds = new HashSet<>();
+        for (IdGrabber grabber : grabbers) {
+            Map<String, Object> q = ESClient.buildScrollQuery(10,
+                    grabber.partition, grabber.numPartitions);
+            Map<String, Object> slice = (Map<String, Object>) q.get("slice");
+            assertEquals(3, slice.get("max"));
+            sliceIds.add((Integer) slice.get("id"));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(0, 1, 2)), sliceIds);
+
+        assertFalse(ESClient.buildScrollQuery(10, 0, 1).containsKey("slice"));
+        //slices can't be combined with search_after
+        assertEquals(1, client.getIdGrabbers(queue, 10, 2,
+                Collections.EMPTY_LIST, 3, true).size());
+    }
+
+    @Test
+    public void testESResumeKeys() throws Exception {
+        ESClient client = new ESClient("http://localhost:9200/tmdb");
+        ArrayBlockingQueue<IdBatch> queue = new ArrayBlockingQueue<>(10);
+        IdGrabber grabber = client.getIdGrabber(queue, 10, 2, Collections.EMPTY_LIST);
+        grabber.setResumeAfter(null);
+        assertFalse(grabber.resumable);
+        //a point in time doesn't outlive the copy that opened it
+        assertThrows(IllegalArgumentException.class,
+                () -> grabber.setResumeAfter("_shard_doc:42"));
+        //id sort field keys can't be resumed in a point in time
+        assertThrows(IllegalArgumentException.class, () -> grabber.setResumeAfter("abc"));
+
+        client.setIdSortField("id_copy");
+        assertThrows(IllegalArgumentException.class,
+                () -> grabber.setResumeAfter("_shard_doc:42"));
+        grabber.setResumeAfter("abc");
+        assertTrue(grabber.resumable);
+        assertEquals("abc", grabber.resumeAfter);
+    }
+}
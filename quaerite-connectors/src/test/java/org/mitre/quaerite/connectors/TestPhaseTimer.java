@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.core.RequestTimings;
+import org.mitre.quaerite.core.SearchResultSet;
+
+public class TestPhaseTimer {
+
+    private static final long MS = 1000000;
+
+    @Test
+    public void testPhases() {
+        long start = 1000 * MS;
+        PhaseTimer timer = new PhaseTimer(start);
+        timer.getContext().setAttribute(PhaseTimer.CONNECT_NANOS, 2 * MS);
+        timer.getContext().setAttribute(PhaseTimer.SEND_START, start + 5 * MS);
+        timer.getContext().setAttribute(PhaseTimer.HEADERS_RECEIVED, start + 15 * MS);
+        timer.downloaded(start + 17 * MS);
+        RequestTimings timings = timer.parsed(start + 18 * MS);
+        //everything before sending that wasn't connecting was spent waiting for the pool
+        assertEquals(3000, timings.getPoolWait());
+        assertEquals(2000, timings.getConnect());
+        assertEquals(10000, timings.getTtfb());
+        assertEquals(2000, timings.getDownload());
+        assertEquals(1000, timings.getParse());
+        assertEquals(18000, timings.getTotal());
+    }
+
+    @Test
+    public void testMissingPhases() {
+        //a pooled connection that the client didn't record sending on,
+        //and a body that was parsed as it was read
+        long start = 1000 * MS;
+        PhaseTimer timer = new PhaseTimer(start);
+        RequestTimings timings = timer.parsed(start + 7 * MS);
+        assertEquals(0, timings.getPoolWait());
+        assertEquals(0, timings.getConnect());
+        assertEquals(7000, timings.getTtfb());
+        assertEquals(0, timings.getDownload());
+        assertEquals(0, timings.getParse());
+        assertEquals(7000, timings.getTotal());
+    }
+
+    @Test
+    public void testTimeDownload() throws Exception {
+        long start = System.nanoTime();
+        PhaseTimer timer = new PhaseTimer(start);
+        timer.getContext().setAttribute(PhaseTimer.HEADERS_RECEIVED, start);
+        try (InputStream is = timer.timeDownload(new ByteArrayInputStream(new byte[100]))) {
+            byte[] buffer = new byte[64];
+            while (is.read(buffer) > -1) {
+                //read to the end
+            }
+        }
+        Thread.sleep(20);
+        //the download ended at the end of the stream, not when parsing finished
+        RequestTimings timings = timer.parsed();
+        assertTrue(timings.getParse() >= 20000, "parse: " + timings.getParse());
+
+        timer = new PhaseTimer(start);
+        try (InputStream is = timer.timeDownload(new ByteArrayInputStream(new byte[100]))) {
+            is.read();
+        }
+        //never reached the end
+        assertEquals(0, timer.parsed().getParse());
+    }
+
+    @Test
+    public void testNoTimings() {
+        //failed requests and result sets from clients that don't record phases
+        assertNull(new JsonResponse(500, "server error").getTimings());
+        assertNull(new SearchResultSet(10, 5, 8, Collections.EMPTY_LIST).getTimings());
+    }
+}
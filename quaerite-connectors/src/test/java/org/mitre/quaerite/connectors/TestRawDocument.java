@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.util.Collections;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.jupiter.api.Test;
+
+public class TestRawDocument {
+
+    @Test
+    public void testRead() throws Exception {
+        String json = "{\"id\":\"1359\",\"title\":\"American Psycho\"," +
+                "\"_version_\":1637393431862362112,\"budget\":12345678901234567890," +
+                "\"cast\":[\"Christian Bale\",null],\"nested\":{\"a\":true}}";
+        RawDocument doc = RawDocument.read(new JsonReader(new StringReader(json)),
+                "id", null, Collections.singleton("_version_"));
+        assertEquals("1359", doc.getId());
+        assertEquals("{\"id\":\"1359\",\"title\":\"American Psycho\"," +
+                        "\"budget\":12345678901234567890," +
+                        "\"cast\":[\"Christian Bale\",null],\"nested\":{\"a\":true}}",
+                doc.getJson());
+    }
+}
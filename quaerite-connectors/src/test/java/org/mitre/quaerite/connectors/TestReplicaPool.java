@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Arrays;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+public class TestReplicaPool {
+
+    @Test
+    public void testLeastOutstanding() {
+        ReplicaPool pool = new ReplicaPool(Arrays.asList(
+                "http://solr1:8983", "http://solr2:8983/", "http://solr3:8983"));
+        ReplicaPool.Replica a = pool.acquire();
+        ReplicaPool.Replica b = pool.acquire();
+        ReplicaPool.Replica c = pool.acquire();
+        assertNotEquals(a.getOrigin(), b.getOrigin());
+        assertNotEquals(a.getOrigin(), c.getOrigin());
+        assertNotEquals(b.getOrigin(), c.getOrigin());
+
+        pool.release(b, true);
+        ReplicaPool.Replica d = pool.acquire();
+        assertEquals(b.getOrigin(), d.getOrigin());
+    }
+
+    @Test
+    public void testEjection() {
+        ReplicaPool pool = new ReplicaPool(Arrays.asList(
+                "http://solr1:8983", "http://solr2:8983"));
+        String bad = "http://solr1:8983";
+        //ties are rotated, so the bad replica gets picked every other request
+        for (int i = 0; i < 2 * ReplicaPool.FAILURES_TO_EJECT; i++) {
+            ReplicaPool.Replica r = pool.acquire();
+            pool.release(r, !r.getOrigin().equals(bad));
+        }
+        for (int i = 0; i < 10; i++) {
+            ReplicaPool.Replica r = pool.acquire();
+            assertNotEquals(bad, r.getOrigin());
+            pool.release(r, true);
+        }
+    }
+
+    @Test
+    public void testRoute() {
+        ReplicaPool pool = new ReplicaPool(Arrays.asList("https://es2:9200"));
+        ReplicaPool.Replica r = pool.acquire();
+        assertEquals("https://es2:9200/tmdb/_search",
+                ReplicaPool.route("http://es-lb:9200/tmdb/_search", r));
+    }
+
+    @Test
+    public void testSolrCloudClusterStatus() {
+        String json = "{\"live_nodes\":[\"solr1:8983_solr\",\"solr2:8983_solr\"]," +
+                "\"collections\":{\"tmdb\":{\"shards\":{" +
+                "\"shard1\":{\"replicas\":{" +
+                "\"core_node1\":{\"state\":\"active\",\"node_name\":\"solr1:8983_solr\"," +
+                "\"base_url\":\"http://solr1:8983/solr\"}," +
+                "\"core_node2\":{\"state\":\"recovering\",\"node_name\":\"solr2:8983_solr\"," +
+                "\"base_url\":\"http://solr2:8983/solr\"}}}," +
+                "\"shard2\":{\"replicas\":{" +
+                "\"core_node3\":{\"state\":\"active\",\"node_name\":\"solr2:8983_solr\"," +
+                "\"base_url\":\"http://solr2:8983/solr\"}," +
+                "\"core_node4\":{\"state\":\"active\",\"node_name\":\"solr3:8983_solr\"," +
+                "\"base_url\":\"http://solr3:8983/solr\"}}}}}}}";
+        JsonObject cluster = new JsonParser().parse(json).getAsJsonObject();
+        //solr3 isn't live
+        assertEquals(Arrays.asList("http://solr1:8983", "http://solr2:8983"),
+                SolrCloudReplicaPool.parseActiveOrigins(cluster, "tmdb"));
+        assertEquals("tmdb",
+                SolrCloudReplicaPool.getCollection("http://localhost:8983/solr/tmdb"));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.connectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Test;
+
+public class TestStoredDocument {
+
+    @Test
+    public void testFields() {
+        StoredDocument doc = new StoredDocument();
+        doc.addNonBlankField("id", "1");
+        doc.addNonBlankField("title", "Star Wars");
+        doc.addNonBlankField("empty", " ");
+        List<String> cast = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            cast.add("actor" + i);
+        }
+        doc.addNonBlankField("cast", cast);
+
+        Map<String, Object> fields = doc.getFields();
+        assertEquals(3, fields.size());
+        assertEquals("1", fields.get("id"));
+        assertEquals(cast, fields.get("cast"));
+        assertFalse(fields.containsKey("empty"));
+        assertNull(fields.get("empty"));
+        assertEquals(Arrays.asList("id", "title", "cast"), new ArrayList<>(fields.keySet()));
+        assertEquals("{id=1, title=Star Wars, cast=" + cast + "}", fields.toString());
+    }
+
+    @Test
+    public void testRename() {
+        StoredDocument doc = new StoredDocument();
+        doc.addNonBlankField("id", "1");
+        doc.addNonBlankField("title", "Star Wars");
+        doc.rename("id", "_id");
+        assertEquals(Arrays.asList("title", "_id"),
+                new ArrayList<>(doc.getFields().keySet()));
+        assertEquals("1", doc.getFields().get("_id"));
+        assertTrue(doc.getFields().containsKey("_id"));
+        assertFalse(doc.getFields().containsKey("id"));
+    }
+
+    @Test
+    public void testSharedNames() {
+        StoredDocument a = new StoredDocument();
+        StoredDocument b = new StoredDocument();
+        a.addNonBlankField(new String("overview"), "x");
+        b.addNonBlankField(new String("overview"), "y");
+        assertSame(a.getFields().keySet().iterator().next(),
+                b.getFields().keySet().iterator().next());
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        StoredDocument doc = new StoredDocument();
+        doc.addNonBlankField("id", "1");
+        doc.addNonBlankField("genres", Arrays.asList("a", "b"));
+        StringWriter writer = new StringWriter();
+        doc.write(new JsonWriter(writer), "id");
+        assertEquals("{\"genres\":[\"a\",\"b\"]}", writer.toString());
+        //{"id":"1","genres":["a","b"]}
+        assertEquals(2 + (2 + 4) + (1 + 2) + (6 + 4) + (1 + 3) * 2 + 2, doc.getEstimatedSize());
+    }
+}
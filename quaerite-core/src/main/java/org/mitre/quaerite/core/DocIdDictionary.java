@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.mitre.quaerite.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps document ids to small, dense, non-negative ints so that judgments
+ * can be stored in primitive arrays and looked up without string hashing.
+ * <p>
+ * Only judged documents are added; ids that are looked up but were never
+ * judged get {@link #NOT_FOUND}.  A document that is judged for many
+ * queries is stored once.
+ * <p>
+ * Whatever loads a set of judgments creates one of these and shares it
+ * across that set's {@link Judgments}.
+ * <p>
+ * This is thread safe.  Lookups don't lock.
+ */
+public class DocIdDictionary {
+
+    public static final int NOT_FOUND = -1;
+
+    private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    //written under the lock before the id is added to ordinals, so anyone
+    //who can see an ordinal can see its id
+    private volatile String[] ids = new String[1024];
+    private volatile int size = 0;
+
+    /**
+     * @param id document id
+     * @return the ordinal for this id; a new one is assigned if this id
+     * hasn't been seen before
+     */
+    public int add(String id) {
+        Integer ordinal = ordinals.get(id);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        synchronized (lock) {
+            ordinal = ordinals.get(id);
+            if (ordinal != null) {
+                return ordinal;
+            }
+            String[] local = ids;
+            if (size == local.length) {
+                local = Arrays.copyOf(local, local.length * 2);
+            }
+            local[size] = id;
+            ids = local;
+            ordinals.put(id, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @param id document id
+     * @return the ordinal for this id or {@link #NOT_FOUND}
+     */
+    public int getOrdinal(String id) {
+        Integer ordinal = ordinals.get(id);
+        return (ordinal == null) ? NOT_FOUND : ordinal;
+    }
+
+    /**
+     * @param ordinal an ordinal that was returned by {@link #add(String)}
+     * @return the document id
+     */
+    public String getId(int ordinal) {
+        return ids[ordinal];
+    }
+
+    /**
+     * @return number of ids; this only grows, so callers can use it to tell
+     * whether ids that weren't found earlier might be found now
+     */
+    public int size() {
+        return size;
+    }
+}
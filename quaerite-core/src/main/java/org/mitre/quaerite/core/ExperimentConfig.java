@@ -16,6 +16,10 @@
  */
 package org.mitre.quaerite.core;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import org.apache.commons.lang3.StringUtils;
@@ -23,9 +27,25 @@ import org.apache.commons.lang3.StringUtils;
 public class ExperimentConfig {
 
     public static final int DEFAULT_NUM_THREADS = 6;
+    public static final double DEFAULT_RETRY_BUDGET = 0.1;
 
     private int numThreads = DEFAULT_NUM_THREADS;
     private String idField = StringUtils.EMPTY;
+    //elasticsearch only: run the queries in batches through _rank_eval
+    //instead of one search request per query
+    private boolean useRankEval = false;
+    //send a duplicate request if a request takes longer than the observed p95
+    private boolean hedgeRequests = false;
+    //maximum number of retries per query for transient failures (5xx, 429, io)
+    private int maxRetries = 0;
+    //fraction of successful requests that may be retried
+    private double retryBudget = DEFAULT_RETRY_BUDGET;
+    //logical search server url (as used in the experiments) -> list of
+    //replica origins, e.g. "http://solr2:8983", that can serve it
+    private Map<String, List<String>> searchServerReplicas = new HashMap<>();
+    //read the cluster status of SolrCloud collections and spread
+    //requests across the nodes hosting active replicas
+    private boolean solrCloudRouting = false;
 
     public int getNumThreads() {
         return numThreads;
@@ -37,18 +57,53 @@ public class ExperimentConfig {
         return idField;
     }
 
+    public boolean getUseRankEval() {
+        return useRankEval;
+    }
+
+    public boolean getHedgeRequests() {
+        return hedgeRequests;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public double getRetryBudget() {
+        return retryBudget;
+    }
+
+    public Map<String, List<String>> getSearchServerReplicas() {
+        if (searchServerReplicas == null) {
+            return Collections.EMPTY_MAP;
+        }
+        return searchServerReplicas;
+    }
+
+    public boolean getSolrCloudRouting() {
+        return solrCloudRouting;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof ExperimentConfig)) return false;
         ExperimentConfig that = (ExperimentConfig) o;
         return numThreads == that.numThreads &&
+                useRankEval == that.useRankEval &&
+                hedgeRequests == that.hedgeRequests &&
+                maxRetries == that.maxRetries &&
+                Double.compare(that.retryBudget, retryBudget) == 0 &&
+                solrCloudRouting == that.solrCloudRouting &&
+                Objects.equals(searchServerReplicas, that.searchServerReplicas) &&
                 Objects.equals(idField, that.idField);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(numThreads, idField);
+        return Objects.hash(numThreads, idField, useRankEval,
+                hedgeRequests, maxRetries, retryBudget, searchServerReplicas,
+                solrCloudRouting);
     }
 
     public void setIdField(String idField) {
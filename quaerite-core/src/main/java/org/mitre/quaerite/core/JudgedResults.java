@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.mitre.quaerite.core;
+
+import java.util.Arrays;
+
+/**
+ * The relevance grade of each of the top results for a query, looked up
+ * once so that all of the judgment scorers can read them.
+ */
+public class JudgedResults {
+
+    private final Judgments judgments;
+    private final SearchResultSet searchResultSet;
+    //grade by 0-based rank; NaN if the result wasn't judged
+    private final double[] grades;
+    private final int judged;
+
+    /**
+     * @param judgments       judgments for the query
+     * @param searchResultSet results for the query
+     * @param depth           number of results to look up; this must be at least
+     *                        as large as the atN of the scorers that will use this
+     */
+    public JudgedResults(Judgments judgments, SearchResultSet searchResultSet, int depth) {
+        this.judgments = judgments;
+        this.searchResultSet = searchResultSet;
+        this.grades = new double[Math.max(0, Math.min(depth, searchResultSet.size()))];
+        int[] docOrdinals = searchResultSet.getOrdinals(judgments.getDocIdDictionary());
+        int judged = 0;
+        for (int i = 0; i < grades.length; i++) {
+            grades[i] = judgments.getJudgmentOrNaN(docOrdinals[i]);
+            if (!Double.isNaN(grades[i])) {
+                judged++;
+            }
+        }
+        this.judged = judged;
+    }
+
+    /**
+     * Looks up all of the results
+     */
+    public JudgedResults(Judgments judgments, SearchResultSet searchResultSet) {
+        this(judgments, searchResultSet, searchResultSet.size());
+    }
+
+    public Judgments getJudgments() {
+        return judgments;
+    }
+
+    public SearchResultSet getSearchResultSet() {
+        return searchResultSet;
+    }
+
+    public QueryInfo getQueryInfo() {
+        return judgments.getQueryInfo();
+    }
+
+    /**
+     * @return number of results that were looked up
+     */
+    public int size() {
+        return grades.length;
+    }
+
+    /**
+     * @param i 0-based rank
+     * @return whether the result at this rank was judged
+     */
+    public boolean isJudged(int i) {
+        return !Double.isNaN(grades[i]);
+    }
+
+    /**
+     * @param i 0-based rank
+     * @return the grade of the result at this rank or NaN if it wasn't judged
+     */
+    public double getGrade(int i) {
+        return grades[i];
+    }
+
+    /**
+     * @return number of the results that were looked up that were judged
+     */
+    public int getNumJudged() {
+        return judged;
+    }
+
+    @Override
+    public String toString() {
+        return "JudgedResults{" +
+                "queryInfo=" + getQueryInfo() +
+                ", grades=" + Arrays.toString(grades) +
+                '}';
+    }
+}
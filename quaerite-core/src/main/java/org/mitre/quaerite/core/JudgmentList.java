@@ -24,9 +24,15 @@ public class JudgmentList {
     private final List<Judgments> judgmentsList = new ArrayList<>();
 
     public void addJudgments(Judgments judgments) {
+        //ordinals are scoped to this list so that scorers can be sized for it
+        judgments.getQueryInfo().setOrdinal(judgmentsList.size());
         judgmentsList.add(judgments);
     }
 
+    public int size() {
+        return judgmentsList.size();
+    }
+
     public List<Judgments> getJudgmentsList() {
         return judgmentsList;
     }
@@ -16,78 +16,295 @@
  */
 package org.mitre.quaerite.core;
 
-import static java.util.stream.Collectors.toMap;
-
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 /**
  * This class captures the judgments about a single specific query
  * The id is the document id in Solr/Elastic
+ * <p>
+ * Document ids are mapped to ints by a {@link DocIdDictionary}, and the
+ * judgments are stored in parallel arrays sorted by that int.
+ * <p>
+ * Once the judgments are loaded, call {@link #freeze()} to get an immutable
+ * copy that can be read by many threads without locking.
  */
 public class Judgments {
     private static Gson GSON = new Gson();
 
     public static final double NO_JUDGMENT = -1.0;
+    private static final int INITIAL_CAPACITY = 8;
+
     private final QueryInfo queryInfo;
-    private final Map<String, Double> judgments = new HashMap<>();
+    private final DocIdDictionary dictionary;
+    private final boolean frozen;
+    private int[] docOrdinals = new int[INITIAL_CAPACITY];
+    private float[] relevances = new float[INITIAL_CAPACITY];
+    private int size = 0;
+    //whether docOrdinals is sorted and free of duplicates; guarded by lock
+    private boolean sortedByDoc = true;
     private Map<String, Double> sorted;
     private volatile boolean updated = true;
+    //values that scorers derive from frozen judgments; null if not frozen
+    private final ConcurrentHashMap<String, double[]> derived;
 
     private final Object[] lock = new Object[0];
 
     /**
-     *
+     * Uses a new dictionary that isn't shared with other judgments;
+     * loaders should share one {@link DocIdDictionary} across a set of judgments
      */
     public Judgments(QueryInfo queryInfo) {
+        this(queryInfo, new DocIdDictionary());
+    }
+
+    public Judgments(QueryInfo queryInfo, DocIdDictionary dictionary) {
         this.queryInfo = queryInfo;
+        this.dictionary = dictionary;
+        this.frozen = false;
+        this.derived = null;
+    }
+
+    private Judgments(Judgments judgments) {
+        this.queryInfo = judgments.queryInfo;
+        this.dictionary = judgments.dictionary;
+        this.docOrdinals = Arrays.copyOf(judgments.docOrdinals, judgments.size);
+        this.relevances = Arrays.copyOf(judgments.relevances, judgments.size);
+        this.size = judgments.size;
+        this.sorted = Collections.unmodifiableMap(
+                new LinkedHashMap<>(judgments.getSortedJudgments()));
+        this.updated = false;
+        this.frozen = true;
+        this.derived = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return an immutable copy of these judgments that is sorted up front,
+     * so that reads don't lock; this returns itself if it is already frozen
+     */
+    public Judgments freeze() {
+        if (frozen) {
+            return this;
+        }
+        synchronized (lock) {
+            if (!sortedByDoc) {
+                sortByDoc();
+            }
+            return new Judgments(this);
+        }
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Frozen judgments cache the values that scorers derive from them, e.g.
+     * the ideal DCG at each cutoff, so that they're calculated once per query
+     * instead of once per experiment.  Cache hits don't lock.
+     *
+     * @param key        unique to the scorer and its parameters, e.g. its name
+     * @param calculator calculates the value; it's called every time if these
+     *                   judgments aren't frozen, and it may be called more than
+     *                   once if threads race
+     * @return the value
+     */
+    public double[] getDerived(String key, Function<Judgments, double[]> calculator) {
+        if (!frozen) {
+            return calculator.apply(this);
+        }
+        double[] value = derived.get(key);
+        if (value == null) {
+            value = calculator.apply(this);
+            double[] prev = derived.putIfAbsent(key, value);
+            if (prev != null) {
+                value = prev;
+            }
+        }
+        return value;
     }
 
     public void addJudgment(String documentId, double relevance) {
-        judgments.put(documentId, relevance);
+        if (frozen) {
+            throw new UnsupportedOperationException(
+                    "Can't add judgments to frozen judgments for " + queryInfo.getQueryId());
+        }
+        int docOrdinal = dictionary.add(documentId);
         synchronized (lock) {
+            if (size == docOrdinals.length) {
+                docOrdinals = Arrays.copyOf(docOrdinals, size * 2);
+                relevances = Arrays.copyOf(relevances, size * 2);
+            }
+            if (size > 0 && docOrdinals[size - 1] >= docOrdinal) {
+                sortedByDoc = false;
+            }
+            docOrdinals[size] = docOrdinal;
+            relevances[size] = (float) relevance;
+            size++;
             updated = true;
         }
     }
 
     public double getJudgment(String documentId) {
-        return judgments.containsKey(documentId) ?
-                judgments.get(documentId) : NO_JUDGMENT;
+        return getJudgment(dictionary.getOrdinal(documentId));
     }
 
     public boolean containsJudgment(String id) {
-        return judgments.containsKey(id);
+        return containsJudgment(dictionary.getOrdinal(id));
+    }
+
+    /**
+     * @param docOrdinal ordinal of the document in this judgments' dictionary
+     * @return the relevance or {@link #NO_JUDGMENT}
+     */
+    public double getJudgment(int docOrdinal) {
+        return lookup(docOrdinal, NO_JUDGMENT);
+    }
+
+    public boolean containsJudgment(int docOrdinal) {
+        return !Double.isNaN(lookup(docOrdinal, Double.NaN));
     }
 
+    /**
+     * @return the relevance or NaN if the document wasn't judged
+     */
+    double getJudgmentOrNaN(int docOrdinal) {
+        return lookup(docOrdinal, Double.NaN);
+    }
+
+    public DocIdDictionary getDocIdDictionary() {
+        return dictionary;
+    }
+
+    //frozen judgments are read without locking; otherwise, the arrays
+    //can be swapped by a concurrent add or sort, so read them under the lock
+    private double lookup(int docOrdinal, double notFound) {
+        if (docOrdinal < 0) {
+            return notFound;
+        }
+        if (frozen) {
+            int i = Arrays.binarySearch(docOrdinals, 0, size, docOrdinal);
+            return (i < 0) ? notFound : relevances[i];
+        }
+        synchronized (lock) {
+            if (!sortedByDoc) {
+                sortByDoc();
+            }
+            int i = Arrays.binarySearch(docOrdinals, 0, size, docOrdinal);
+            return (i < 0) ? notFound : relevances[i];
+        }
+    }
+
+    //sort by doc ordinal; if a document was judged more than once,
+    //the last judgment wins
+    private void sortByDoc() {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) docOrdinals[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] ords = new int[size];
+        float[] rels = new float[size];
+        int n = 0;
+        for (long key : keys) {
+            int docOrdinal = (int) (key >>> 32);
+            if (n > 0 && ords[n - 1] == docOrdinal) {
+                n--;
+            }
+            ords[n] = docOrdinal;
+            rels[n] = relevances[(int) key];
+            n++;
+        }
+        docOrdinals = ords;
+        relevances = rels;
+        size = n;
+        sortedByDoc = true;
+    }
+
+    /**
+     * @return document ids and relevances, in descending order of relevance
+     */
     public Map<String, Double> getSortedJudgments() {
+        if (frozen) {
+            return sorted;
+        }
         synchronized (lock) {
             if (sorted == null || updated == true) {
-                sorted = judgments.entrySet()
-                        .stream()
-                        .sorted(Collections.reverseOrder(Map.Entry.comparingByValue()))
-                        .collect(
-                                toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e2,
-                                        LinkedHashMap::new));
+                if (!sortedByDoc) {
+                    sortByDoc();
+                }
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, (a, b) -> Float.compare(relevances[b], relevances[a]));
+                sorted = new LinkedHashMap<>();
+                for (int i : order) {
+                    sorted.put(dictionary.getId(docOrdinals[i]), (double) relevances[i]);
+                }
             }
             updated = false;
         }
         return sorted;
     }
 
+    /**
+     * @return the highest relevance or {@link #NO_JUDGMENT} if there are no judgments
+     */
+    public double getMaxJudgment() {
+        for (Double d : getSortedJudgments().values()) {
+            return d;
+        }
+        return NO_JUDGMENT;
+    }
+
     public int size() {
-        return judgments.size();
+        if (frozen) {
+            return size;
+        }
+        synchronized (lock) {
+            if (!sortedByDoc) {
+                sortByDoc();
+            }
+            return size;
+        }
     }
 
     public static Judgments fromJson(String s) {
-        return GSON.fromJson(s, Judgments.class);
+        return fromJson(s, new DocIdDictionary());
+    }
+
+    public static Judgments fromJson(String s, DocIdDictionary dictionary) {
+        JsonObject root = new JsonParser().parse(s).getAsJsonObject();
+        Judgments judgments = new Judgments(
+                GSON.fromJson(root.get("queryInfo"), QueryInfo.class), dictionary);
+        if (root.has("judgments")) {
+            for (Map.Entry<String, JsonElement> e :
+                    root.getAsJsonObject("judgments").entrySet()) {
+                judgments.addJudgment(e.getKey(), e.getValue().getAsDouble());
+            }
+        }
+        return judgments;
     }
 
     public String toJson() {
-        return GSON.toJson(this);
+        JsonObject root = new JsonObject();
+        root.add("queryInfo", GSON.toJsonTree(queryInfo));
+        JsonObject judgmentsObject = new JsonObject();
+        for (Map.Entry<String, Double> e : getSortedJudgments().entrySet()) {
+            judgmentsObject.addProperty(e.getKey(), e.getValue().floatValue());
+        }
+        root.add("judgments", judgmentsObject);
+        return GSON.toJson(root);
     }
 
     public QueryInfo getQueryInfo() {
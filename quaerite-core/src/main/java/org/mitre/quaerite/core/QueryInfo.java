@@ -23,10 +23,14 @@ import java.util.Objects;
 public class QueryInfo {
 
     public static final String DEFAULT_QUERY_SET = "";
+
     private final String queryId;
     private final String querySet;
     private final QueryStrings queryStrings;
     private final int queryCount;
+    //ordinal + 1, or 0 if it hasn't been assigned yet; this is also 0 after
+    //deserialization because gson doesn't run the constructor
+    private transient volatile int ordinalPlusOne;
 
     public QueryInfo(String queryId, String querySet, QueryStrings queryStrings, int queryCount) {
         this.queryId = queryId;
@@ -51,6 +55,19 @@ public class QueryInfo {
         return queryId;
     }
 
+    /**
+     * @return this query's position in the {@link JudgmentList} it was
+     * last added to, or -1 if it hasn't been added to one.  Scorers use this
+     * to keep scores in arrays that are sized for the run.
+     */
+    public int getOrdinal() {
+        return ordinalPlusOne - 1;
+    }
+
+    void setOrdinal(int ordinal) {
+        ordinalPlusOne = ordinal + 1;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.core;
+
+/**
+ * Client-side timings for the phases of a single http request,
+ * all in microseconds.
+ * <ul>
+ *     <li>poolWait: waiting to lease a connection from the client's pool</li>
+ *     <li>connect: opening a new connection (0 if a pooled connection was reused)</li>
+ *     <li>ttfb: from sending the request until the response headers arrive;
+ *     this includes the server's time</li>
+ *     <li>download: reading the response body</li>
+ *     <li>parse: parsing the response json</li>
+ * </ul>
+ */
+public class RequestTimings {
+
+    private final long poolWait;
+    private final long connect;
+    private final long ttfb;
+    private final long download;
+    private final long parse;
+
+    public RequestTimings(long poolWait, long connect, long ttfb,
+                          long download, long parse) {
+        this.poolWait = poolWait;
+        this.connect = connect;
+        this.ttfb = ttfb;
+        this.download = download;
+        this.parse = parse;
+    }
+
+    public long getPoolWait() {
+        return poolWait;
+    }
+
+    public long getConnect() {
+        return connect;
+    }
+
+    public long getTtfb() {
+        return ttfb;
+    }
+
+    public long getDownload() {
+        return download;
+    }
+
+    public long getParse() {
+        return parse;
+    }
+
+    public long getTotal() {
+        return poolWait + connect + ttfb + download + parse;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTimings{" +
+                "poolWait=" + poolWait +
+                ", connect=" + connect +
+                ", ttfb=" + ttfb +
+                ", download=" + download +
+                ", parse=" + parse +
+                '}';
+    }
+}
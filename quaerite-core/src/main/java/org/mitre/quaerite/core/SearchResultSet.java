@@ -25,12 +25,57 @@ public class SearchResultSet {
     private final long queryTime;
     private final long elapsedTime;
     private final List<String> ids;
+    //can be null if the client didn't record them
+    private final RequestTimings timings;
+    //ids translated by the client with the run's dictionary; null if it wasn't given one
+    private final transient DocIdDictionary dictionary;
+    private final transient int[] ordinals;
 
     public SearchResultSet(long totalHits, long queryTime, long elapsedTime, List<String> ids) {
+        this(totalHits, queryTime, elapsedTime, ids, null);
+    }
+
+    /**
+     * @param totalHits   total hits
+     * @param queryTime   time spent on the server as reported by the server (milliseconds)
+     * @param elapsedTime total time as measured by the client (milliseconds)
+     * @param ids         ids of the returned documents
+     * @param timings     client side phase timings; may be null
+     */
+    public SearchResultSet(long totalHits, long queryTime, long elapsedTime, List<String> ids,
+                           RequestTimings timings) {
+        this(totalHits, queryTime, elapsedTime, ids, timings, null);
+    }
+
+    /**
+     * Clients call this when the response is parsed so that the ids are
+     * translated once, on the client's thread.
+     *
+     * @param dictionary dictionary to translate the ids with; may be null
+     */
+    public SearchResultSet(long totalHits, long queryTime, long elapsedTime, List<String> ids,
+                           RequestTimings timings, DocIdDictionary dictionary) {
+        this(totalHits, queryTime, elapsedTime, ids, timings, dictionary,
+                (dictionary == null) ? null : translate(ids, dictionary));
+    }
+
+    private SearchResultSet(long totalHits, long queryTime, long elapsedTime, List<String> ids,
+                            RequestTimings timings, DocIdDictionary dictionary, int[] ordinals) {
         this.totalHits = totalHits;
         this.queryTime = queryTime;
         this.elapsedTime = elapsedTime;
         this.ids = ids;
+        this.timings = timings;
+        this.dictionary = dictionary;
+        this.ordinals = ordinals;
+    }
+
+    /**
+     * @return a copy with a different elapsed time that shares the ids and ordinals
+     */
+    public SearchResultSet withElapsedTime(long elapsedTime) {
+        return new SearchResultSet(totalHits, queryTime, elapsedTime, ids, timings,
+                dictionary, ordinals);
     }
 
     public long getTotalHits() {
@@ -44,6 +89,14 @@ public class SearchResultSet {
     public long getQueryTime() {
         return queryTime;
     }
+
+    /**
+     * @return client side phase timings or null if they weren't recorded
+     */
+    public RequestTimings getTimings() {
+        return timings;
+    }
+
     public int size() {
         return ids.size();
     }
@@ -52,6 +105,31 @@ public class SearchResultSet {
         return ids.get(i);
     }
 
+    /**
+     * Do not modify the returned array.
+     *
+     * @param dictionary dictionary to translate the ids with
+     * @return the ordinals of the returned documents in rank order;
+     * {@link DocIdDictionary#NOT_FOUND} for documents that aren't in the dictionary.
+     * These were translated when the response was parsed if the client was
+     * given the same dictionary; otherwise, they're translated now.
+     */
+    public int[] getOrdinals(DocIdDictionary dictionary) {
+        if (dictionary == this.dictionary) {
+            return ordinals;
+        }
+        return translate(ids, dictionary);
+    }
+
+    private static int[] translate(List<String> ids, DocIdDictionary dictionary) {
+        int[] ordinals = new int[ids.size()];
+        int i = 0;
+        for (String id : ids) {
+            ordinals[i++] = dictionary.getOrdinal(id);
+        }
+        return ordinals;
+    }
+
     @Override
     public String toString() {
         return "SearchResultSet{" +
@@ -59,6 +137,7 @@ public class SearchResultSet {
                 ", queryTime=" + queryTime +
                 ", elapsedTime=" + elapsedTime +
                 ", ids=" + ids +
+                ", timings=" + timings +
                 '}';
     }
 
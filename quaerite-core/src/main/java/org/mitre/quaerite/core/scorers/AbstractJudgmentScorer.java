@@ -23,6 +23,7 @@ import java.util.Map;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import org.mitre.quaerite.core.JudgedResults;
 import org.mitre.quaerite.core.Judgments;
 import org.mitre.quaerite.core.SearchResultSet;
 
@@ -47,8 +48,13 @@ public abstract class AbstractJudgmentScorer
         this.params.putAll(params);
     }
 
-    public abstract double score(Judgments judgments,
-                                 SearchResultSet searchResultSet);
+    @Override
+    public double score(Judgments judgments, SearchResultSet searchResultSet) {
+        return score(new JudgedResults(judgments, searchResultSet, getAtN()));
+    }
+
+    @Override
+    public abstract double score(JudgedResults judgedResults);
 
 
 
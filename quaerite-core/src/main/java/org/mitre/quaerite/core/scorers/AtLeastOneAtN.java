@@ -16,6 +16,7 @@
  */
 package org.mitre.quaerite.core.scorers;
 
+import org.mitre.quaerite.core.JudgedResults;
 import org.mitre.quaerite.core.Judgments;
 import org.mitre.quaerite.core.SearchResultSet;
 
@@ -30,14 +31,19 @@ public class AtLeastOneAtN extends SummingScoreAggregator implements JudgmentSco
 
     @Override
     public double score(Judgments judgments, SearchResultSet searchResultSet) {
+        return score(new JudgedResults(judgments, searchResultSet, getAtN()));
+    }
+
+    @Override
+    public double score(JudgedResults judgedResults) {
         int val = 0;
-        for (int i = 0; i < getAtN() && i < searchResultSet.size(); i++) {
-            if (judgments.containsJudgment(searchResultSet.get(i))) {
+        for (int i = 0; i < getAtN() && i < judgedResults.size(); i++) {
+            if (judgedResults.isJudged(i)) {
                 val = 1;
                 break;
             }
         }
-        addScore(judgments.getQueryInfo(), val);
+        addScore(judgedResults.getQueryInfo(), val);
         return val;
     }
 
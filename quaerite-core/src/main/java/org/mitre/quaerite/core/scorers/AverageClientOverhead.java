@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.mitre.quaerite.core.scorers;
+
+import org.mitre.quaerite.core.QueryInfo;
+import org.mitre.quaerite.core.SearchResultSet;
+
+/**
+ * Time spent outside of the search server's query time:
+ * the client's elapsed time minus the server's reported query time.
+ * This includes network, queueing for connections, writing and
+ * reading the response and json parsing; see
+ * {@link org.mitre.quaerite.core.SearchResultSet#getTimings()}
+ * for a breakdown per request.
+ */
+public class AverageClientOverhead extends DistributionalScoreAggregator
+        implements SearchResultSetScorer {
+
+    public AverageClientOverhead(int atN) {
+        super("AverageClientOverhead", atN);
+    }
+
+    @Override
+    public double score(QueryInfo queryInfo, SearchResultSet searchResultSet) {
+        double overhead = searchResultSet.getElapsedTime()
+                - Math.max(0, searchResultSet.getQueryTime());
+        overhead = Math.max(0, overhead);
+        addScore(queryInfo, overhead);
+        return overhead;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AverageClientOverhead)) return false;
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
@@ -16,8 +16,8 @@
  */
 package org.mitre.quaerite.core.scorers;
 
-import org.mitre.quaerite.core.Judgments;
-import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.JudgedResults;
+
 
 public class CumulativeGain extends AbstractJudgmentScorer {
 
@@ -26,16 +26,14 @@ public class CumulativeGain extends AbstractJudgmentScorer {
     }
 
     @Override
-    public double score(Judgments judgments, SearchResultSet searchResultSet) {
-
+    public double score(JudgedResults judgedResults) {
         double sum = 0.0;
-        for (int i = 0; i < getAtN() && i < searchResultSet.size(); i++) {
-            String id = searchResultSet.get(i);
-            if (judgments.containsJudgment(id)) {
-                sum += judgments.getJudgment(id);
+        for (int i = 0; i < getAtN() && i < judgedResults.size(); i++) {
+            if (judgedResults.isJudged(i)) {
+                sum += judgedResults.getGrade(i);
             }
         }
-        addScore(judgments.getQueryInfo(), sum);
+        addScore(judgedResults.getQueryInfo(), sum);
         return sum;
     }
 
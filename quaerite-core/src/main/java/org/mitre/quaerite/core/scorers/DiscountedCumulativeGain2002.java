@@ -17,8 +17,7 @@
 package org.mitre.quaerite.core.scorers;
 
 import org.apache.commons.math3.util.FastMath;
-import org.mitre.quaerite.core.Judgments;
-import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.JudgedResults;
 
 
 /**
@@ -36,26 +35,33 @@ public class DiscountedCumulativeGain2002 extends AbstractJudgmentScorer {
     }
 
     @Override
-    public double score(Judgments judgments, SearchResultSet searchResultSet) {
-        double score = _score(judgments, searchResultSet);
-        addScore(judgments.getQueryInfo(), score);
+    public double score(JudgedResults judgedResults) {
+        double score = _score(judgedResults);
+        addScore(judgedResults.getQueryInfo(), score);
         return score;
     }
 
-    protected double _score(Judgments judgments, SearchResultSet searchResultSet) {
+    protected double _score(JudgedResults judgedResults) {
         int rank = 1;
         double sum = 0;
-        for (int i = 0; i < getAtN() && i < searchResultSet.size(); i++) {
-            String id = searchResultSet.get(i);
-            if (judgments.containsJudgment(id)) {
-                double rel = judgments.getJudgment(id);
-                sum += rel / FastMath.log(2, rank + 1);
+        for (int i = 0; i < getAtN() && i < judgedResults.size(); i++) {
+            if (judgedResults.isJudged(i)) {
+                sum += discountedGain(judgedResults.getGrade(i), rank);
             }
             rank++;
         }
         return sum;
     }
 
+    /**
+     * @param rel  relevance
+     * @param rank 1-based rank
+     * @return the gain for a document with this relevance at this rank
+     */
+    protected double discountedGain(double rel, int rank) {
+        return rel / FastMath.log(2, rank + 1);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
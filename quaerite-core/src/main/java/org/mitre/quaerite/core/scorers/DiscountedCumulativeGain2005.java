@@ -17,8 +17,6 @@
 package org.mitre.quaerite.core.scorers;
 
 import org.apache.commons.math3.util.FastMath;
-import org.mitre.quaerite.core.Judgments;
-import org.mitre.quaerite.core.SearchResultSet;
 
 
 /**
@@ -37,19 +35,9 @@ public class DiscountedCumulativeGain2005 extends DiscountedCumulativeGain2002 {
     }
 
     @Override
-    protected double _score(Judgments judgments, SearchResultSet searchResultSet) {
-        int rank = 1;
-        double sum = 0;
-        for (int i = 0; i < getAtN() && i < searchResultSet.size(); i++) {
-            String id = searchResultSet.get(i);
-            if (judgments.containsJudgment(id)) {
-                double rel = judgments.getJudgment(id);
-                sum += (FastMath.pow(2,rel) - 1) /
-                        FastMath.log(2,rank + 1);
-            }
-            rank++;
-        }
-        return sum;
+    protected double discountedGain(double rel, int rank) {
+        return (FastMath.pow(2, rel) - 1) /
+                FastMath.log(2, rank + 1);
     }
 
     @Override
@@ -26,17 +26,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
-import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
-import org.apache.commons.math3.stat.descriptive.rank.Median;
-import org.apache.commons.math3.util.DoubleArray;
-import org.apache.commons.math3.util.ResizableDoubleArray;
-import org.mitre.quaerite.core.QueryInfo;
-
 public abstract class DistributionalScoreAggregator extends Scorer {
 
     public static String MEAN = "mean";
     public static String MEDIAN = "median";
     public static String STDEV = "stdev";
+    //reported in the summary statistics, but not stored as a column
+    public static String COUNT = "count";
 
     private static final List<String> STATISTICS =
             Collections.unmodifiableList(Arrays.asList(new String[]{MEAN, MEDIAN, STDEV}));
@@ -53,17 +49,50 @@ public abstract class DistributionalScoreAggregator extends Scorer {
 
     @Override
     public Map<String, Double> getSummaryStatistics(String querySet) {
-        StatSummarizer statSummarizer = new StatSummarizer();
-        for (Map.Entry<QueryInfo, Double> scoreEntry : scores.entrySet()) {
-            if (scoreEntry.getKey().getQuerySet().equals(querySet)) {
-                statSummarizer.addValue(scoreEntry.getValue());
-            }
+        return summarize(getScores(querySet));
+    }
+
+    @Override
+    public Map<String, Map<String, Double>> getSummaryStatistics() {
+        Map<String, Map<String, Double>> ret = new LinkedHashMap<>();
+        for (Map.Entry<String, double[]> e : getScoresByQuerySet().entrySet()) {
+            ret.put(e.getKey(), summarize(e.getValue()));
+        }
+        return ret;
+    }
+
+    /**
+     * Mean and (sample) standard deviation are calculated in one pass with
+     * Welford's algorithm; the median sorts the values in place.
+     *
+     * @param values values to summarize; this is modified
+     * @return statistics; these are NaN if there are no values
+     */
+    static Map<String, Double> summarize(double[] values) {
+        int n = values.length;
+        double mean = 0.0;
+        double m2 = 0.0;
+        for (int i = 0; i < n; i++) {
+            double delta = values[i] - mean;
+            mean += delta / (i + 1);
+            m2 += delta * (values[i] - mean);
+        }
+        double median = Double.NaN;
+        double stdev = Double.NaN;
+        if (n > 0) {
+            Arrays.sort(values);
+            median = (n % 2 == 1) ? values[n / 2] :
+                    (values[n / 2 - 1] + values[n / 2]) / 2.0;
+            stdev = (n == 1) ? 0.0 : Math.sqrt(m2 / (n - 1));
+        } else {
+            mean = Double.NaN;
         }
 
         Map<String, Double> stats = new LinkedHashMap<>();
-        stats.put(MEAN, statSummarizer.getMean());
-        stats.put(MEDIAN, statSummarizer.getMedian());
-        stats.put(STDEV, statSummarizer.getStandardDeviation());
+        stats.put(MEAN, mean);
+        stats.put(MEDIAN, median);
+        stats.put(STDEV, stdev);
+        stats.put(COUNT, (double) n);
 
         return Collections.unmodifiableMap(stats);
     }
@@ -73,29 +102,6 @@ public abstract class DistributionalScoreAggregator extends Scorer {
         return STATISTICS;
     }
 
-    private class StatSummarizer {
-        SummaryStatistics summaryStatistics = new SummaryStatistics();
-        DoubleArray doubleArray = new ResizableDoubleArray();
-
-        private void addValue(double d) {
-            summaryStatistics.addValue(d);
-            doubleArray.addElement(d);
-        }
-
-        public double getMean() {
-            return summaryStatistics.getMean();
-        }
-
-        public double getMedian() {
-            Median median = new Median();
-            return median.evaluate(doubleArray.getElements());
-        }
-
-        public double getStandardDeviation() {
-            return summaryStatistics.getStandardDeviation();
-        }
-    }
-
     @Override
     public String getPrimaryStatisticName() {
         return getName() + "_" + MEAN;
@@ -21,8 +21,8 @@ import java.util.Map;
 import java.util.Objects;
 
 import org.apache.commons.math3.util.FastMath;
+import org.mitre.quaerite.core.JudgedResults;
 import org.mitre.quaerite.core.Judgments;
-import org.mitre.quaerite.core.SearchResultSet;
 
 /**
  * This is an implementation of Olivier Chappelle's
@@ -75,8 +75,8 @@ public class ExpectedReciprocalRank extends AbstractJudgmentScorer {
     }
 
     @Override
-    public double score(Judgments judgments, SearchResultSet searchResultSet) {
-        double maxInTheseJudgments = getMax(judgments);
+    public double score(JudgedResults judgedResults) {
+        double maxInTheseJudgments = judgedResults.getJudgments().getMaxJudgment();
         if (maxScore != null && maxInTheseJudgments > maxScore) {
             throw new IllegalArgumentException(
                     String.format(Locale.US,
@@ -92,9 +92,8 @@ public class ExpectedReciprocalRank extends AbstractJudgmentScorer {
         double twoToTheMax = FastMath.pow(2, max);
         double p = 1.0;
         double err = 0.0;
-        for (int i = 0; i < getAtN() && i < searchResultSet.size(); i++) {
-            String id = searchResultSet.get(i);
-            double grade = getGrade(judgments, id, max);
+        for (int i = 0; i < getAtN() && i < judgedResults.size(); i++) {
+            double grade = judgedResults.isJudged(i) ? judgedResults.getGrade(i) : noJudgment;
             if (grade <= 0.0) {
                 continue;
             }
@@ -106,29 +105,15 @@ public class ExpectedReciprocalRank extends AbstractJudgmentScorer {
 
         }
 
-        addScore(judgments.getQueryInfo(), err);
+        addScore(judgedResults.getQueryInfo(), err);
         return err;
     }
 
-    double getGrade(Judgments judgments, String id, double max) {
-        if (!judgments.containsJudgment(id)) {
-            return noJudgment;
-        }
-        return judgments.getJudgment(id);
-    }
-
     private double mapRelevanceScore(double relevanceScore, double twoToTheMax) {
         return (FastMath.pow(2, relevanceScore) - 1.0) / twoToTheMax;
 
     }
 
-    private double getMax(Judgments judgments) {
-        for (Double d : judgments.getSortedJudgments().values()) {
-            return d;
-        }
-        return -1.0;
-    }
-
     public Double getMaxScore() {
         return maxScore;
     }
@@ -16,8 +16,8 @@
  */
 package org.mitre.quaerite.core.scorers;
 
-import org.mitre.quaerite.core.Judgments;
-import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.JudgedResults;
+
 
 /**
  * Highest single rank; {@link #NOT_FOUND} if not found
@@ -34,17 +34,17 @@ public class HighestRank extends AbstractJudgmentScorer {
     }
 
     @Override
-    public double score(Judgments judgments, SearchResultSet searchResultSet) {
-        int highest = _score(judgments, searchResultSet);
+    public double score(JudgedResults judgedResults) {
+        int highest = _score(judgedResults);
         if (highest != NOT_FOUND) {
-            addScore(judgments.getQueryInfo(), highest);
+            addScore(judgedResults.getQueryInfo(), highest);
         }
         return NOT_FOUND;
     }
 
-    protected int _score(Judgments judgments, SearchResultSet searchResultSet) {
-        for (int i = 0; i < getAtN() && i < searchResultSet.size(); i++) {
-            if (judgments.containsJudgment(searchResultSet.get(i))) {
+    protected int _score(JudgedResults judgedResults) {
+        for (int i = 0; i < getAtN() && i < judgedResults.size(); i++) {
+            if (judgedResults.isJudged(i)) {
                 return i + 1;
             }
         }
@@ -16,8 +16,8 @@
  */
 package org.mitre.quaerite.core.scorers;
 
-import org.mitre.quaerite.core.Judgments;
-import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.JudgedResults;
+
 
 /**
     Reciprocal of the highest single hit; {@link HighestRank#NOT_FOUND} otherwise.
@@ -29,13 +29,13 @@ public class HighestRankReciprocal extends HighestRank {
     }
 
     @Override
-    public double score(Judgments judgments, SearchResultSet searchResultSet) {
-        int rank = super._score(judgments, searchResultSet);
+    public double score(JudgedResults judgedResults) {
+        int rank = super._score(judgedResults);
         if (rank == NOT_FOUND) {
             return NOT_FOUND;
         } else {
             double ret = (double)1 / rank;
-            addScore(judgments.getQueryInfo(), ret);
+            addScore(judgedResults.getQueryInfo(), ret);
             return ret;
         }
     }
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.mitre.quaerite.core.scorers;
+
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.mitre.quaerite.core.util.LatencyHistogram;
+
+/**
+ * Reports tail percentiles and the maximum of non-negative, integral scores
+ * (e.g. latencies in milliseconds) from a fixed-size {@link LatencyHistogram}
+ * per query set.  Histograms from other aggregators can be merged in with
+ * {@link #merge(MergeableScoreAggregator)}.
+ * <p>
+ * Scores are rounded to the nearest long; negative scores are not
+ * added to the histograms.
+ * <p>
+ * Lower is better for these statistics (see {@link #isHigherBetter()}).
+ * To rank experiments by the p99, ascending, set "orderBy": true
+ * in the scorer's params (see {@link #setOrderBy()}).
+ */
+public abstract class HistogramScoreAggregator extends MergeableScoreAggregator<LatencyHistogram> {
+
+    public static String P50 = "p50";
+    public static String P95 = "p95";
+    public static String P99 = "p99";
+    //p99.9; column names can't have a '.'
+    public static String P999 = "p999";
+    public static String MAX = "max";
+
+    private static final List<String> STATISTICS =
+            Collections.unmodifiableList(Arrays.asList(new String[]{P50, P95, P99, P999, MAX}));
+
+    private static final double[] PERCENTILES = new double[]{50.0, 95.0, 99.0, 99.9};
+
+    private NumberFormat numberFormat = NumberFormat.getIntegerInstance(Locale.US);
+
+    public HistogramScoreAggregator(String name, int atN) {
+        super(name, atN);
+    }
+
+    @Override
+    protected LatencyHistogram newSummary() {
+        return new LatencyHistogram();
+    }
+
+    @Override
+    protected void update(LatencyHistogram histogram, double score) {
+        histogram.record(Math.round(score));
+    }
+
+    @Override
+    protected void merge(LatencyHistogram histogram, LatencyHistogram other) {
+        histogram.add(other);
+    }
+
+    @Override
+    protected LatencyHistogram copy(LatencyHistogram histogram) {
+        return histogram.copy();
+    }
+
+    @Override
+    protected Map<String, Double> summarize(LatencyHistogram histogram) {
+        Map<String, Double> stats = new LinkedHashMap<>();
+        boolean empty = histogram == null || histogram.getTotalCount() == 0;
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            stats.put(STATISTICS.get(i), empty ? Double.NaN :
+                    (double) histogram.getValueAtPercentile(PERCENTILES[i]));
+        }
+        stats.put(MAX, empty ? Double.NaN : (double) histogram.getMax());
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * @param querySet query set
+     * @return a copy of the histogram for the query set; this is empty if there
+     * are no scores for the query set
+     */
+    public LatencyHistogram getHistogram(String querySet) {
+        return getSummary(querySet);
+    }
+
+    @Override
+    public List<String> getStatistics() {
+        return STATISTICS;
+    }
+
+    /**
+     * Tail latency is what this is for, so this is p99.
+     */
+    @Override
+    public String getPrimaryStatisticName() {
+        return getName() + "_" + P99;
+    }
+
+    @Override
+    public boolean isHigherBetter() {
+        return false;
+    }
+
+    @Override
+    public String format(String statName, Map<String, Double> values) {
+        if (! values.containsKey(statName)) {
+            throw new IllegalArgumentException("can't find stat name: " + statName
+                    + "in " + values);
+        }
+
+        return numberFormat.format(values.get(statName));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HistogramScoreAggregator)) return false;
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
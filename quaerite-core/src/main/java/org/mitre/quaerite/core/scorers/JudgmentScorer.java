@@ -16,6 +16,7 @@
  */
 package org.mitre.quaerite.core.scorers;
 
+import org.mitre.quaerite.core.JudgedResults;
 import org.mitre.quaerite.core.Judgments;
 import org.mitre.quaerite.core.SearchResultSet;
 
@@ -24,4 +25,15 @@ public interface JudgmentScorer {
     String getName();
     double score(Judgments judgments, SearchResultSet searchResultSet);
 
+    /**
+     * Scores a query from grades that were looked up once for all of the scorers.
+     * Scorers that don't use the grades can rely on this default.
+     *
+     * @param judgedResults judgments and results for the query
+     * @return the score
+     */
+    default double score(JudgedResults judgedResults) {
+        return score(judgedResults.getJudgments(), judgedResults.getSearchResultSet());
+    }
+
 }
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.mitre.quaerite.core.scorers;
+
+import static org.mitre.quaerite.core.QueryInfo.DEFAULT_QUERY_SET;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.mitre.quaerite.core.JudgmentList;
+import org.mitre.quaerite.core.QueryInfo;
+
+/**
+ * Keeps a mergeable summary of the scores (e.g. a sketch or a histogram) per
+ * query set, in addition to the per-query scores.  Subclasses decide what
+ * the summary is and which statistics to report from it.
+ * <p>
+ * Only a query's first score is added to the summaries; summaries can't remove
+ * values, so if a query is scored again, the summaries keep its first score.
+ *
+ * @param <T> summary
+ */
+public abstract class MergeableScoreAggregator<T> extends Scorer {
+
+    private final Object[] summaryLock = new Object[0];
+    //query set -> summary; guarded by summaryLock
+    private final Map<String, T> summaries = new HashMap<>();
+
+    public MergeableScoreAggregator(String name, int atN) {
+        super(name, atN);
+    }
+
+    /**
+     * @return a new, empty summary
+     */
+    protected abstract T newSummary();
+
+    protected abstract void update(T summary, double score);
+
+    /**
+     * @param summary summary to add to
+     * @param other   summary to add; this must not be modified
+     */
+    protected abstract void merge(T summary, T other);
+
+    protected abstract T copy(T summary);
+
+    /**
+     * @param summary summary; this is <code>null</code> if there are no scores
+     * @return map of statistic_name/values
+     */
+    protected abstract Map<String, Double> summarize(T summary);
+
+    @Override
+    boolean addScore(QueryInfo queryInfo, double score) {
+        boolean added = super.addScore(queryInfo, score);
+        if (!added) {
+            return false;
+        }
+        synchronized (summaryLock) {
+            update(getOrCreate(DEFAULT_QUERY_SET), score);
+            if (!DEFAULT_QUERY_SET.equals(queryInfo.getQuerySet())) {
+                update(getOrCreate(queryInfo.getQuerySet()), score);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the other aggregator's scores and summaries to this one's, so that
+     * {@link #getScores()} and the summaries stay consistent.  If none of
+     * the other's queries have been scored here (e.g. the other scored a
+     * different shard of the queries), the summaries are merged; otherwise,
+     * only the other's new queries are added, one score at a time.
+     * The other aggregator is not modified.  This should not be called
+     * while either aggregator is scoring queries.
+     *
+     * @param other aggregator to merge
+     */
+    public void merge(MergeableScoreAggregator<T> other) {
+        Map<QueryInfo, Double> otherScores = new LinkedHashMap<>(other.getScores());
+        boolean disjoint = true;
+        for (QueryInfo queryInfo : otherScores.keySet()) {
+            if (getScores().containsKey(queryInfo)) {
+                disjoint = false;
+                break;
+            }
+        }
+        if (!disjoint) {
+            for (Map.Entry<QueryInfo, Double> e : otherScores.entrySet()) {
+                addScore(e.getKey(), e.getValue());
+            }
+            return;
+        }
+        Map<String, T> others = new HashMap<>();
+        synchronized (other.summaryLock) {
+            for (Map.Entry<String, T> e : other.summaries.entrySet()) {
+                others.put(e.getKey(), other.copy(e.getValue()));
+            }
+        }
+        for (Map.Entry<QueryInfo, Double> e : otherScores.entrySet()) {
+            super.addScore(e.getKey(), e.getValue());
+        }
+        synchronized (summaryLock) {
+            for (Map.Entry<String, T> e : others.entrySet()) {
+                merge(getOrCreate(e.getKey()), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param querySet query set
+     * @return a copy of the summary for the query set; this is empty if there
+     * are no scores for the query set
+     */
+    T getSummary(String querySet) {
+        synchronized (summaryLock) {
+            T summary = summaries.get(querySet);
+            return (summary == null) ? newSummary() : copy(summary);
+        }
+    }
+
+    @Override
+    public Map<String, Double> getSummaryStatistics(String querySet) {
+        synchronized (summaryLock) {
+            return summarize(summaries.get(querySet));
+        }
+    }
+
+    private T getOrCreate(String querySet) {
+        return summaries.computeIfAbsent(querySet, k -> newSummary());
+    }
+
+    @Override
+    public void reset(JudgmentList judgmentList) {
+        super.reset(judgmentList);
+        synchronized (summaryLock) {
+            summaries.clear();
+        }
+    }
+}
@@ -16,11 +16,8 @@
  */
 package org.mitre.quaerite.core.scorers;
 
-import java.util.ArrayList;
-import java.util.List;
-
+import org.mitre.quaerite.core.JudgedResults;
 import org.mitre.quaerite.core.Judgments;
-import org.mitre.quaerite.core.SearchResultSet;
 
 
 public class NDCG extends DiscountedCumulativeGain2002 {
@@ -30,32 +27,41 @@ public class NDCG extends DiscountedCumulativeGain2002 {
     }
 
     @Override
-    public double score(Judgments judgments, SearchResultSet searchResultSet) {
-
-        final double idealDCG = calculateIdeal(judgments,
-                Math.min(getAtN(), searchResultSet.size()), searchResultSet.getTotalHits(),
-                searchResultSet.getQueryTime(),
-                searchResultSet.getElapsedTime());
+    public double score(JudgedResults judgedResults) {
+        final double idealDCG = getIdeal(judgedResults.getJudgments(),
+                Math.min(getAtN(), judgedResults.getSearchResultSet().size()));
         if (idealDCG == 0) {
             return 0.0;
         }
-        double score = _score(judgments, searchResultSet) / idealDCG;
-        addScore(judgments.getQueryInfo(), score);
+        double score = _score(judgedResults) / idealDCG;
+        addScore(judgedResults.getQueryInfo(), score);
         return score;
     }
 
+    /**
+     * @return the DCG of the best possible top <code>size</code> results;
+     * frozen judgments cache this for each query
+     */
+    private double getIdeal(Judgments judgments, int size) {
+        double[] ideal = judgments.getDerived(getName(), this::calculateIdeal);
+        return ideal[Math.min(size, ideal.length - 1)];
+    }
 
-    private double calculateIdeal(Judgments judgments, int size, long totalHits,
-                                  long queryTime, long elapsedTime) {
-        List<String> bestResults = new ArrayList<>();
-        for (String id : judgments.getSortedJudgments().keySet()) {
-            bestResults.add(id);
-            if (bestResults.size() >= size) {
+    /**
+     * @return the ideal DCG for each cutoff from 0 to atN
+     */
+    private double[] calculateIdeal(Judgments judgments) {
+        int len = Math.min(getAtN(), judgments.size());
+        double[] ideal = new double[len + 1];
+        int rank = 1;
+        for (double rel : judgments.getSortedJudgments().values()) {
+            if (rank > len) {
                 break;
             }
+            ideal[rank] = ideal[rank - 1] + discountedGain(rel, rank);
+            rank++;
         }
-        return _score(judgments, new SearchResultSet(totalHits, queryTime,
-                elapsedTime, bestResults));
+        return ideal;
     }
 
     @Override
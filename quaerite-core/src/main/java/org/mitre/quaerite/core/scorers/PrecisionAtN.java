@@ -16,8 +16,7 @@
  */
 package org.mitre.quaerite.core.scorers;
 
-import org.mitre.quaerite.core.Judgments;
-import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.JudgedResults;
 
 /**
  * This ignores quaerite scores and answers the question: of
@@ -31,18 +30,19 @@ public class PrecisionAtN extends AbstractJudgmentScorer {
     }
 
     @Override
-    public double score(Judgments judgments, SearchResultSet searchResultSet) {
-        if (searchResultSet.size() == 0) {
+    public double score(JudgedResults judgedResults) {
+        int size = judgedResults.getSearchResultSet().size();
+        if (size == 0) {
             return 0.0;
         }
         int hits = 0;
-        for (int i = 0; i < getAtN() && i < searchResultSet.size(); i++) {
-            if (judgments.containsJudgment(searchResultSet.get(i))) {
+        for (int i = 0; i < getAtN() && i < judgedResults.size(); i++) {
+            if (judgedResults.isJudged(i)) {
                 hits++;
             }
         }
-        double val = (double)hits / (double) searchResultSet.size();
-        addScore(judgments.getQueryInfo(), val);
+        double val = (double)hits / (double) size;
+        addScore(judgedResults.getQueryInfo(), val);
         return val;
     }
 
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.mitre.quaerite.core.scorers;
+
+import java.math.RoundingMode;
+import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.mitre.quaerite.core.util.KllSketch;
+
+/**
+ * Reports approximate percentiles of the scores from a {@link KllSketch}
+ * per query set.  The sketches have bounded memory, and sketches from
+ * other aggregators (e.g. other threads or shards of a run) can be merged in
+ * with {@link #merge(MergeableScoreAggregator)}.
+ */
+public abstract class QuantileScoreAggregator extends MergeableScoreAggregator<KllSketch> {
+
+    public static String P50 = "p50";
+    public static String P90 = "p90";
+    public static String P99 = "p99";
+
+    private static final List<String> STATISTICS =
+            Collections.unmodifiableList(Arrays.asList(new String[]{P50, P90, P99}));
+
+    private static final double[] QUANTILES = new double[]{0.5, 0.9, 0.99};
+
+    private NumberFormat numberFormat = NumberFormat.getNumberInstance(Locale.US);
+
+    public QuantileScoreAggregator(String name, int atN) {
+        super(name, atN);
+        numberFormat.setMinimumFractionDigits(2);
+        numberFormat.setMaximumFractionDigits(2);
+        numberFormat.setRoundingMode(RoundingMode.HALF_DOWN);
+    }
+
+    @Override
+    protected KllSketch newSummary() {
+        return new KllSketch();
+    }
+
+    @Override
+    protected void update(KllSketch sketch, double score) {
+        sketch.update(score);
+    }
+
+    @Override
+    protected void merge(KllSketch sketch, KllSketch other) {
+        sketch.merge(other);
+    }
+
+    @Override
+    protected KllSketch copy(KllSketch sketch) {
+        return sketch.copy();
+    }
+
+    @Override
+    protected Map<String, Double> summarize(KllSketch sketch) {
+        Map<String, Double> stats = new LinkedHashMap<>();
+        for (int i = 0; i < QUANTILES.length; i++) {
+            stats.put(STATISTICS.get(i),
+                    (sketch == null) ? Double.NaN : sketch.getQuantile(QUANTILES[i]));
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * @param querySet query set
+     * @return a copy of the sketch for the query set; this is empty if there
+     * are no scores for the query set
+     */
+    public KllSketch getSketch(String querySet) {
+        return getSummary(querySet);
+    }
+
+    @Override
+    public List<String> getStatistics() {
+        return STATISTICS;
+    }
+
+    @Override
+    public String getPrimaryStatisticName() {
+        return getName() + "_" + P50;
+    }
+
+    @Override
+    public String format(String statName, Map<String, Double> values) {
+        if (! values.containsKey(statName)) {
+            throw new IllegalArgumentException("can't find stat name: " + statName
+                    + "in " + values);
+        }
+
+        return numberFormat.format(values.get(statName));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof QuantileScoreAggregator)) return false;
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
@@ -16,8 +16,8 @@
  */
 package org.mitre.quaerite.core.scorers;
 
-import org.mitre.quaerite.core.Judgments;
-import org.mitre.quaerite.core.SearchResultSet;
+import org.mitre.quaerite.core.JudgedResults;
+
 
 /**
  * This ignores quaerite scores and answers the question: of
@@ -32,15 +32,15 @@ public class RecallAtN extends AbstractJudgmentScorer {
     }
 
     @Override
-    public double score(Judgments judgments, SearchResultSet searchResultSet) {
+    public double score(JudgedResults judgedResults) {
         int hits = 0;
-        for (int i = 0; i < getAtN() && i < searchResultSet.size(); i++) {
-            if (judgments.containsJudgment(searchResultSet.get(i))) {
+        for (int i = 0; i < getAtN() && i < judgedResults.size(); i++) {
+            if (judgedResults.isJudged(i)) {
                 hits++;
             }
         }
         double v = (double)hits / (double)getAtN();
-        addScore(judgments.getQueryInfo(), v);
+        addScore(judgedResults.getQueryInfo(), v);
         return v;
     }
 
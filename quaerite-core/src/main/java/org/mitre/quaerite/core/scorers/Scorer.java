@@ -19,16 +19,25 @@ package org.mitre.quaerite.core.scorers;
 
 import static org.mitre.quaerite.core.QueryInfo.DEFAULT_QUERY_SET;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+import org.mitre.quaerite.core.JudgmentList;
+import org.mitre.quaerite.core.Judgments;
 import org.mitre.quaerite.core.QueryInfo;
 
 
@@ -36,6 +45,8 @@ public abstract class Scorer {
     private final String name;
     private final int atN;
 
+    private boolean orderBy = false;
+
     public Scorer(String name, int atN) {
         this.name = (atN > -1) ? name + "_" + atN : name;
         this.atN = atN;
@@ -48,29 +59,61 @@ public abstract class Scorer {
         return name;
     }
 
-    private final Object[] lock = new Object[0];
+    //raw bits of a NaN that Double.doubleToLongBits never returns,
+    //so that a score of NaN isn't mistaken for no score
+    private static final long UNSCORED = 0x7ff0000000000badL;
 
-    ConcurrentHashMap<QueryInfo, Double> scores = new ConcurrentHashMap<>();
+    //the queries and scores of the current run, indexed by QueryInfo ordinal.
+    //These are set by reset(JudgmentList) so that scoring threads can write
+    //to their own slots without locking.
+    private volatile Run run = new Run(new QueryInfo[0]);
+    private final AtomicInteger size = new AtomicInteger();
+    private final Map<QueryInfo, Double> scoresView = new ScoresView();
     //really just a concurrent hash set, the integer is a dummy value
     ConcurrentHashMap<String, Integer> querySets = new ConcurrentHashMap<>();
+
     /**
      * This needs to be thread safe
      * @param queryInfo
      * @param score
+     * @return true if the query hadn't been scored before
      */
-    void addScore(QueryInfo queryInfo, double score) {
-        scores.put(queryInfo, score);
-        QueryInfo defaultQueryInfo = null;
-        //also keep track of all results together
-        if (!queryInfo.getQuerySet().equals(DEFAULT_QUERY_SET)) {
-            defaultQueryInfo = new QueryInfo(
-                    queryInfo.getQueryId(),
-                    DEFAULT_QUERY_SET, queryInfo.getQueryStrings(),
-                    queryInfo.getQueryCount());
-            scores.put(defaultQueryInfo, score);
-            querySets.put(DEFAULT_QUERY_SET, 1);
+    boolean addScore(QueryInfo queryInfo, double score) {
+        boolean added = add(queryInfo, score);
+        if (added) {
+            size.incrementAndGet();
+        }
+        //the default query set includes all queries
+        addQuerySet(DEFAULT_QUERY_SET);
+        addQuerySet(queryInfo.getQuerySet());
+        return added;
+    }
+
+    private boolean add(QueryInfo queryInfo, double score) {
+        Run local = run;
+        int ordinal = local.getOrdinal(queryInfo);
+        if (ordinal < 0) {
+            throw new IllegalArgumentException(queryInfo + " isn't in the judgment list " +
+                    "that " + getName() + " was reset for");
+        }
+        return local.scores.getAndSet(ordinal, Double.doubleToLongBits(score)) == UNSCORED;
+    }
+
+    private Double get(QueryInfo queryInfo) {
+        Run local = run;
+        int ordinal = local.getOrdinal(queryInfo);
+        if (ordinal < 0) {
+            return null;
+        }
+        long bits = local.scores.get(ordinal);
+        return (bits == UNSCORED) ? null : Double.longBitsToDouble(bits);
+    }
+
+    private void addQuerySet(String querySet) {
+        //get doesn't lock, so check before putting
+        if (!querySets.containsKey(querySet)) {
+            querySets.put(querySet, 1);
         }
-        querySets.put(queryInfo.getQuerySet(), 1);
     }
 
     /**
@@ -80,6 +123,18 @@ public abstract class Scorer {
      */
     public abstract Map<String, Double> getSummaryStatistics(String querySet);
 
+    /**
+     * @return map of query set to the map of statistic_name/values for
+     * all of the query sets that have scores
+     */
+    public Map<String, Map<String, Double>> getSummaryStatistics() {
+        Map<String, Map<String, Double>> ret = new LinkedHashMap<>();
+        for (String querySet : getQuerySets()) {
+            ret.put(querySet, getSummaryStatistics(querySet));
+        }
+        return ret;
+    }
+
     /**
      *
      * @return list of statistics names
@@ -100,25 +155,106 @@ public abstract class Scorer {
      */
     public abstract String getPrimaryStatisticName();
 
+    /**
+     * @return whether higher values of the primary statistic are better;
+     * this is used to pick the sort order when ranking experiments
+     */
+    public boolean isHigherBetter() {
+        return true;
+    }
+
+    /**
+     * @return whether experiments are ranked by this scorer's primary statistic;
+     * this takes precedence over judgment scorers that are used for testing or training
+     */
+    public boolean getOrderBy() {
+        return orderBy;
+    }
+
+    public void setOrderBy() {
+        this.orderBy = true;
+    }
+
+    /**
+     * @return a read-only view of the scores
+     */
     public Map<QueryInfo, Double> getScores() {
-        Map<QueryInfo, Double> ret = new HashMap<>();
-        ret.putAll(scores);
-        return Collections.unmodifiableMap(ret);
+        return scoresView;
+    }
+
+    /**
+     * @param queryInfo query
+     * @return the score for the query or NaN if it hasn't been scored
+     */
+    public double getScore(QueryInfo queryInfo) {
+        Double score = get(queryInfo);
+        return (score == null) ? Double.NaN : score;
+    }
+
+    /**
+     * @param querySet query set; {@link QueryInfo#DEFAULT_QUERY_SET} for all queries
+     * @return a copy of the scores for the queries in the query set
+     */
+    double[] getScores(String querySet) {
+        boolean all = DEFAULT_QUERY_SET.equals(querySet);
+        DoubleList ret = new DoubleList();
+        forEachScore((queryInfo, score) -> {
+            if (all || queryInfo.getQuerySet().equals(querySet)) {
+                ret.add(score);
+            }
+        });
+        return ret.toArray();
+    }
+
+    /**
+     * Groups the scores by query set in a single pass.
+     *
+     * @return query set -> a copy of its scores; {@link QueryInfo#DEFAULT_QUERY_SET}
+     * has all of the scores.  This is empty if nothing has been scored.
+     */
+    Map<String, double[]> getScoresByQuerySet() {
+        Map<String, DoubleList> lists = new LinkedHashMap<>();
+        DoubleList all = new DoubleList();
+        lists.put(DEFAULT_QUERY_SET, all);
+        forEachScore((queryInfo, score) -> {
+            all.add(score);
+            if (!DEFAULT_QUERY_SET.equals(queryInfo.getQuerySet())) {
+                lists.computeIfAbsent(queryInfo.getQuerySet(), k -> new DoubleList()).add(score);
+            }
+        });
+        Map<String, double[]> ret = new LinkedHashMap<>();
+        if (all.size == 0) {
+            return ret;
+        }
+        for (Map.Entry<String, DoubleList> e : lists.entrySet()) {
+            ret.put(e.getKey(), e.getValue().toArray());
+        }
+        return ret;
     }
 
     public Set<QueryInfo> getQueryInfos(String querySet) {
+        boolean all = DEFAULT_QUERY_SET.equals(querySet);
         Set<QueryInfo> ret = new HashSet<>();
-        for (QueryInfo q : scores.keySet()) {
-            if (q.getQuerySet().equals(querySet)) {
-                ret.add(q);
+        forEachScore((queryInfo, score) -> {
+            if (all || queryInfo.getQuerySet().equals(querySet)) {
+                ret.add(queryInfo);
             }
-        }
+        });
         return ret;
     }
 
+    private void forEachScore(ScoreConsumer consumer) {
+        Run local = run;
+        for (int i = 0; i < local.queryInfos.length; i++) {
+            long bits = local.scores.get(i);
+            if (bits != UNSCORED) {
+                consumer.accept(local.queryInfos[i], Double.longBitsToDouble(bits));
+            }
+        }
+    }
 
     public int getSize() {
-        return scores.size();
+        return size.get();
     }
 
 
@@ -126,8 +262,29 @@ public abstract class Scorer {
         return querySets.keySet();
     }
 
+    /**
+     * Clears the scores; nothing can be scored until
+     * {@link #reset(JudgmentList)} is called
+     */
     public void reset() {
-        scores.clear();
+        reset(new JudgmentList());
+    }
+
+    /**
+     * Clears the scores and makes room for the queries in a run.  Only the
+     * queries in the judgment list can be scored.  This must
+     * not be called while queries are being scored.
+     *
+     * @param judgmentList the run's judgment list; its ordinals index the scores
+     */
+    public void reset(JudgmentList judgmentList) {
+        List<Judgments> judgmentsList = judgmentList.getJudgmentsList();
+        QueryInfo[] queryInfos = new QueryInfo[judgmentsList.size()];
+        for (int i = 0; i < queryInfos.length; i++) {
+            queryInfos[i] = judgmentsList.get(i).getQueryInfo();
+        }
+        run = new Run(queryInfos);
+        size.set(0);
         querySets.clear();
     }
 
@@ -136,11 +293,97 @@ public abstract class Scorer {
         if (this == o) return true;
         if (!(o instanceof Scorer)) return false;
         Scorer that = (Scorer) o;
-        return Objects.equals(scores, that.scores);
+        return Objects.equals(getScores(), that.getScores());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(scores, querySets);
+        return Objects.hash(getScores(), querySets);
+    }
+
+    private interface ScoreConsumer {
+        void accept(QueryInfo queryInfo, double score);
+    }
+
+    private static class Run {
+        private final QueryInfo[] queryInfos;
+        //Double.doubleToLongBits of the scores; UNSCORED if a query hasn't been scored
+        private final AtomicLongArray scores;
+
+        private Run(QueryInfo[] queryInfos) {
+            this.queryInfos = queryInfos;
+            this.scores = new AtomicLongArray(queryInfos.length);
+            for (int i = 0; i < queryInfos.length; i++) {
+                scores.set(i, UNSCORED);
+            }
+        }
+
+        /**
+         * @return the query's ordinal or -1 if it isn't in this run
+         */
+        private int getOrdinal(QueryInfo queryInfo) {
+            int ordinal = queryInfo.getOrdinal();
+            if (ordinal < 0 || ordinal >= queryInfos.length
+                    || !queryInfos[ordinal].equals(queryInfo)) {
+                return -1;
+            }
+            return ordinal;
+        }
+    }
+
+    private static class DoubleList {
+        private double[] values = new double[16];
+        private int size = 0;
+
+        private void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private class ScoresView extends AbstractMap<QueryInfo, Double> {
+
+        @Override
+        public Double get(Object key) {
+            if (!(key instanceof QueryInfo)) {
+                return null;
+            }
+            return Scorer.this.get((QueryInfo) key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return getSize();
+        }
+
+        @Override
+        public Set<Entry<QueryInfo, Double>> entrySet() {
+            //iterates over a snapshot
+            List<Entry<QueryInfo, Double>> entries = new ArrayList<>();
+            forEachScore((queryInfo, score) ->
+                    entries.add(new SimpleImmutableEntry<>(queryInfo, score)));
+            return new AbstractSet<Entry<QueryInfo, Double>>() {
+                @Override
+                public Iterator<Entry<QueryInfo, Double>> iterator() {
+                    return Collections.unmodifiableList(entries).iterator();
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
     }
 }
@@ -21,12 +21,10 @@ import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
-
-import org.mitre.quaerite.core.QueryInfo;
 
 public abstract class SummingScoreAggregator extends Scorer {
     public static String SUM = "sum";
@@ -43,15 +41,24 @@ public abstract class SummingScoreAggregator extends Scorer {
 
     @Override
     public Map<String, Double> getSummaryStatistics(String querySet) {
-        Set<QueryInfo> queryInfos = getQueryInfos(querySet);
+        return summarize(getScores(querySet));
+    }
+
+    @Override
+    public Map<String, Map<String, Double>> getSummaryStatistics() {
+        Map<String, Map<String, Double>> ret = new LinkedHashMap<>();
+        for (Map.Entry<String, double[]> e : getScoresByQuerySet().entrySet()) {
+            ret.put(e.getKey(), summarize(e.getValue()));
+        }
+        return ret;
+    }
+
+    static Map<String, Double> summarize(double[] scores) {
         Map<String, Double> stats = new HashMap<>();
-        for (QueryInfo q : queryInfos) {
-            Double val = scores.get(q);
-            Double sum = stats.get(SUM);
-            if (sum == null) {
-                sum = val;
-            } else {
-                sum += val;
+        if (scores.length > 0) {
+            double sum = 0;
+            for (double score : scores) {
+                sum += score;
             }
             stats.put(SUM, sum);
         }
@@ -114,9 +114,12 @@ public class ScorerListSerializer {
                 if (jScorer.getUseForTrain()) {
                     params.add("useForTrain", new JsonPrimitive(true));
                 }
-                if (params.size() > 0) {
-                    jsonObject.add("params", params);
-                }
+            }
+            if (scorer.getOrderBy()) {
+                params.add("orderBy", new JsonPrimitive(true));
+            }
+            if (params.size() > 0) {
+                jsonObject.add("params", params);
             }
             return jsonObject;
         }
@@ -171,6 +174,12 @@ public class ScorerListSerializer {
                             ((AbstractJudgmentScorer)scorer).setExportPMatrix();
                         }
                     }
+                    if (params.containsKey("orderBy")) {
+                        String val = params.get("orderBy");
+                        if (val.equalsIgnoreCase("true")) {
+                            scorer.setOrderBy();
+                        }
+                    }
                 }
                 return (T) scorer;
             } catch (Exception e) {
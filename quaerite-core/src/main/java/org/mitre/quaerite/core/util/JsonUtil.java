@@ -29,22 +29,22 @@ import com.google.gson.JsonPrimitive;
 public class JsonUtil {
 
     public static long getPrimitive(JsonElement root, String key, long dflt) {
-        if (! root.isJsonObject()) {
+        if (root == null || ! root.isJsonObject()) {
             return dflt;
         }
         JsonElement el = ((JsonObject)root).get(key);
-        if (! el.isJsonPrimitive()) {
+        if (el == null || ! el.isJsonPrimitive()) {
             return dflt;
         }
         return ((JsonPrimitive)el).getAsLong();
     }
 
     public static String getPrimitive(JsonElement root, String key, String dflt) {
-        if (! root.isJsonObject()) {
+        if (root == null || ! root.isJsonObject()) {
             return dflt;
         }
         JsonElement el = ((JsonObject)root).get(key);
-        if (! el.isJsonPrimitive()) {
+        if (el == null || ! el.isJsonPrimitive()) {
             return dflt;
         }
         return ((JsonPrimitive)el).getAsString();
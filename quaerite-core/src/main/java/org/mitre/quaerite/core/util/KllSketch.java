@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.core.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Quantile sketch with bounded memory that can be merged with other sketches,
+ * e.g. sketches built by different threads or from different runs.
+ * <p>
+ * This follows: Zohar Karnin, Kevin Lang, Edo Liberty. 2016. Optimal Quantile
+ * Approximation in Streams. FOCS 2016.  See also the reference implementation
+ * at https://github.com/edoliberty/streaming-quantiles
+ * <p>
+ * Values are kept in a stack of compactors; an item at level h stands for
+ * 2^h values.  When a level fills up, it is sorted and every other item is
+ * promoted to the next level.  With the default k, rank error is roughly 1%,
+ * and the sketch keeps a few hundred values no matter how many are added.
+ * <p>
+ * This is not thread safe.
+ */
+public class KllSketch {
+
+    public static final int DEFAULT_K = 200;
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    private final int k;
+    private final Random random;
+    private final List<double[]> levels = new ArrayList<>();
+    private int[] levelSizes = new int[0];
+    //number of items stored across all levels
+    private int size = 0;
+    private int maxSize = 0;
+    //number of values that have been added
+    private long n = 0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public KllSketch() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * @param k size of the largest compactor; larger is more accurate
+     */
+    public KllSketch(int k) {
+        this(k, new Random());
+    }
+
+    KllSketch(int k, Random random) {
+        if (k < 8) {
+            throw new IllegalArgumentException("k must be >= 8");
+        }
+        this.k = k;
+        this.random = random;
+        grow();
+    }
+
+    public void update(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (n == 0) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        n++;
+        add(0, value);
+        size++;
+        if (size >= maxSize) {
+            compress();
+        }
+    }
+
+    /**
+     * Adds the other sketch's values to this one.  The other sketch is not modified.
+     *
+     * @param other sketch to merge
+     */
+    public void merge(KllSketch other) {
+        if (other.n == 0) {
+            return;
+        }
+        while (levels.size() < other.levels.size()) {
+            grow();
+        }
+        for (int h = 0; h < other.levels.size(); h++) {
+            double[] items = other.levels.get(h);
+            for (int i = 0; i < other.levelSizes[h]; i++) {
+                add(h, items[i]);
+            }
+        }
+        if (n == 0) {
+            min = other.min;
+            max = other.max;
+        } else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        n += other.n;
+        size += other.size;
+        while (size >= maxSize) {
+            compress();
+        }
+    }
+
+    /**
+     * @param quantile quantile between 0 and 1 inclusive, e.g. 0.99
+     * @return the approximate value at this quantile or NaN if the sketch is empty
+     */
+    public double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("quantile must be >= 0 and <= 1: " + quantile);
+        }
+        if (n == 0) {
+            return Double.NaN;
+        }
+        if (quantile == 0.0) {
+            return min;
+        } else if (quantile == 1.0) {
+            return max;
+        }
+        //pack the items and their weights, sorted by value
+        double[] values = new double[size];
+        long[] weights = new long[size];
+        Integer[] order = new Integer[size];
+        long totalWeight = 0;
+        int j = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            double[] items = levels.get(h);
+            for (int i = 0; i < levelSizes[h]; i++) {
+                values[j] = items[i];
+                weights[j] = 1L << h;
+                order[j] = j;
+                totalWeight += weights[j];
+                j++;
+            }
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+        double target = quantile * totalWeight;
+        long cumulative = 0;
+        for (int i : order) {
+            cumulative += weights[i];
+            if (cumulative >= target) {
+                return values[i];
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return number of values that have been added
+     */
+    public long getN() {
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return n == 0;
+    }
+
+    /**
+     * @return the exact minimum or NaN if the sketch is empty
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return the exact maximum or NaN if the sketch is empty
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return number of values that are actually stored
+     */
+    public int getRetained() {
+        return size;
+    }
+
+    public KllSketch copy() {
+        KllSketch copy = new KllSketch(k, new Random());
+        copy.merge(this);
+        return copy;
+    }
+
+    private void add(int level, double value) {
+        double[] items = levels.get(level);
+        int levelSize = levelSizes[level];
+        if (levelSize == items.length) {
+            items = Arrays.copyOf(items, items.length * 2);
+            levels.set(level, items);
+        }
+        items[levelSize] = value;
+        levelSizes[level]++;
+    }
+
+    private void grow() {
+        levels.add(new double[8]);
+        levelSizes = Arrays.copyOf(levelSizes, levels.size());
+        maxSize = 0;
+        for (int h = 0; h < levels.size(); h++) {
+            maxSize += capacity(h);
+        }
+    }
+
+    private int capacity(int level) {
+        int depth = levels.size() - level - 1;
+        return (int) Math.ceil(k * Math.pow(CAPACITY_DECAY, depth)) + 1;
+    }
+
+    //compact the lowest level that is over capacity
+    private void compress() {
+        for (int h = 0; h < levels.size(); h++) {
+            if (levelSizes[h] >= capacity(h)) {
+                if (h + 1 >= levels.size()) {
+                    grow();
+                }
+                double[] items = levels.get(h);
+                int levelSize = levelSizes[h];
+                Arrays.sort(items, 0, levelSize);
+                //if there's an odd number of items, the last one stays
+                int pairs = levelSize / 2;
+                int offset = random.nextBoolean() ? 1 : 0;
+                for (int i = 0; i < pairs; i++) {
+                    add(h + 1, items[2 * i + offset]);
+                }
+                if (levelSize % 2 == 1) {
+                    items[0] = items[levelSize - 1];
+                }
+                levelSizes[h] = levelSize % 2;
+                size -= pairs;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "KllSketch{" +
+                "k=" + k +
+                ", n=" + n +
+                ", retained=" + size +
+                ", min=" + min +
+                ", max=" + max +
+                '}';
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.core.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-memory histogram of non-negative longs (e.g. latencies in
+ * milliseconds) with log-scaled buckets, in the style of Gil Tene's
+ * HdrHistogram (http://hdrhistogram.org).
+ * <p>
+ * Values are kept to a fixed number of significant decimal digits: each
+ * power of two range is split into linear sub-buckets that are fine enough to
+ * distinguish values that differ by 10^-digits of their magnitude.  With the
+ * default 2 digits and a highest trackable value of an hour in milliseconds,
+ * this uses a 2048 element array no matter how many values are recorded.
+ * <p>
+ * Values above the highest trackable value are recorded in the last bucket;
+ * the maximum is still tracked exactly.  Histograms with the same
+ * configuration can be merged with {@link #add(LatencyHistogram)}.
+ * <p>
+ * This is not thread safe.
+ */
+public class LatencyHistogram {
+
+    public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 60 * 60 * 1000;
+    public static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+
+    private final long highestTrackableValue;
+    private final int significantDigits;
+    private final int subBucketHalfCountMagnitude;
+    private final int subBucketHalfCount;
+    private final long subBucketMask;
+    private final int leadingZeroCountBase;
+    private final long[] counts;
+
+    private long totalCount = 0;
+    private long max = -1;
+    private long min = Long.MAX_VALUE;
+
+    public LatencyHistogram() {
+        this(DEFAULT_HIGHEST_TRACKABLE_VALUE, DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * @param highestTrackableValue highest value that will be bucketed precisely
+     * @param significantDigits     number of significant decimal digits to keep (1-5)
+     */
+    public LatencyHistogram(long highestTrackableValue, int significantDigits) {
+        if (highestTrackableValue < 2) {
+            throw new IllegalArgumentException("highestTrackableValue must be >= 2");
+        }
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("significantDigits must be >= 1 and <= 5");
+        }
+        this.highestTrackableValue = highestTrackableValue;
+        this.significantDigits = significantDigits;
+        long largestSingleUnitResolution = 2 * (long) Math.pow(10, significantDigits);
+        int subBucketCountMagnitude =
+                (int) Math.ceil(Math.log(largestSingleUnitResolution) / Math.log(2));
+        this.subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        int subBucketCount = 1 << subBucketCountMagnitude;
+        this.subBucketHalfCount = subBucketCount / 2;
+        this.subBucketMask = subBucketCount - 1;
+        this.leadingZeroCountBase = 64 - subBucketHalfCountMagnitude - 1;
+
+        //number of power of two buckets needed to cover highestTrackableValue
+        int bucketCount = 1;
+        long smallestUntrackableValue = subBucketCount;
+        while (smallestUntrackableValue <= highestTrackableValue) {
+            smallestUntrackableValue <<= 1;
+            bucketCount++;
+        }
+        this.counts = new long[(bucketCount + 1) * subBucketHalfCount];
+    }
+
+    /**
+     * @param value value to record; negative values are ignored
+     */
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * @param value value to record; negative values are ignored
+     * @param count number of times to record it
+     */
+    public void record(long value, long count) {
+        if (value < 0 || count < 1) {
+            return;
+        }
+        counts[indexOf(Math.min(value, highestTrackableValue))] += count;
+        totalCount += count;
+        max = Math.max(max, value);
+        min = Math.min(min, value);
+    }
+
+    /**
+     * Adds the other histogram's counts to this one.
+     *
+     * @param other histogram with the same configuration
+     */
+    public void add(LatencyHistogram other) {
+        if (other.highestTrackableValue != highestTrackableValue
+                || other.significantDigits != significantDigits) {
+            throw new IllegalArgumentException(
+                    "Can only add histograms with the same configuration");
+        }
+        if (other.totalCount == 0) {
+            return;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        max = Math.max(max, other.max);
+        min = Math.min(min, other.min);
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100 inclusive, e.g. 99.9
+     * @return the highest value that is equivalent to the value at this
+     * percentile (capped at the maximum), or -1 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be >= 0 and <= 100: "
+                    + percentile);
+        }
+        if (totalCount == 0) {
+            return -1;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (cumulative >= target) {
+                return Math.min(max, highestEquivalentValue(i));
+            }
+        }
+        return max;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * @return the exact maximum or -1 if nothing has been recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the exact minimum or -1 if nothing has been recorded
+     */
+    public long getMin() {
+        return (totalCount == 0) ? -1 : min;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        max = -1;
+        min = Long.MAX_VALUE;
+    }
+
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram(highestTrackableValue, significantDigits);
+        copy.add(this);
+        return copy;
+    }
+
+    int indexOf(long value) {
+        int bucketIndex = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+        int subBucketIndex = (int) (value >>> bucketIndex);
+        return ((bucketIndex + 1) << subBucketHalfCountMagnitude)
+                + (subBucketIndex - subBucketHalfCount);
+    }
+
+    //the largest value that lands in the same bucket as this index
+    long highestEquivalentValue(int index) {
+        int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        long lowest = (long) subBucketIndex << bucketIndex;
+        return lowest + (1L << bucketIndex) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{" +
+                "totalCount=" + totalCount +
+                ", p50=" + getValueAtPercentile(50) +
+                ", p99=" + getValueAtPercentile(99) +
+                ", max=" + getMax() +
+                '}';
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.mitre.quaerite.core;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+public class TestJudgments {
+
+    @Test
+    public void testArrays() {
+        DocIdDictionary dictionary = new DocIdDictionary();
+        Judgments judgments = newJudgments(dictionary);
+        judgments.addJudgment("c", 1);
+        judgments.addJudgment("a", 3);
+        judgments.addJudgment("b", 2);
+        //the last judgment for a document wins
+        judgments.addJudgment("c", 0.5);
+
+        assertEquals(3, judgments.size());
+        assertEquals(3, dictionary.size());
+        assertEquals(0.5, judgments.getJudgment("c"), 0.0001);
+        assertEquals(Judgments.NO_JUDGMENT, judgments.getJudgment("d"), 0.0001);
+        assertFalse(judgments.containsJudgment("d"));
+        assertEquals(3, judgments.getJudgment(dictionary.getOrdinal("a")), 0.0001);
+
+        List<String> ids = new ArrayList<>(judgments.getSortedJudgments().keySet());
+        assertEquals(Arrays.asList("a", "b", "c"), ids);
+
+        //a document judged for another query is only stored once
+        Judgments other = newJudgments(dictionary);
+        other.addJudgment("a", 1);
+        assertEquals(3, dictionary.size());
+    }
+
+    @Test
+    public void testDerived() {
+        Judgments judgments = newJudgments(new DocIdDictionary());
+        AtomicInteger calculations = new AtomicInteger();
+        Function<Judgments, double[]> calculator = j -> {
+            calculations.incrementAndGet();
+            return new double[]{j.size()};
+        };
+        //mutable judgments can change, so nothing is cached
+        judgments.getDerived("a", calculator);
+        judgments.getDerived("a", calculator);
+        assertEquals(2, calculations.get());
+
+        Judgments frozen = judgments.freeze();
+        double[] a = frozen.getDerived("a", calculator);
+        assertSame(a, frozen.getDerived("a", calculator));
+        assertEquals(3, calculations.get());
+        assertNotSame(a, frozen.getDerived("b", calculator));
+        assertEquals(4, calculations.get());
+    }
+
+    @Test
+    public void testResultOrdinals() {
+        DocIdDictionary dictionary = new DocIdDictionary();
+        Judgments judgments = newJudgments(dictionary);
+        judgments.addJudgment("a", 3);
+        SearchResultSet results = new SearchResultSet(3, 1, 1,
+                Arrays.asList("x", "a", "b"), null, dictionary);
+        int a = dictionary.getOrdinal("a");
+        int[] ordinals = results.getOrdinals(dictionary);
+        assertArrayEquals(new int[]{DocIdDictionary.NOT_FOUND, a, DocIdDictionary.NOT_FOUND},
+                ordinals);
+        //translated when the results were built, not on each call
+        assertSame(ordinals, results.getOrdinals(dictionary));
+        assertSame(ordinals, results.withElapsedTime(10).getOrdinals(dictionary));
+
+        //other dictionaries are translated on demand
+        DocIdDictionary other = new DocIdDictionary();
+        other.add("b");
+        assertArrayEquals(new int[]{DocIdDictionary.NOT_FOUND, DocIdDictionary.NOT_FOUND,
+                other.getOrdinal("b")}, results.getOrdinals(other));
+    }
+
+    @Test
+    public void testJson() {
+        Judgments judgments = newJudgments(new DocIdDictionary());
+        judgments.addJudgment("a", 3);
+        judgments.addJudgment("b", 0.1);
+        Judgments revivified = Judgments.fromJson(judgments.toJson());
+        assertEquals(judgments.getQueryInfo(), revivified.getQueryInfo());
+        Map<String, Double> sorted = revivified.getSortedJudgments();
+        assertEquals(2, sorted.size());
+        assertEquals(3.0, sorted.get("a"), 0.0001);
+        assertEquals(0.1, sorted.get("b"), 0.0001);
+        assertTrue(judgments.toJson().contains("\"b\":0.1"));
+
+        //judgments loaded together share the loader's dictionary
+        DocIdDictionary shared = new DocIdDictionary();
+        Judgments first = Judgments.fromJson(judgments.toJson(), shared);
+        Judgments second = Judgments.fromJson(judgments.toJson(), shared);
+        assertSame(shared, first.getDocIdDictionary());
+        assertSame(shared, second.getDocIdDictionary());
+        assertEquals(2, shared.size());
+        assertNotSame(shared, revivified.getDocIdDictionary());
+    }
+
+    @Test
+    public void testFreeze() {
+        Judgments judgments = newJudgments(new DocIdDictionary());
+        judgments.addJudgment("b", 1);
+        judgments.addJudgment("a", 2);
+        Judgments frozen = judgments.freeze();
+        assertTrue(frozen.isFrozen());
+        assertSame(frozen, frozen.freeze());
+        assertEquals(2, frozen.size());
+        assertEquals(2.0, frozen.getMaxJudgment(), 0.0001);
+        assertEquals(1.0, frozen.getJudgment("b"), 0.0001);
+        assertEquals(Arrays.asList("a", "b"),
+                new ArrayList<>(frozen.getSortedJudgments().keySet()));
+        assertThrows(UnsupportedOperationException.class,
+                () -> frozen.addJudgment("c", 1));
+        assertThrows(UnsupportedOperationException.class,
+                () -> frozen.getSortedJudgments().put("c", 1.0));
+
+        //the copy doesn't change with the original
+        judgments.addJudgment("c", 3);
+        assertEquals(2, frozen.size());
+        assertFalse(frozen.containsJudgment("c"));
+    }
+
+    private static Judgments newJudgments(DocIdDictionary dictionary) {
+        return new Judgments(new QueryInfo("1", QueryInfo.DEFAULT_QUERY_SET,
+                new QueryStrings(), 1), dictionary);
+    }
+}
@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.core.JudgmentList;
 import org.mitre.quaerite.core.Judgments;
 import org.mitre.quaerite.core.QueryInfo;
 import org.mitre.quaerite.core.QueryStrings;
@@ -56,7 +57,7 @@ public class TestExpectedReciprocalRank {
     public void testTop10() {
         //test score when top 10 all have score of 3
         ExpectedReciprocalRank err = new ExpectedReciprocalRank(10, DEFAULT_PARAMS);
-        Judgments judgments = newJudgments();
+        Judgments judgments = newJudgments(err);
         for (int i = 0; i < 10; i++) {
             judgments.addJudgment(RESULTS.get(i), 3);
         }
@@ -67,7 +68,7 @@ public class TestExpectedReciprocalRank {
     public void testBottom5In10() {
         //test score when bottom 5 of 10 all have score of 3
         ExpectedReciprocalRank err = new ExpectedReciprocalRank(10, DEFAULT_PARAMS);
-        Judgments judgments = newJudgments();
+        Judgments judgments = newJudgments(err);
         for (int i = 5; i < 15; i++) {
             judgments.addJudgment(RESULTS.get(i), 3);
         }
@@ -78,7 +79,7 @@ public class TestExpectedReciprocalRank {
     public void test9thIsRelevant() {
         //test score when bottom 5 of 10 all have score of 3
         ExpectedReciprocalRank err = new ExpectedReciprocalRank(10, DEFAULT_PARAMS);
-        Judgments judgments = newJudgments();
+        Judgments judgments = newJudgments(err);
         for (int i = 9; i < 15; i++) {
             judgments.addJudgment(RESULTS.get(i), 3);
         }
@@ -91,7 +92,7 @@ public class TestExpectedReciprocalRank {
         tmpParams.put(ExpectedReciprocalRank.MAX_SCORE, "2");
         ExpectedReciprocalRank err = new ExpectedReciprocalRank(10, tmpParams);
 
-        Judgments judgments = newJudgments();
+        Judgments judgments = newJudgments(err);
         for (int i = 0; i < 10; i++) {
             judgments.addJudgment(RESULTS.get(i), 3);
         }
@@ -109,9 +110,13 @@ public class TestExpectedReciprocalRank {
                 () -> new ExpectedReciprocalRank(10, tmpParams));
     }
 
-    private static Judgments newJudgments() {
-        return new Judgments(
+    private static Judgments newJudgments(Scorer scorer) {
+        Judgments judgments = new Judgments(
                 new QueryInfo("1",
                         QueryInfo.DEFAULT_QUERY_SET, new QueryStrings(), -1));
+        JudgmentList judgmentList = new JudgmentList();
+        judgmentList.addJudgments(judgments);
+        scorer.reset(judgmentList);
+        return judgments;
     }
 }
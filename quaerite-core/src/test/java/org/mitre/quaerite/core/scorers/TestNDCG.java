@@ -22,6 +22,8 @@ import java.util.List;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.core.JudgedResults;
+import org.mitre.quaerite.core.JudgmentList;
 import org.mitre.quaerite.core.Judgments;
 import org.mitre.quaerite.core.QueryInfo;
 import org.mitre.quaerite.core.QueryStrings;
@@ -31,9 +33,11 @@ import org.mitre.quaerite.core.SearchResultSet;
 public class TestNDCG {
     static Judgments JUDGMENTS = new Judgments(new QueryInfo("0","",
             new QueryStrings(), 1));
+    static JudgmentList JUDGMENT_LIST = new JudgmentList();
     static SearchResultSet RESULT_SET;
     @BeforeAll
     public static void setUp() {
+        JUDGMENT_LIST.addJudgments(JUDGMENTS);
 
         JUDGMENTS.addJudgment("1", 3);
         JUDGMENTS.addJudgment("2", 2);
@@ -52,20 +56,58 @@ public class TestNDCG {
 
     @Test
     public void testCG() {
-        CumulativeGain cumulativeGain = new CumulativeGain(10);
+        CumulativeGain cumulativeGain = reset(new CumulativeGain(10));
         Assertions.assertEquals(11.0f, cumulativeGain.score(JUDGMENTS, RESULT_SET), 0.001);
     }
 
     @Test
     public void testDCG2002() {
-        DiscountedCumulativeGain2002 dcg2002 = new DiscountedCumulativeGain2002(10);
+        DiscountedCumulativeGain2002 dcg2002 = reset(new DiscountedCumulativeGain2002(10));
         Assertions.assertEquals(6.861, dcg2002.score(JUDGMENTS, RESULT_SET), 0.001);
     }
 
     @Test
     public void testNDCG() {
-        NDCG ndcg =
-                new NDCG(10);
+        NDCG ndcg = reset(new NDCG(10));
         Assertions.assertEquals(0.785, ndcg.score(JUDGMENTS, RESULT_SET), 0.001);
     }
+
+    @Test
+    public void testFrozenNDCG() {
+        //frozen judgments cache the ideal DCG for each scorer
+        Judgments frozen = JUDGMENTS.freeze();
+        NDCG ndcg = reset(new NDCG(10));
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertEquals(0.785, ndcg.score(frozen, RESULT_SET), 0.001);
+        }
+        Assertions.assertEquals(
+                reset(new NDCG(3)).score(JUDGMENTS, RESULT_SET),
+                reset(new NDCG(3)).score(frozen, RESULT_SET), 0.001);
+    }
+
+    @Test
+    public void testSharedJudgedResults() {
+        JudgedResults judgedResults = new JudgedResults(JUDGMENTS, RESULT_SET);
+        Assertions.assertEquals(6, judgedResults.size());
+        Assertions.assertEquals(3.0, judgedResults.getGrade(0), 0.001);
+        Assertions.assertFalse(judgedResults.isJudged(3));
+        Assertions.assertEquals(5, judgedResults.getNumJudged());
+
+        Assertions.assertEquals(11.0, reset(new CumulativeGain(10)).score(judgedResults), 0.001);
+        Assertions.assertEquals(6.861,
+                reset(new DiscountedCumulativeGain2002(10)).score(judgedResults), 0.001);
+        Assertions.assertEquals(0.785, reset(new NDCG(10)).score(judgedResults), 0.001);
+        //scorers with a smaller atN only read the top of the shared grades
+        Assertions.assertEquals(
+                reset(new CumulativeGain(3)).score(JUDGMENTS, RESULT_SET),
+                reset(new CumulativeGain(3)).score(judgedResults), 0.001);
+        Assertions.assertEquals(
+                reset(new NDCG(3)).score(JUDGMENTS, RESULT_SET),
+                reset(new NDCG(3)).score(judgedResults), 0.001);
+    }
+
+    private static <T extends Scorer> T reset(T scorer) {
+        scorer.reset(JUDGMENT_LIST);
+        return scorer;
+    }
 }
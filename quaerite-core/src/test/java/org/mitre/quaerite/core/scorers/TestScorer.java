@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.core.scorers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.junit.jupiter.api.Test;
+import org.mitre.quaerite.core.JudgmentList;
+import org.mitre.quaerite.core.Judgments;
+import org.mitre.quaerite.core.QueryInfo;
+import org.mitre.quaerite.core.QueryStrings;
+import org.mitre.quaerite.core.SearchResultSet;
+
+public class TestScorer {
+
+    @Test
+    public void testDenseScores() {
+        QueryInfo a = new QueryInfo("a", "set1", new QueryStrings(), 1);
+        QueryInfo b = new QueryInfo("b", "set2", new QueryStrings(), 1);
+        QueryInfo unscored = new QueryInfo("c", "set2", new QueryStrings(), 1);
+        //not in the judgment list, so it isn't given an ordinal
+        QueryInfo unlisted = new QueryInfo("d", "set2", new QueryStrings(), 1);
+        JudgmentList judgmentList = new JudgmentList();
+        judgmentList.addJudgments(new Judgments(a));
+        judgmentList.addJudgments(new Judgments(b));
+        judgmentList.addJudgments(new Judgments(unscored));
+        assertEquals(0, a.getOrdinal());
+        assertEquals(2, unscored.getOrdinal());
+        assertEquals(-1, unlisted.getOrdinal());
+
+        TotalDocsReturned scorer = new TotalDocsReturned(10);
+        scorer.reset(judgmentList);
+        scorer.addScore(a, 10);
+        scorer.addScore(b, 5);
+        assertEquals(2, scorer.getSize());
+        //rescoring a query replaces its score
+        assertFalse(scorer.addScore(b, 6));
+        assertEquals(6, scorer.getScore(b), 0.0001);
+        assertEquals(2, scorer.getSize());
+        //a NaN score is still a score
+        assertTrue(scorer.addScore(unscored, Double.NaN));
+        assertEquals(3, scorer.getSize());
+        assertTrue(scorer.getScores().containsKey(unscored));
+        //queries that aren't in the run can't be scored
+        assertThrows(IllegalArgumentException.class, () -> scorer.addScore(unlisted, 1));
+        assertTrue(Double.isNaN(scorer.getScore(unlisted)));
+        assertEquals(scorer.getSummaryStatistics("set1"),
+                scorer.getSummaryStatistics().get("set1"));
+        scorer.reset(judgmentList);
+        scorer.addScore(a, 10);
+        scorer.addScore(b, 5);
+        assertEquals(2, scorer.getSize());
+        assertEquals(10, scorer.getScore(a), 0.0001);
+        assertTrue(Double.isNaN(scorer.getScore(unscored)));
+
+        Map<String, Double> stats = scorer.getSummaryStatistics("set1");
+        assertEquals(10, stats.get(SummingScoreAggregator.SUM), 0.0001);
+        stats = scorer.getSummaryStatistics(QueryInfo.DEFAULT_QUERY_SET);
+        assertEquals(15, stats.get(SummingScoreAggregator.SUM), 0.0001);
+        assertEquals(2, scorer.getQueryInfos(QueryInfo.DEFAULT_QUERY_SET).size());
+
+        Map<QueryInfo, Double> scores = scorer.getScores();
+        assertEquals(2, scores.size());
+        assertEquals(5, scores.get(b), 0.0001);
+        assertNull(scores.get(unscored));
+        assertFalse(scores.containsKey(unscored));
+
+        scorer.reset();
+        assertEquals(0, scorer.getSize());
+        assertEquals(0, scorer.getScores().size());
+        assertThrows(IllegalArgumentException.class, () -> scorer.addScore(a, 1));
+    }
+
+    @Test
+    public void testDistributionalStatistics() {
+        QueryInfo a = new QueryInfo("dist-a", "set1", new QueryStrings(), 1);
+        QueryInfo b = new QueryInfo("dist-b", "set2", new QueryStrings(), 1);
+        QueryInfo c = new QueryInfo("dist-c", "set2", new QueryStrings(), 1);
+        AverageQueryTime scorer = new AverageQueryTime(10);
+        scorer.reset(getJudgmentList(a, b, c));
+        scorer.addScore(a, 1);
+        scorer.addScore(b, 2);
+        scorer.addScore(c, 6);
+
+        Map<String, Map<String, Double>> all = scorer.getSummaryStatistics();
+        assertEquals(3, all.size());
+        Map<String, Double> set2 = all.get("set2");
+        assertEquals(4.0, set2.get(DistributionalScoreAggregator.MEAN), 0.0001);
+        assertEquals(4.0, set2.get(DistributionalScoreAggregator.MEDIAN), 0.0001);
+        assertEquals(2, set2.get(DistributionalScoreAggregator.COUNT), 0.0001);
+        assertEquals(1.0, all.get("set1").get(DistributionalScoreAggregator.MEAN), 0.0001);
+        assertEquals(0.0, all.get("set1").get(DistributionalScoreAggregator.STDEV), 0.0001);
+        assertEquals(3, all.get(QueryInfo.DEFAULT_QUERY_SET)
+                .get(DistributionalScoreAggregator.COUNT), 0.0001);
+        assertTrue(Double.isNaN(scorer.getSummaryStatistics("missing")
+                .get(DistributionalScoreAggregator.MEAN)));
+    }
+
+    @Test
+    public void testClientOverhead() {
+        QueryInfo a = new QueryInfo("overhead-a", "set1", new QueryStrings(), 1);
+        QueryInfo b = new QueryInfo("overhead-b", "set1", new QueryStrings(), 1);
+        QueryInfo c = new QueryInfo("overhead-c", "set1", new QueryStrings(), 1);
+        AverageQueryTime queryTime = new AverageQueryTime(10);
+        AverageClientOverhead overhead = new AverageClientOverhead(10);
+        JudgmentList judgmentList = getJudgmentList(a, b, c);
+        queryTime.reset(judgmentList);
+        overhead.reset(judgmentList);
+        SearchResultSet ok = new SearchResultSet(10, 12, 20, Collections.EMPTY_LIST);
+        assertEquals(12, queryTime.score(a, ok), 0.0001);
+        assertEquals(8, overhead.score(a, ok), 0.0001);
+        //the server didn't report a query time, so it's all overhead
+        SearchResultSet noQTime = new SearchResultSet(10, -1, 30, Collections.EMPTY_LIST);
+        assertEquals(30, overhead.score(b, noQTime), 0.0001);
+        //the server's clock can round past the client's
+        SearchResultSet fast = new SearchResultSet(10, 4, 3, Collections.EMPTY_LIST);
+        assertEquals(0, overhead.score(c, fast), 0.0001);
+
+        assertEquals(38 / 3.0, overhead.getSummaryStatistics("set1")
+                .get(DistributionalScoreAggregator.MEAN), 0.0001);
+    }
+
+    @Test
+    public void testSummarizeMatchesCommonsMath() {
+        Random random = new Random(42);
+        for (int n = 1; n < 50; n++) {
+            double[] values = new double[n];
+            DescriptiveStatistics expected = new DescriptiveStatistics();
+            for (int i = 0; i < n; i++) {
+                values[i] = random.nextGaussian() * 10 + 100;
+                expected.addValue(values[i]);
+            }
+            Map<String, Double> stats = DistributionalScoreAggregator.summarize(values);
+            assertEquals(expected.getMean(),
+                    stats.get(DistributionalScoreAggregator.MEAN), 0.000001);
+            assertEquals(expected.getPercentile(50),
+                    stats.get(DistributionalScoreAggregator.MEDIAN), 0.000001);
+            assertEquals(expected.getStandardDeviation(),
+                    stats.get(DistributionalScoreAggregator.STDEV), 0.000001);
+        }
+    }
+
+    @Test
+    public void testQuantiles() {
+        QueryTimeQuantiles threadA = new QueryTimeQuantiles(10);
+        QueryTimeQuantiles threadB = new QueryTimeQuantiles(10);
+        QueryInfo[] queryInfos = new QueryInfo[1000];
+        for (int i = 0; i < 1000; i++) {
+            queryInfos[i] = new QueryInfo("quantile-" + i,
+                    (i % 2 == 0) ? "even" : "odd", new QueryStrings(), 1);
+        }
+        JudgmentList judgmentList = getJudgmentList(queryInfos);
+        threadA.reset(judgmentList);
+        threadB.reset(judgmentList);
+        for (int i = 0; i < 1000; i++) {
+            QueryTimeQuantiles scorer = (i < 500) ? threadA : threadB;
+            scorer.addScore(queryInfos[i], i);
+        }
+        Map<String, Double> stats = threadA.getSummaryStatistics(QueryInfo.DEFAULT_QUERY_SET);
+        assertEquals(250, stats.get(QuantileScoreAggregator.P50), 5);
+
+        threadA.merge(threadB);
+        stats = threadA.getSummaryStatistics(QueryInfo.DEFAULT_QUERY_SET);
+        assertEquals(500, stats.get(QuantileScoreAggregator.P50), 10);
+        assertEquals(990, stats.get(QuantileScoreAggregator.P99), 10);
+        assertEquals(1000, threadA.getSketch("even").getN() + threadA.getSketch("odd").getN());
+        assertTrue(threadA.getQuerySets().contains("odd"));
+        //the per-query scores are merged too
+        assertEquals(1000, threadA.getSize());
+
+        //rescoring a query doesn't count it twice
+        threadA.addScore(queryInfos[0], 0);
+        assertEquals(1000, threadA.getSketch(QueryInfo.DEFAULT_QUERY_SET).getN());
+
+        //overlapping queries are only counted once
+        threadB.merge(threadA);
+        assertEquals(1000, threadB.getSize());
+        assertEquals(1000, threadB.getSketch(QueryInfo.DEFAULT_QUERY_SET).getN());
+
+        threadA.reset();
+        assertTrue(Double.isNaN(threadA.getSummaryStatistics(QueryInfo.DEFAULT_QUERY_SET)
+                .get(QuantileScoreAggregator.P50)));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        ElapsedTimePercentiles shardA = new ElapsedTimePercentiles(10);
+        ElapsedTimePercentiles shardB = new ElapsedTimePercentiles(10);
+        QueryInfo[] queryInfos = new QueryInfo[1000];
+        for (int i = 1; i <= 1000; i++) {
+            queryInfos[i - 1] = new QueryInfo("latency-" + i,
+                    (i % 2 == 0) ? "even" : "odd", new QueryStrings(), 1);
+        }
+        JudgmentList judgmentList = getJudgmentList(queryInfos);
+        shardA.reset(judgmentList);
+        shardB.reset(judgmentList);
+        for (int i = 1; i <= 1000; i++) {
+            ((i <= 500) ? shardA : shardB).score(queryInfos[i - 1],
+                    new SearchResultSet(0, i, i, Collections.emptyList()));
+        }
+        shardA.merge(shardB);
+        Map<String, Double> stats = shardA.getSummaryStatistics(QueryInfo.DEFAULT_QUERY_SET);
+        assertEquals(500, stats.get(HistogramScoreAggregator.P50), 5);
+        assertEquals(950, stats.get(HistogramScoreAggregator.P95), 5);
+        assertEquals(990, stats.get(HistogramScoreAggregator.P99), 5);
+        assertEquals(999, stats.get(HistogramScoreAggregator.P999), 5);
+        assertEquals(1000, stats.get(HistogramScoreAggregator.MAX), 0.0001);
+        assertEquals(999, shardA.getSummaryStatistics("odd")
+                .get(HistogramScoreAggregator.MAX), 0.0001);
+        assertEquals(shardA.getName() + "_p99", shardA.getPrimaryStatisticName());
+        assertFalse(shardA.isHigherBetter());
+        assertEquals(1000, shardA.getSize());
+
+        //rescoring a query doesn't count it twice
+        shardA.score(queryInfos[0], new SearchResultSet(0, 1, 1, Collections.emptyList()));
+        assertEquals(1000, shardA.getHistogram(QueryInfo.DEFAULT_QUERY_SET).getTotalCount());
+
+        shardA.reset(judgmentList);
+        assertEquals(0, shardA.getHistogram(QueryInfo.DEFAULT_QUERY_SET).getTotalCount());
+    }
+
+    static JudgmentList getJudgmentList(QueryInfo... queryInfos) {
+        JudgmentList judgmentList = new JudgmentList();
+        for (QueryInfo queryInfo : queryInfos) {
+            judgmentList.addJudgments(new Judgments(queryInfo));
+        }
+        return judgmentList;
+    }
+}
@@ -17,6 +17,8 @@
 package org.mitre.quaerite.core.scorers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
@@ -40,6 +42,17 @@ public class TestScorerListSerializer {
                 ((Scorer)revivified).getAtN());
     }
 
+    @Test
+    public void testOrderBy() {
+        ElapsedTimePercentiles latency = new ElapsedTimePercentiles(10);
+        assertFalse(ScorerListSerializer.fromJson(
+                ScorerListSerializer.toJson(latency)).getOrderBy());
+        latency.setOrderBy();
+        Scorer revivified = ScorerListSerializer.fromJson(ScorerListSerializer.toJson(latency));
+        assertTrue(revivified instanceof ElapsedTimePercentiles);
+        assertTrue(revivified.getOrderBy());
+    }
+
     @Test
     public void testERR() throws Exception {
         ExperimentSet experimentSet = null;
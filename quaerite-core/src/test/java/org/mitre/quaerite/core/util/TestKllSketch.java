@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.core.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TestKllSketch {
+
+    @Test
+    public void testUniform() {
+        KllSketch sketch = new KllSketch(KllSketch.DEFAULT_K, new Random(1));
+        int n = 1000000;
+        for (int i = 0; i < n; i++) {
+            sketch.update(i);
+        }
+        assertEquals(n, sketch.getN());
+        //memory is bounded
+        assertTrue(sketch.getRetained() < 1000, "retained: " + sketch.getRetained());
+        assertEquals(0, sketch.getQuantile(0.0), 0.0);
+        assertEquals(n - 1, sketch.getQuantile(1.0), 0.0);
+        for (double q : new double[]{0.1, 0.5, 0.9, 0.99}) {
+            assertEquals(q * n, sketch.getQuantile(q), 0.02 * n, "quantile " + q);
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        Random random = new Random(2);
+        KllSketch all = new KllSketch(KllSketch.DEFAULT_K, new Random(3));
+        KllSketch[] parts = new KllSketch[4];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new KllSketch(KllSketch.DEFAULT_K, new Random(4 + i));
+        }
+        for (int i = 0; i < 400000; i++) {
+            double v = random.nextGaussian();
+            all.update(v);
+            parts[i % parts.length].update(v);
+        }
+        KllSketch merged = new KllSketch(KllSketch.DEFAULT_K, new Random(10));
+        for (KllSketch part : parts) {
+            merged.merge(part);
+        }
+        assertEquals(all.getN(), merged.getN());
+        assertEquals(all.getMin(), merged.getMin(), 0.0);
+        assertEquals(all.getMax(), merged.getMax(), 0.0);
+        //the standard normal's 50th and 90th percentiles
+        assertEquals(0.0, merged.getQuantile(0.5), 0.05);
+        assertEquals(1.2816, merged.getQuantile(0.9), 0.05);
+        assertTrue(merged.getRetained() < 1000);
+    }
+
+    @Test
+    public void testSmall() {
+        KllSketch sketch = new KllSketch();
+        assertTrue(Double.isNaN(sketch.getQuantile(0.5)));
+        for (int i = 1; i <= 5; i++) {
+            sketch.update(i);
+        }
+        //nothing has been compacted yet, so these are exact
+        assertEquals(3, sketch.getQuantile(0.5), 0.0);
+        assertEquals(5, sketch.getQuantile(0.99), 0.0);
+        assertEquals(1, sketch.getMin(), 0.0);
+    }
+}
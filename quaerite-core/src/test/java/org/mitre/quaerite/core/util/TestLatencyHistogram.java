@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.mitre.quaerite.core.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TestLatencyHistogram {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100000, histogram.getTotalCount());
+        assertEquals(100000, histogram.getMax());
+        assertEquals(1, histogram.getMin());
+        //values are kept to 2 significant digits
+        assertEquals(50000, histogram.getValueAtPercentile(50), 500);
+        assertEquals(99000, histogram.getValueAtPercentile(99), 990);
+        assertEquals(99900, histogram.getValueAtPercentile(99.9), 999);
+        assertEquals(100000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(i);
+            assertEquals(i, histogram.highestEquivalentValue(histogram.indexOf(i)));
+        }
+        assertEquals(49, histogram.getValueAtPercentile(50));
+        assertEquals(-1, new LatencyHistogram().getValueAtPercentile(50));
+    }
+
+    @Test
+    public void testMerge() {
+        Random random = new Random(5);
+        LatencyHistogram all = new LatencyHistogram();
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        for (int i = 0; i < 10000; i++) {
+            long v = (long) Math.abs(random.nextGaussian() * 1000);
+            all.record(v);
+            ((i % 2 == 0) ? a : b).record(v);
+        }
+        //beyond the trackable range; the max is still exact
+        all.record(10 * LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE);
+        b.record(10 * LatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE);
+        a.add(b);
+        assertEquals(all.getTotalCount(), a.getTotalCount());
+        assertEquals(all.getMax(), a.getMax());
+        for (double p : new double[]{50, 95, 99, 99.9}) {
+            assertEquals(all.getValueAtPercentile(p), a.getValueAtPercentile(p));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> a.add(new LatencyHistogram(1000, 3)));
+    }
+}
@@ -33,53 +33,54 @@ import java.util.Locale;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 import org.apache.commons.lang3.StringUtils;
+import org.mitre.quaerite.connectors.BulkIndexer;
 import org.mitre.quaerite.connectors.SearchClient;
 import org.mitre.quaerite.connectors.SearchClientFactory;
 import org.mitre.quaerite.connectors.StoredDocument;
 
 public class IndexTMDB {
 
+    private static final int NUM_WORKERS = 4;
+    private static final int BATCH_SIZE = 1000;
+    //max number of batches waiting to be indexed
+    private static final int QUEUE_SIZE = 10;
+
     public static void main(String[] args) throws Exception {
-        if (args.length != 2) {
+        if (args.length < 2 || args.length > 3) {
             System.err.println("java -jar o.m.q.examples.IndexTMDB tmdb.json " +
-                    "http://localhost:8983/solr/tmdb");
+                    "http://localhost:8983/solr/tmdb [numThreads]");
             System.exit(0);
         }
         Path p = Paths.get(args[0]);
         SearchClient searchClient = SearchClientFactory.getClient(args[1]);
+        int numWorkers = (args.length > 2) ? Integer.parseInt(args[2]) : NUM_WORKERS;
         int cnt = 0;
         long start = System.currentTimeMillis();
-        List<Movie> movies = new ArrayList<>();
         String idField = searchClient.getDefaultIdField();
-        try (Reader reader = Files.newBufferedReader(p, StandardCharsets.UTF_8)) {
-            JsonReader jsonReader = new JsonReader(reader);
-            jsonReader.beginObject();
-            while (jsonReader.hasNext()) {
-                Movie movie = nextMovie(jsonReader);
-                movies.add(movie);
-                cnt++;
-                if (movies.size() >= 1000) {
-                    searchClient.addDocuments(buildDocuments(idField, movies));
-                    movies.clear();
-                    System.out.println("indexed " + cnt + " in " +
-                            (System.currentTimeMillis() - start) + " ms");
+        //parse on this thread while the bulk indexer's workers send batches;
+        //if parsing fails, that exception is thrown and close()'s is suppressed
+        try (BulkIndexer bulkIndexer = new BulkIndexer(searchClient, numWorkers,
+                BATCH_SIZE, QUEUE_SIZE)) {
+            try (Reader reader = Files.newBufferedReader(p, StandardCharsets.UTF_8)) {
+                JsonReader jsonReader = new JsonReader(reader);
+                jsonReader.beginObject();
+                while (jsonReader.hasNext()) {
+                    Movie movie = nextMovie(jsonReader);
+                    bulkIndexer.add(buildDocument(idField, movie));
+                    cnt++;
+                    if (cnt % BATCH_SIZE == 0) {
+                        System.out.println("parsed " + cnt + "; indexed " +
+                                bulkIndexer.getIndexed() + " in " +
+                                (System.currentTimeMillis() - start) + " ms");
+                    }
                 }
+                jsonReader.endObject();
             }
-            jsonReader.endObject();
         }
-        searchClient.addDocuments(buildDocuments(idField, movies));
         System.out.println("finished indexing " + cnt + " in " +
                 (System.currentTimeMillis() - start) + " ms");
     }
 
-    private static List<StoredDocument> buildDocuments(String idField, List<Movie> movies) {
-        List<StoredDocument> docs = new ArrayList<>();
-        for (Movie movie : movies) {
-            docs.add(buildDocument(idField, movie));
-        }
-        return docs;
-    }
-
     private static StoredDocument buildDocument(String idField, Movie movie) {
         StoredDocument storedDocument = new StoredDocument();
         storedDocument.addNonBlankField(idField, movie.id);